@@ -19,5 +19,17 @@ public @interface ODataEntity {
 
     String entitySetName() default NO_SET;
 
+    /**
+     * Maximum number of entities returned at once from the set. Bigger results are split into pages linked with
+     * {@code @odata.nextLink}. 0 (default) means no server-driven paging.
+     */
+    int pageSize() default 0;
+
+    /**
+     * Unfiltered counts of the set may come from database statistics instead of {@code SELECT COUNT(*)}.
+     * Meant for huge tables, where exact counts take seconds. Requires an approximate counter in the processor.
+     */
+    boolean approximateCount() default false;
+
     // openType, abstract, baseType
 }
\ No newline at end of file
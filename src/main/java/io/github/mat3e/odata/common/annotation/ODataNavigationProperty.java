@@ -9,4 +9,10 @@ import java.lang.annotation.RetentionPolicy;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface ODataNavigationProperty {
     String name();
+
+    /**
+     * Collection too big to be joined to its owner, e.g. thousands of rows per owner.
+     * Expanded with a separate {@code IN} query instead of a fetch join.
+     */
+    boolean large() default false;
 }
@@ -1,10 +1,14 @@
 package io.github.mat3e.odata.common.annotation;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
 /**
  * OData Action/Function contains parameters.
  * When Bound, first parameter should be an entity or collection,
  * which Action/Function is bound to.
  */
+@Retention(RetentionPolicy.RUNTIME)
 public @interface ODataOperationParameter {
     String name();
 }
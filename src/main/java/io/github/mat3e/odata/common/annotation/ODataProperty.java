@@ -16,4 +16,10 @@ public @interface ODataProperty {
     EdmPrimitiveTypeKind type();
 
     ValueType valueType() default ValueType.PRIMITIVE;
+
+    /**
+     * Marks the property as the version of the entity, used for its ETag when there is no JPA
+     * {@link javax.persistence.Version} field. Has to be a number or a date, changed on every update.
+     */
+    boolean etag() default false;
 }
@@ -0,0 +1,542 @@
+package io.github.mat3e.odata.common.apt;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
+import io.github.mat3e.odata.common.annotation.ODataOperation;
+import io.github.mat3e.odata.common.annotation.ODataOperationParameter;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.GeneratedEntityMetadata;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.entity.JpaOlingoMediaEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.csdl.GeneratedCsdlProvider;
+import io.github.mat3e.odata.common.util.EdmTypeUtil;
+
+/**
+ * Generates, for each {@link ODataEntity}, a {@link GeneratedEntityMetadata} with reflection-free accessors and
+ * a {@link GeneratedCsdlProvider} with the ready CSDL. Both are picked up at runtime (by
+ * {@link io.github.mat3e.odata.common.entity.EntityMetadata} and
+ * {@link io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider}) instead of reflection.
+ * <p>
+ * When something can't be generated (e.g. a private field without accessors), a warning is reported and
+ * the reflective path is used for the entity.
+ */
+@SupportedAnnotationTypes("io.github.mat3e.odata.common.annotation.ODataEntity")
+public class ODataEntityProcessor extends AbstractProcessor {
+    private static final String LAMBDA_ENTITY = "e";
+    private static final String LAMBDA_VALUE = "v";
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+
+        TypeElement baseEntity = elements.getTypeElement(JpaOlingoEntity.class.getCanonicalName());
+        for (Element element : roundEnv.getElementsAnnotatedWith(ODataEntity.class)) {
+            if (element.getKind() != ElementKind.CLASS ||
+                    !types.isSubtype(types.erasure(element.asType()), types.erasure(baseEntity.asType()))) {
+                continue;
+            }
+
+            TypeElement entity = (TypeElement) element;
+            String inaccessible = inaccessibilityOf(entity);
+            if (inaccessible != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        inaccessible + ", reflection will be used at runtime", entity);
+                continue;
+            }
+            try {
+                EntitySource source = new EntitySource(entity);
+                write(entity, GeneratedEntityMetadata.SUFFIX, source.metadataClass());
+                write(entity, GeneratedCsdlProvider.SUFFIX, source.csdlClass());
+            } catch (CsdlExtractException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        e.getMessage() + ", reflection will be used at runtime", entity);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generated classes are top-level classes in the package of the entity, so they can't refer to local, anonymous
+     * or private (also enclosed in a private type) classes.
+     *
+     * @return reason why the entity can't be referred to, null if it can
+     */
+    private String inaccessibilityOf(TypeElement entity) {
+        if (entity.getNestingKind() == NestingKind.LOCAL || entity.getNestingKind() == NestingKind.ANONYMOUS) {
+            return "Local class " + entity.getSimpleName() + " can't be referred to";
+        }
+        for (Element e = entity; !(e instanceof PackageElement); e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) {
+                return "Private class " + e.getSimpleName() + " can't be referred to";
+            }
+        }
+        return null;
+    }
+
+    private void write(TypeElement entity, String suffix, String body) {
+        String name = generatedName(entity, suffix);
+        String packageName = elements.getPackageOf(entity).getQualifiedName().toString();
+        String qualifiedName = packageName.isEmpty() ? name : packageName + "." + name;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, entity).openWriter()) {
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write(body.replace("$CLASS$", name));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Can't generate " + qualifiedName + ": " + e.getMessage(), entity);
+        }
+    }
+
+    /**
+     * The same flattening as {@link io.github.mat3e.odata.common.util.ReflectionUtil#getGeneratedClassName}.
+     */
+    private String generatedName(TypeElement entity, String suffix) {
+        StringBuilder name = new StringBuilder(entity.getSimpleName());
+        for (Element e = entity.getEnclosingElement(); !(e instanceof PackageElement); e = e.getEnclosingElement()) {
+            name.insert(0, e.getSimpleName() + "_");
+        }
+        return name.append(suffix).toString();
+    }
+
+    /**
+     * Everything known about one entity, together with the code generation.
+     */
+    private class EntitySource {
+        private final TypeElement entity;
+        private final String entityType;
+        private final String packageName;
+        private final ODataEntity entityAnnotation;
+        private final List<VariableElement> fields = new ArrayList<>();
+        private final List<ExecutableElement> methods = new ArrayList<>();
+
+        EntitySource(TypeElement entity) {
+            this.entity = entity;
+            this.entityType = types.erasure(entity.asType()).toString();
+            this.packageName = elements.getPackageOf(entity).getQualifiedName().toString();
+            this.entityAnnotation = entity.getAnnotation(ODataEntity.class);
+
+            // the same order as ReflectionUtil: class first, then its supertypes up to JpaOlingoEntity
+            for (TypeElement type = entity; !isLastClass(type); type = superclassOf(type)) {
+                fields.addAll(ElementFilter.fieldsIn(type.getEnclosedElements()));
+                methods.addAll(ElementFilter.methodsIn(type.getEnclosedElements()));
+            }
+        }
+
+        String metadataClass() throws CsdlExtractException {
+            StringBuilder properties = new StringBuilder();
+            StringBuilder navigations = new StringBuilder();
+            for (VariableElement f : fields) {
+                ODataProperty propertyAnn = f.getAnnotation(ODataProperty.class);
+                if (propertyAnn != null) {
+                    properties.append(properties.length() == 0 ? "" : ",\n")
+                              .append("                new PropertyDescriptor(").append(literal(propertyAnn.name()))
+                              .append(", ").append(literal(f.getSimpleName())).append(", ")
+                              .append(classLiteral(f.asType())).append(", EdmPrimitiveTypeKind.")
+                              .append(propertyAnn.type().name()).append(", ValueType.")
+                              .append(propertyAnn.valueType().name()).append(", ")
+                              .append(f.getAnnotation(ODataKey.class) != null).append(",\n")
+                              .append("                        ").append(accessor(f)).append(")");
+                } else {
+                    ODataNavigationProperty navigationAnn = f.getAnnotation(ODataNavigationProperty.class);
+                    if (navigationAnn != null) {
+                        navigations.append(navigations.length() == 0 ? "" : ",\n")
+                                   .append("                new NavigationDescriptor(")
+                                   .append(literal(navigationAnn.name())).append(", ")
+                                   .append(literal(f.getSimpleName())).append(", ")
+                                   .append(classLiteral(targetOf(f.asType()))).append(", ")
+                                   .append(isArrayOrCollection(f.asType())).append(", ")
+                                   .append(navigationAnn.large()).append(",\n")
+                                   .append("                        ").append(accessor(f)).append(")");
+                    }
+                }
+            }
+
+            return "import java.util.Arrays;\n" +
+                    "import java.util.List;\n\n" +
+                    "import org.apache.olingo.commons.api.data.ValueType;\n" +
+                    "import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;\n\n" +
+                    "import io.github.mat3e.odata.common.entity.EntityMetadata.NavigationDescriptor;\n" +
+                    "import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;\n" +
+                    "import io.github.mat3e.odata.common.entity.GeneratedEntityMetadata;\n" +
+                    "import io.github.mat3e.odata.common.entity.PropertyAccessor;\n\n" +
+                    "/**\n * Generated by " + ODataEntityProcessor.class.getName() + " for " + entityType + ".\n */\n" +
+                    "@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n" +
+                    "public final class $CLASS$ implements GeneratedEntityMetadata {\n" +
+                    "    @Override\n" +
+                    "    public String getEntitySetName() {\n" +
+                    "        return " + literal(entityAnnotation.entitySetName()) + ";\n" +
+                    "    }\n\n" +
+                    "    @Override\n" +
+                    "    public List<PropertyDescriptor> getProperties() {\n" +
+                    "        return Arrays.<PropertyDescriptor>asList(\n" + properties + ");\n" +
+                    "    }\n\n" +
+                    "    @Override\n" +
+                    "    public List<NavigationDescriptor> getNavigations() {\n" +
+                    "        return Arrays.<NavigationDescriptor>asList(\n" + navigations + ");\n" +
+                    "    }\n" +
+                    "}\n";
+        }
+
+        String csdlClass() throws CsdlExtractException {
+            StringBuilder body = new StringBuilder();
+            for (VariableElement f : fields) {
+                ODataProperty propertyAnn = f.getAnnotation(ODataProperty.class);
+                if (f.getAnnotation(ODataKey.class) != null) {
+                    if (propertyAnn == null) {
+                        throw new CsdlExtractException(
+                                "Field annotated as ODataKey must be annotated as ODataProperty as well");
+                    }
+                    body.append("        keys.add(new CsdlPropertyRef().setName(").append(literal(propertyAnn.name()))
+                        .append("));\n");
+                }
+                if (propertyAnn != null) {
+                    body.append("        properties.add(new CsdlProperty().setName(")
+                        .append(literal(propertyAnn.name())).append(").setType(EdmPrimitiveTypeKind.")
+                        .append(propertyAnn.type().name()).append(".getFullQualifiedName()).setCollection(")
+                        .append(isArrayOrCollection(f.asType())).append(").setNullable(")
+                        .append(f.getAnnotation(NotNull.class) == null).append(")");
+                    Size size = f.getAnnotation(Size.class);
+                    if (size != null) {
+                        body.append(".setMaxLength(").append(size.max()).append(")");
+                    }
+                    body.append(");\n");
+                    body.append("        javaProperties.put(").append(literal(propertyAnn.name())).append(", ")
+                        .append(literal(f.getSimpleName())).append(");\n");
+                } else {
+                    ODataNavigationProperty navigationAnn = f.getAnnotation(ODataNavigationProperty.class);
+                    if (navigationAnn != null) {
+                        Element target = types.asElement(targetOf(f.asType()));
+                        ODataEntity targetEntity = target == null ? null : target.getAnnotation(ODataEntity.class);
+                        if (targetEntity == null) {
+                            throw new CsdlExtractException("Type " + targetOf(f.asType()) +
+                                    " must be annotated as ODataEntity");
+                        }
+                        String name = literal(navigationAnn.name());
+                        body.append("        navProps.add(new CsdlNavigationProperty().setName(").append(name)
+                            .append(").setType(FullQualifiedNamesUtil.createFullQualifiedEntityName(")
+                            .append(literal(targetEntity.name())).append(")).setCollection(")
+                            .append(isArrayOrCollection(f.asType())).append("));\n");
+                        body.append("        navBinds.add(new CsdlNavigationPropertyBinding().setTarget(")
+                            .append(literal(targetEntity.entitySetName())).append(").setPath(").append(name)
+                            .append("));\n");
+                        body.append("        javaProperties.put(").append(name).append(", ")
+                            .append(literal(f.getSimpleName())).append(");\n");
+                    }
+                }
+            }
+
+            for (ExecutableElement method : methods) {
+                ODataOperation operationAnn = method.getAnnotation(ODataOperation.class);
+                if (operationAnn != null) {
+                    appendOperation(body, method, operationAnn);
+                }
+            }
+
+            return "import java.util.ArrayList;\n" +
+                    "import java.util.Collections;\n" +
+                    "import java.util.HashMap;\n" +
+                    "import java.util.List;\n" +
+                    "import java.util.Map;\n\n" +
+                    "import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;\n" +
+                    "import org.apache.olingo.commons.api.edm.FullQualifiedName;\n" +
+                    "import org.apache.olingo.commons.api.edm.provider.*;\n\n" +
+                    "import io.github.mat3e.odata.common.provider.csdl.GeneratedCsdlProvider;\n" +
+                    "import io.github.mat3e.odata.common.util.FullQualifiedNamesUtil;\n\n" +
+                    "/**\n * Generated by " + ODataEntityProcessor.class.getName() + " for " + entityType + ".\n */\n" +
+                    "public final class $CLASS$ implements GeneratedCsdlProvider {\n" +
+                    "    private final FullQualifiedName fqn = FullQualifiedNamesUtil.createFullQualifiedEntityName(" +
+                    literal(entityAnnotation.name()) + ");\n" +
+                    "    private final CsdlEntityType eType;\n" +
+                    "    private final CsdlEntitySet eSet;\n" +
+                    "    private final List<CsdlAction> actions = new ArrayList<>();\n" +
+                    "    private final List<CsdlFunction> functions = new ArrayList<>();\n" +
+                    "    private final Map<String, String> javaProperties = new HashMap<>();\n\n" +
+                    "    public $CLASS$() {\n" +
+                    "        List<CsdlPropertyRef> keys = new ArrayList<>();\n" +
+                    "        List<CsdlProperty> properties = new ArrayList<>();\n" +
+                    "        List<CsdlNavigationProperty> navProps = new ArrayList<>();\n" +
+                    "        List<CsdlNavigationPropertyBinding> navBinds = new ArrayList<>();\n\n" +
+                    body + "\n" +
+                    "        eType = new CsdlEntityType().setName(" + literal(entityAnnotation.name()) +
+                    ").setHasStream(" + isMediaEntity() + ")\n" +
+                    "                .setProperties(properties).setNavigationProperties(navProps).setKey(keys);\n" +
+                    "        eSet = new CsdlEntitySet().setName(" + literal(entityAnnotation.entitySetName()) +
+                    ").setType(fqn)\n" +
+                    "                .setNavigationPropertyBindings(navBinds).setIncludeInServiceDocument(true);\n" +
+                    "    }\n\n" +
+                    "    @Override\n" +
+                    "    public FullQualifiedName getFQN() {\n        return fqn;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public CsdlEntitySet getCsdlEntitySet() {\n        return eSet;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public CsdlEntityType getCsdlEntityType() {\n        return eType;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public CsdlEnumType getCsdlEnumType() {\n        return null;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public CsdlComplexType getCsdlComplexType() {\n        return null;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public List<CsdlAction> getCsdlActions() {\n        return actions;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public List<CsdlFunction> getCsdlFunctions() {\n        return functions;\n    }\n\n" +
+                    "    @Override\n" +
+                    "    public Map<String, String> getJavaProperties() {\n" +
+                    "        return Collections.unmodifiableMap(javaProperties);\n    }\n" +
+                    "}\n";
+        }
+
+        private void appendOperation(StringBuilder body, ExecutableElement method, ODataOperation operationAnn)
+                throws CsdlExtractException {
+            String operationType = operationAnn.action() ? "CsdlAction" : "CsdlFunction";
+            body.append("        {\n");
+            body.append("            List<CsdlParameter> parameters = new ArrayList<>();\n");
+            body.append("            parameters.add(new CsdlParameter().setNullable(false).setType(fqn).setName(")
+                .append(literal(GeneratedCsdlProvider.BINDING_PARAM_NAME)).append("));\n");
+            for (VariableElement parameter : method.getParameters()) {
+                ODataOperationParameter parameterAnn = parameter.getAnnotation(ODataOperationParameter.class);
+                body.append("            parameters.add(new CsdlParameter().setNullable(false).setType(")
+                    .append(edmType(parameter.asType())).append(").setCollection(")
+                    .append(isArrayOrCollection(parameter.asType())).append(").setName(")
+                    .append(parameterAnn == null ? "null" : literal(parameterAnn.name())).append("));\n");
+            }
+            body.append("            ").append(operationType).append(" operation = new ").append(operationType)
+                .append("().setName(").append(literal(operationAnn.name()))
+                .append(").setBound(true).setParameters(parameters);\n");
+            TypeMirror returnType = method.getReturnType();
+            if (returnType.getKind() != TypeKind.VOID) {
+                body.append("            operation.setReturnType(new CsdlReturnType().setCollection(")
+                    .append(isArrayOrCollection(returnType)).append(").setType(").append(edmType(returnType))
+                    .append("));\n");
+            }
+            body.append("            ").append(operationAnn.action() ? "actions" : "functions")
+                .append(".add(operation);\n");
+            body.append("        }\n");
+        }
+
+        /**
+         * Getter/setter pair as lambdas. Java Bean accessors are preferred, fields are used when not available.
+         */
+        private String accessor(VariableElement f) throws CsdlExtractException {
+            String javaName = f.getSimpleName().toString();
+            String capitalized = javaName.substring(0, 1).toUpperCase() + javaName.substring(1);
+            TypeMirror type = f.asType();
+            String cast = "((" + entityType + ") " + LAMBDA_ENTITY + ")";
+
+            ExecutableElement getter = findAccessibleMethod("get" + capitalized, null);
+            if (getter == null && (type.getKind() == TypeKind.BOOLEAN ||
+                    types.isSameType(type, boxedBoolean()))) {
+                getter = findAccessibleMethod("is" + capitalized, null);
+            }
+            String getterCall;
+            if (getter != null && types.isAssignable(getter.getReturnType(), type)) {
+                getterCall = cast + "." + getter.getSimpleName() + "()";
+            } else if (isAccessible(f)) {
+                getterCall = cast + "." + javaName;
+            } else {
+                throw new CsdlExtractException("No accessible getter for " + javaName);
+            }
+
+            String valueCast = "(" + (type.getKind().isPrimitive() ?
+                    types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName() :
+                    types.erasure(type).toString()) + ") " + LAMBDA_VALUE;
+            ExecutableElement setter = findAccessibleMethod("set" + capitalized, type);
+            String setterCall;
+            if (setter != null) {
+                setterCall = cast + "." + setter.getSimpleName() + "(" + valueCast + ")";
+            } else if (isAccessible(f) && !f.getModifiers().contains(Modifier.FINAL)) {
+                setterCall = cast + "." + javaName + " = " + valueCast;
+            } else {
+                throw new CsdlExtractException("No accessible setter for " + javaName);
+            }
+
+            String getterLambda = LAMBDA_ENTITY + " -> " + getterCall;
+            String setterLambda = "(" + LAMBDA_ENTITY + ", " + LAMBDA_VALUE + ") -> " + setterCall;
+            String name = literal(javaName);
+            switch (type.getKind()) {
+                case INT:
+                    return "PropertyAccessor.ofInt(" + name + ", " + getterLambda + ", " + setterLambda + ")";
+                case LONG:
+                    return "PropertyAccessor.ofLong(" + name + ", " + getterLambda + ", " + setterLambda + ")";
+                case DOUBLE:
+                    return "PropertyAccessor.ofDouble(" + name + ", " + getterLambda + ", " + setterLambda + ")";
+                default:
+                    return "PropertyAccessor.of(" + name + ", " + classLiteral(type) + ", " + getterLambda + ", " +
+                            setterLambda + ")";
+            }
+        }
+
+        /**
+         * @param parameterType
+         *         type of the only parameter or null for no parameters
+         */
+        private ExecutableElement findAccessibleMethod(String name, TypeMirror parameterType) {
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(entity))) {
+                if (!method.getSimpleName().contentEquals(name) || method.getModifiers().contains(Modifier.STATIC) ||
+                        !isAccessible(method)) {
+                    continue;
+                }
+                List<? extends VariableElement> parameters = method.getParameters();
+                if (parameterType == null ?
+                        parameters.isEmpty() :
+                        parameters.size() == 1 && types.isSameType(types.erasure(parameters.get(0).asType()),
+                                types.erasure(parameterType))) {
+                    return method;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Generated classes are in the package of the entity.
+         */
+        private boolean isAccessible(Element member) {
+            Set<Modifier> modifiers = member.getModifiers();
+            if (modifiers.contains(Modifier.PUBLIC)) {
+                return true;
+            }
+            return !modifiers.contains(Modifier.PRIVATE) &&
+                    elements.getPackageOf(member).getQualifiedName().contentEquals(packageName);
+        }
+
+        private boolean isMediaEntity() {
+            TypeElement media = elements.getTypeElement(JpaOlingoMediaEntity.class.getCanonicalName());
+            return types.isSubtype(types.erasure(entity.asType()), types.erasure(media.asType()));
+        }
+
+        private boolean isLastClass(TypeElement type) {
+            return type == null || type.getQualifiedName().contentEquals(JpaOlingoEntity.class.getCanonicalName());
+        }
+
+        private TypeElement superclassOf(TypeElement type) {
+            TypeMirror superclass = type.getSuperclass();
+            return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) types.asElement(superclass) : null;
+        }
+    }
+
+    private boolean isArrayOrCollection(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return true;
+        }
+        TypeElement iterable = elements.getTypeElement(Iterable.class.getCanonicalName());
+        return type.getKind() == TypeKind.DECLARED &&
+                types.isAssignable(types.erasure(type), types.erasure(iterable.asType()));
+    }
+
+    /**
+     * The same as {@link io.github.mat3e.odata.common.util.ReflectionUtil#extractType}.
+     */
+    private TypeMirror targetOf(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return ((ArrayType) type).getComponentType();
+        }
+        if (isArrayOrCollection(type)) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            return arguments.isEmpty() ? elements.getTypeElement(Object.class.getCanonicalName()).asType() :
+                    arguments.get(0);
+        }
+        return type;
+    }
+
+    private TypeMirror boxedBoolean() {
+        return elements.getTypeElement(Boolean.class.getCanonicalName()).asType();
+    }
+
+    private String classLiteral(TypeMirror type) {
+        return types.erasure(type).toString() + ".class";
+    }
+
+    /**
+     * Resolves EDM type at compile time, with the same mapping as at runtime.
+     */
+    private String edmType(TypeMirror type) throws CsdlExtractException {
+        return "EdmPrimitiveTypeKind." + EdmTypeUtil.getEdmPrimitiveTypeFor(loadClass(type)).name() +
+                ".getFullQualifiedName()";
+    }
+
+    private Class<?> loadClass(TypeMirror type) throws CsdlExtractException {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return Boolean.TYPE;
+            case BYTE:
+                return Byte.TYPE;
+            case SHORT:
+                return Short.TYPE;
+            case INT:
+                return Integer.TYPE;
+            case LONG:
+                return Long.TYPE;
+            case FLOAT:
+                return Float.TYPE;
+            case DOUBLE:
+                return Double.TYPE;
+            case ARRAY:
+                return Array.newInstance(loadClass(((ArrayType) type).getComponentType()), 0).getClass();
+            case DECLARED:
+                String binaryName = elements.getBinaryName((TypeElement) types.asElement(type)).toString();
+                try {
+                    return Class.forName(binaryName, false, getClass().getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    throw new CsdlExtractException(
+                            "Property of type " + binaryName + " cannot be mapped to OData type");
+                }
+            default:
+                throw new CsdlExtractException("Property of type " + type + " cannot be mapped to OData type");
+        }
+    }
+
+    private static String literal(CharSequence value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
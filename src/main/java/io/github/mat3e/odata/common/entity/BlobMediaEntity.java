@@ -0,0 +1,83 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.FetchType;
+import javax.persistence.Lob;
+import javax.persistence.MappedSuperclass;
+
+import org.hibernate.engine.jdbc.BlobProxy;
+
+/**
+ * Media entity with the content in a JDBC {@link Blob}, streamed from and to the database.
+ * <p>
+ * Length is read from the database, without reading the content. Parts of the content are read with
+ * {@link Blob#getBinaryStream(long, long)} and uploads are passed to the driver as streams, so the content never
+ * has to fit in memory. Streams can be read only while the transaction which loaded the entity is open.
+ * {@code byte[]} methods still work, but they load the whole content.
+ */
+@MappedSuperclass
+public abstract class BlobMediaEntity extends JpaOlingoMediaEntity {
+    @Lob
+    @Basic(fetch = FetchType.LAZY)
+    @Column(name = "content")
+    protected Blob content;
+
+    @Override
+    public byte[] getContent() {
+        if (content == null) {
+            return null;
+        }
+        try {
+            return content.getBytes(1, (int) content.length());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read media content", e);
+        }
+    }
+
+    @Override
+    public void setContent(byte[] data) {
+        content = data == null ? null : BlobProxy.generateProxy(data);
+    }
+
+    @Override
+    public long getContentLength() {
+        try {
+            return content == null ? 0 : content.length();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read media content length", e);
+        }
+    }
+
+    @Override
+    public InputStream openContent(long offset, long length) {
+        long available = getContentLength() - offset;
+        if (content == null || available <= 0 || length <= 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        try {
+            // positions in Blob start with 1
+            return content.getBinaryStream(offset + 1, Math.min(length, available));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot read media content", e);
+        }
+    }
+
+    /**
+     * Content is not read here, but by the JDBC driver on flush.
+     */
+    @Override
+    public void setContent(InputStream data, long length) {
+        if (length < 0) {
+            // drivers need the length up front
+            super.setContent(data, length);
+        } else {
+            content = BlobProxy.generateProxy(data, length);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.Version;
+
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+/**
+ * Everything {@link JpaOlingoEntity} needs to know about its class, computed once per class.
+ * Instances are immutable and shared between all the entities of the given class.
+ * <p>
+ * When there is a {@link GeneratedEntityMetadata} class generated for the entity, it is used instead of reflection.
+ */
+public final class EntityMetadata {
+    private static final ClassValue<EntityMetadata> REGISTRY = new ClassValue<EntityMetadata>() {
+        @Override
+        protected EntityMetadata computeValue(Class<?> type) {
+            GeneratedEntityMetadata generated = ReflectionUtil
+                    .instantiateGenerated(type, GeneratedEntityMetadata.SUFFIX, GeneratedEntityMetadata.class);
+            return generated == null ?
+                    reflect(type) :
+                    new EntityMetadata(type, generated.getEntitySetName(), generated.getProperties(),
+                            generated.getNavigations());
+        }
+    };
+
+    private final Class<?> entityClass;
+    private final String entitySetName;
+    private final int pageSize;
+    private final boolean countApproximate;
+    private final List<PropertyDescriptor> properties;
+    private final List<PropertyDescriptor> keys;
+    private final List<NavigationDescriptor> navigations;
+    private final VersionDescriptor version;
+
+    // OData names mapped to positions in the lists above
+    private final Map<String, Integer> propertyIndexes = new HashMap<>();
+    private final Map<String, Integer> navigationIndexes = new HashMap<>();
+
+    private EntityMetadata(Class<?> entityClass, String entitySetName, List<PropertyDescriptor> properties,
+            List<NavigationDescriptor> navigations) {
+        this.entityClass = entityClass;
+        this.entitySetName = entitySetName;
+
+        ODataEntity entityAnnotation = entityClass.getAnnotation(ODataEntity.class);
+        this.pageSize = entityAnnotation == null ? 0 : entityAnnotation.pageSize();
+        this.countApproximate = entityAnnotation != null && entityAnnotation.approximateCount();
+
+        List<PropertyDescriptor> keys = new ArrayList<>();
+        for (int i = 0; i < properties.size(); ++i) {
+            PropertyDescriptor property = properties.get(i);
+            if (property.isKey()) {
+                keys.add(property);
+            }
+            propertyIndexes.put(property.getName(), i);
+        }
+        for (int i = 0; i < navigations.size(); ++i) {
+            navigationIndexes.put(navigations.get(i).getName(), i);
+        }
+
+        this.properties = Collections.unmodifiableList(new ArrayList<>(properties));
+        this.keys = Collections.unmodifiableList(keys);
+        this.navigations = Collections.unmodifiableList(new ArrayList<>(navigations));
+        this.version = findVersion(entityClass);
+    }
+
+    /**
+     * Returns shared metadata for the given class. Metadata is built on the first call and cached afterwards.
+     *
+     * @param entityClass
+     *         class of OData entity
+     * @return metadata of the class
+     */
+    public static EntityMetadata of(Class<? extends JpaOlingoEntity> entityClass) {
+        return REGISTRY.get(entityClass);
+    }
+
+    private static EntityMetadata reflect(Class<?> entityClass) {
+        ODataEntity entityAnnotation = entityClass.getAnnotation(ODataEntity.class);
+        String entitySetName = entityAnnotation == null ? ODataEntity.NO_SET : entityAnnotation.entitySetName();
+
+        List<PropertyDescriptor> properties = new ArrayList<>();
+        List<NavigationDescriptor> navigations = new ArrayList<>();
+        for (Field f : ReflectionUtil.getFieldsUpToJpaOlingoEntity(entityClass)) {
+            ODataProperty propertyAnn = f.getAnnotation(ODataProperty.class);
+            if (propertyAnn != null) {
+                properties.add(new PropertyDescriptor(propertyAnn.name(), f.getName(), f.getType(), propertyAnn.type(),
+                        propertyAnn.valueType(), f.isAnnotationPresent(ODataKey.class),
+                        PropertyAccessor.forField(entityClass, f)));
+            } else {
+                ODataNavigationProperty navigationAnn = f.getAnnotation(ODataNavigationProperty.class);
+                if (navigationAnn != null) {
+                    navigations.add(new NavigationDescriptor(navigationAnn.name(), f.getName(),
+                            ReflectionUtil.extractType(f), ReflectionUtil.isArrayOrCollection(f), navigationAnn.large(),
+                            PropertyAccessor.forField(entityClass, f)));
+                }
+            }
+        }
+
+        return new EntityMetadata(entityClass, entitySetName, properties, navigations);
+    }
+
+    /**
+     * JPA {@link Version} field or the property marked with {@link ODataProperty#etag()}.
+     */
+    private static VersionDescriptor findVersion(Class<?> entityClass) {
+        Field marked = null;
+        for (Field f : ReflectionUtil.getFieldsUpToJpaOlingoEntity(entityClass)) {
+            if (f.isAnnotationPresent(Version.class)) {
+                return new VersionDescriptor(f.getName(), PropertyAccessor.forField(entityClass, f));
+            }
+            ODataProperty propertyAnn = f.getAnnotation(ODataProperty.class);
+            if (marked == null && propertyAnn != null && propertyAnn.etag()) {
+                marked = f;
+            }
+        }
+        return marked == null ?
+                null :
+                new VersionDescriptor(marked.getName(), PropertyAccessor.forField(entityClass, marked));
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return name of the entity set or {@link ODataEntity#NO_SET}
+     */
+    public String getEntitySetName() {
+        return entitySetName;
+    }
+
+    public boolean hasEntitySet() {
+        return !ODataEntity.NO_SET.equals(entitySetName);
+    }
+
+    /**
+     * @return maximum number of entities in a single response, 0 for no paging
+     * @see ODataEntity#pageSize()
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @see ODataEntity#approximateCount()
+     */
+    public boolean isCountApproximate() {
+        return countApproximate;
+    }
+
+    /**
+     * Primitive properties, in the order of fields (from the class up to its supertypes).
+     */
+    public List<PropertyDescriptor> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Properties marked as keys, in the same order as in {@link #getProperties()}.
+     */
+    public List<PropertyDescriptor> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Navigation properties, in the order of fields.
+     */
+    public List<NavigationDescriptor> getNavigations() {
+        return navigations;
+    }
+
+    /**
+     * @return version of the entity behind its ETag or null when the entity has no version
+     */
+    public VersionDescriptor getVersion() {
+        return version;
+    }
+
+    /**
+     * @param name
+     *         OData name of the property
+     * @return position of the property in {@link #getProperties()} or -1 when there is no such property
+     */
+    public int indexOfProperty(String name) {
+        Integer result = propertyIndexes.get(name);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * @param name
+     *         OData name of the navigation property
+     * @return position of the navigation property in {@link #getNavigations()} or -1 when there is no such property
+     */
+    public int indexOfNavigation(String name) {
+        Integer result = navigationIndexes.get(name);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Description of an OData primitive property backed by a Java field.
+     */
+    public static final class PropertyDescriptor {
+        private final String name;
+        private final String javaName;
+        private final Class<?> javaType;
+        private final EdmPrimitiveTypeKind type;
+        private final ValueType valueType;
+        private final boolean key;
+        private final PropertyAccessor accessor;
+
+        public PropertyDescriptor(String name, String javaName, Class<?> javaType, EdmPrimitiveTypeKind type,
+                ValueType valueType, boolean key, PropertyAccessor accessor) {
+            this.name = name;
+            this.javaName = javaName;
+            this.javaType = javaType;
+            this.type = type;
+            this.valueType = valueType;
+            this.key = key;
+            this.accessor = accessor;
+        }
+
+        /**
+         * @return OData name of the property
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return name of the Java field
+         */
+        public String getJavaName() {
+            return javaName;
+        }
+
+        public Class<?> getJavaType() {
+            return javaType;
+        }
+
+        public EdmPrimitiveTypeKind getType() {
+            return type;
+        }
+
+        public ValueType getValueType() {
+            return valueType;
+        }
+
+        public boolean isKey() {
+            return key;
+        }
+
+        public PropertyAccessor getAccessor() {
+            return accessor;
+        }
+    }
+
+    /**
+     * Description of an OData navigation property backed by a Java field.
+     */
+    public static final class NavigationDescriptor {
+        private final String name;
+        private final String javaName;
+        private final Class<?> targetType;
+        private final boolean collection;
+        private final boolean large;
+        private final PropertyAccessor accessor;
+
+        public NavigationDescriptor(String name, String javaName, Class<?> targetType, boolean collection,
+                PropertyAccessor accessor) {
+            this(name, javaName, targetType, collection, false, accessor);
+        }
+
+        public NavigationDescriptor(String name, String javaName, Class<?> targetType, boolean collection,
+                boolean large, PropertyAccessor accessor) {
+            this.name = name;
+            this.javaName = javaName;
+            this.targetType = targetType;
+            this.collection = collection;
+            this.large = large;
+            this.accessor = accessor;
+        }
+
+        /**
+         * @return OData name of the navigation property
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return name of the Java field
+         */
+        public String getJavaName() {
+            return javaName;
+        }
+
+        /**
+         * @return type of the target entity (component type for arrays and collections)
+         */
+        public Class<?> getTargetType() {
+            return targetType;
+        }
+
+        public boolean isCollection() {
+            return collection;
+        }
+
+        /**
+         * @see ODataNavigationProperty#large()
+         */
+        public boolean isLarge() {
+            return large;
+        }
+
+        public PropertyAccessor getAccessor() {
+            return accessor;
+        }
+    }
+
+    /**
+     * Version of the entity, a number or a date, exposed as a weak ETag ({@code W/"<version>"}, dates as epoch
+     * milliseconds).
+     */
+    public static final class VersionDescriptor {
+        private final String javaName;
+        private final PropertyAccessor accessor;
+
+        public VersionDescriptor(String javaName, PropertyAccessor accessor) {
+            Class<?> type = ReflectionUtil.wrap(accessor.getType());
+            if (!Number.class.isAssignableFrom(type) && !Date.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException("Version " + javaName + " must be a number or a date");
+            }
+            this.javaName = javaName;
+            this.accessor = accessor;
+        }
+
+        /**
+         * @return name of the Java field, as used in JPA queries
+         */
+        public String getJavaName() {
+            return javaName;
+        }
+
+        public PropertyAccessor getAccessor() {
+            return accessor;
+        }
+
+        /**
+         * @return true for numbers, false for dates
+         */
+        public boolean isNumeric() {
+            return Number.class.isAssignableFrom(ReflectionUtil.wrap(accessor.getType()));
+        }
+
+        /**
+         * @return ETag for the given version or null for no version
+         */
+        public String toETag(Object version) {
+            if (version == null) {
+                return null;
+            }
+            Object value = version instanceof Date ? ((Date) version).getTime() : version;
+            return "W/\"" + value + "\"";
+        }
+
+        /**
+         * @return version from the ETag (weak or strong) or null when the ETag is not a version of this type
+         */
+        public Object fromETag(String etag) {
+            String value = etag.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.length() < 2 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+                return null;
+            }
+            try {
+                return convert(Long.parseLong(value.substring(1, value.length() - 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return version following the given one
+         */
+        public Object next(Object version) {
+            if (!isNumeric()) {
+                return convert(System.currentTimeMillis());
+            }
+            return convert(version == null ? 0 : ((Number) version).longValue() + 1);
+        }
+
+        private Object convert(long value) {
+            Class<?> type = ReflectionUtil.wrap(accessor.getType());
+            if (type == Integer.class) {
+                return (int) value;
+            } else if (type == Short.class) {
+                return (short) value;
+            } else if (type == Long.class) {
+                return value;
+            } else if (type == Timestamp.class) {
+                return new Timestamp(value);
+            } else if (Date.class.isAssignableFrom(type)) {
+                return new Date(value);
+            }
+            throw new IllegalStateException("Unsupported version type " + type.getName());
+        }
+    }
+}
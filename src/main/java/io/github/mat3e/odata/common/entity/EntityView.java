@@ -0,0 +1,107 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Property;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+
+/**
+ * Read-only OData view of a {@link JpaOlingoEntity} row, for projections which fetch just some of the columns
+ * (e.g. those from {@code $select} and the keys) instead of the whole managed entity.
+ * <p>
+ * Values are kept in the order of {@link EntityMetadata#getProperties()}, with nulls for columns not fetched.
+ * There are no navigation links, views are never expanded.
+ */
+public final class EntityView extends Entity {
+    private final EntityMetadata metadata;
+    private final PropertySelection selection;
+    private final Object[] values;
+
+    private List<Property> properties;
+    // the same properties in the order of EntityMetadata#getProperties(), nulls for not selected
+    private Property[] propertiesByIndex;
+
+    /**
+     * @param metadata
+     *         description of the entity class
+     * @param selection
+     *         properties to be exposed, all of them should be fetched
+     * @param values
+     *         fetched values, in the order of {@link EntityMetadata#getProperties()}
+     */
+    public EntityView(EntityMetadata metadata, PropertySelection selection, Object[] values) {
+        if (values.length != metadata.getProperties().size()) {
+            throw new IllegalArgumentException("Expected " + metadata.getProperties().size() + " values");
+        }
+        this.metadata = metadata;
+        this.selection = selection;
+        this.values = values;
+    }
+
+    /**
+     * Same as {@link JpaOlingoEntity#getId()}, computed from the fetched keys.
+     */
+    @Override
+    public URI getId() {
+        URI id = super.getId();
+        if (id == null && metadata.hasEntitySet()) {
+            id = URI.create(KeyCodec.of(metadata.getEntityClass().asSubclass(JpaOlingoEntity.class))
+                                    .appendId(new StringBuilder(), values).toString());
+            setId(id);
+        }
+        return id;
+    }
+
+    /**
+     * @return property if selected, null otherwise
+     */
+    @Override
+    public Property getProperty(String name) {
+        int index = metadata.indexOfProperty(name);
+        if (index < 0) {
+            return null;
+        }
+        getProperties();
+        return propertiesByIndex[index];
+    }
+
+    /**
+     * Selected properties, unmodifiable.
+     */
+    @Override
+    public List<Property> getProperties() {
+        if (properties == null) {
+            List<PropertyDescriptor> descriptors = metadata.getProperties();
+            List<Property> result = new ArrayList<>(descriptors.size());
+            Property[] byIndex = new Property[descriptors.size()];
+            for (int i = 0; i < descriptors.size(); ++i) {
+                PropertyDescriptor descriptor = descriptors.get(i);
+                if (selection.isSelected(descriptor.getName())) {
+                    byIndex[i] = new Property(null, descriptor.getName(), descriptor.getValueType(), values[i]);
+                    result.add(byIndex[i]);
+                }
+            }
+            propertiesByIndex = byIndex;
+            properties = Collections.unmodifiableList(result);
+        }
+        return properties;
+    }
+
+    /**
+     * @param name
+     *         OData name of the property
+     * @return fetched value, null if not fetched
+     */
+    public Object getValue(String name) {
+        int index = metadata.indexOfProperty(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No property " + name);
+        }
+        return values[index];
+    }
+}
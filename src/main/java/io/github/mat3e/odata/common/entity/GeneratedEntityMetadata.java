@@ -0,0 +1,21 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.util.List;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata.NavigationDescriptor;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+
+/**
+ * Metadata of the entity generated at compile time by {@link io.github.mat3e.odata.common.apt.ODataEntityProcessor}.
+ * Implementation is placed next to the entity and named after it, e.g. {@code Outer_Entity_OlingoMetadata}
+ * for {@code Outer.Entity}.
+ */
+public interface GeneratedEntityMetadata {
+    String SUFFIX = "_OlingoMetadata";
+
+    String getEntitySetName();
+
+    List<PropertyDescriptor> getProperties();
+
+    List<NavigationDescriptor> getNavigations();
+}
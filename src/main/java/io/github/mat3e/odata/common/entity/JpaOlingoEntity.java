@@ -1,19 +1,13 @@
 package io.github.mat3e.odata.common.entity;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Stream;
 
 import javax.persistence.MappedSuperclass;
+import javax.persistence.Persistence;
 import javax.persistence.Transient;
 
 import org.apache.olingo.commons.api.Constants;
@@ -21,27 +15,42 @@ import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntityCollection;
 import org.apache.olingo.commons.api.data.Link;
 import org.apache.olingo.commons.api.data.Property;
-import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.github.mat3e.odata.common.annotation.ODataEntity;
-import io.github.mat3e.odata.common.annotation.ODataKey;
-import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
-import io.github.mat3e.odata.common.annotation.ODataProperty;
-import io.github.mat3e.odata.common.util.ReflectionUtil;
+import io.github.mat3e.odata.common.entity.EntityMetadata.NavigationDescriptor;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.entity.EntityMetadata.VersionDescriptor;
+import io.github.mat3e.odata.common.util.EdmTypeUtil;
 
 /**
  * Base for all OData Entities.
  * Subclasses has to be POJOs.
+ * <p>
+ * OData state is kept as small as possible, since there might be thousands of entities in a single response.
+ * The description of the class is shared ({@link EntityMetadata}) and on top of Olingo {@link Entity} every instance
+ * holds just a single reference. On the first OData read it gets one array of slots, which takes
+ * {@code 16 + 4 * (5 + properties + navigation properties)} bytes (with compressed references, rounded up to 8),
+ * plus Olingo {@link Property} and {@link Link} objects actually read. Lists of {@link Entity} are reused.
  */
 @MappedSuperclass
 public abstract class JpaOlingoEntity extends Entity {
     @Transient
     private static final Logger LOG = LoggerFactory.getLogger(JpaOlingoEntity.class);
 
+    // fixed slots, followed by the slots of properties and then navigation properties
+    private static final int ID_SLOT = 0;
+    private static final int SELECTION_SLOT = 1;
+    private static final int EXPANSION_SLOT = 2;
+    private static final int PROPERTIES_READ_SLOT = 3;
+    private static final int LINKS_READ_SLOT = 4;
+    static final int FIXED_SLOTS = 5;
+
+    /**
+     * Lazily computed OData state, see {@link #slots()} for the layout.
+     */
     @Transient
-    private Proxy proxy = new Proxy();
+    private Object[] slots;
 
     /**
      * URI is something like id of the OData entity and it is used in many places,
@@ -52,39 +61,39 @@ public abstract class JpaOlingoEntity extends Entity {
      */
     @Override
     public URI getId() {
-        if (proxy.set == null) {
-            proxy.set = getClass().getAnnotation(ODataEntity.class).entitySetName();
-        }
-
-        if (proxy.id == null && !proxy.set.equals(ODataEntity.NO_SET)) {
+        Object[] slots = slots();
+        EntityMetadata metadata = getMetadata();
+        if (slots[ID_SLOT] == null && metadata.hasEntitySet()) {
             try {
-                StringBuilder uriString = new StringBuilder(proxy.set).append("(");
-                Field[] keys = Stream.of(getAccessibleFields()).filter(f -> f.isAnnotationPresent(ODataKey.class))
-                                     .toArray(Field[]::new);
-                if (keys.length == 1) {
-                    String key = keys[0].get(this).toString();
-                    key = parseKeyValue(key, keys[0].getAnnotation(ODataProperty.class).type());
-                    uriString.append(key);
-                } else {
-                    // for many keys either their order is important or they can be used as name=value pairs
-                    for (Field key : keys) {
-                        ODataProperty propertyAnn = key.getAnnotation(ODataProperty.class);
-                        uriString.append(propertyAnn.name()).append("=")
-                                 .append(parseKeyValue(key.get(this).toString(), propertyAnn.type())).append(",");
-                    }
-                    uriString.deleteCharAt(uriString.length() - 1);
-                }
-                proxy.id = new URI(uriString.append(")").toString());
-            } catch (IllegalArgumentException | IllegalAccessException | URISyntaxException e) {
+                slots[ID_SLOT] = new URI(KeyCodec.of(getClass()).appendId(new StringBuilder(), this).toString());
+            } catch (URISyntaxException e) {
                 LOG.error("Can't find Entity Key", e);
             }
         }
-        return proxy.id;
+        return (URI) slots[ID_SLOT];
     }
 
+    /**
+     * ETag from the {@link EntityMetadata#getVersion() version} of the entity, if there is such.
+     */
+    @Override
+    public String getETag() {
+        VersionDescriptor version = getMetadata().getVersion();
+        return version == null ? super.getETag() : version.toETag(version.getAccessor().get(this));
+    }
+
+    /**
+     * Reads just the requested property. Other properties are not touched.
+     */
     @Override
     public Property getProperty(String name) {
-        for (Property prop : getProperties()) {
+        int index = getMetadata().indexOfProperty(name);
+        if (index >= 0) {
+            return getPropertySlot(index);
+        }
+
+        // property added from outside, e.g. with addProperty
+        for (Property prop : super.getProperties()) {
             if (name.equals(prop.getName())) {
                 return prop;
             }
@@ -92,70 +101,128 @@ public abstract class JpaOlingoEntity extends Entity {
         return null;
     }
 
+    /**
+     * Only {@link #select(PropertySelection) selected} properties are read from the entity.
+     */
     @Override
     public List<Property> getProperties() {
-        if (proxy.properties == null) {
-            proxy.properties = new ArrayList<>();
-            proxy.propertyAccessors = new HashMap<>();
-            for (Field f : getAccessibleFields()) {
-                ODataProperty annotation = f.getAnnotation(ODataProperty.class);
-                if (annotation != null) {
-                    String name = annotation.name();
-                    RealAccessors<JpaOlingoEntity> accessors = new RealAccessors<>(this, f);
-                    proxy.properties.add(new Property(null, name, annotation.valueType(), accessors.get(this)));
-                    proxy.propertyAccessors.put(name, accessors);
+        List<Property> properties = super.getProperties();
+        Object[] slots = slots();
+        if (slots[PROPERTIES_READ_SLOT] == null) {
+            slots[PROPERTIES_READ_SLOT] = Boolean.TRUE;
+
+            PropertySelection selection = getSelection();
+            List<PropertyDescriptor> descriptors = getMetadata().getProperties();
+            for (int i = 0; i < descriptors.size(); ++i) {
+                if (selection.isSelected(descriptors.get(i).getName())) {
+                    properties.add(getPropertySlot(i));
                 }
             }
         }
-        return proxy.properties;
+        return properties;
+    }
+
+    /**
+     * Restricts {@link #getProperties()} to the given properties, e.g. to those from {@code $select}.
+     * Getters of not selected properties are not called at all.
+     *
+     * @param selection
+     *         properties to be exposed, shared between entities of the same response
+     * @return this entity
+     */
+    public JpaOlingoEntity select(PropertySelection selection) {
+        Object[] slots = slots();
+        slots[SELECTION_SLOT] = selection;
+        resetProperties(slots, false);
+        return this;
     }
 
     @Override
     public Link getNavigationLink(String name) {
-        for (Link link : getNavigationLinks()) {
-            if (name.equals(link.getTitle())) {
-                return link;
-            }
-        }
-        return null;
+        int index = getMetadata().indexOfNavigation(name);
+        return index >= 0 ? getLinkSlot(index) : null;
     }
 
+    /**
+     * Navigation properties are deferred links (just URLs) unless {@link #expand(NavigationExpansion) expanded}.
+     * Associations are read only for the expanded ones.
+     */
     @Override
     public List<Link> getNavigationLinks() {
-        if (proxy.links == null) {
-            proxy.links = new ArrayList<>();
-            proxy.linkAccessors = new HashMap<>();
-            for (Field f : getAccessibleFields()) {
-                ODataNavigationProperty annotation = f.getAnnotation(ODataNavigationProperty.class);
-                if (annotation != null) {
-                    Link link = new Link();
-
-                    RealAccessors<JpaOlingoEntity> accessors = new RealAccessors<>(this, f);
-                    Object value = accessors.get(this);
-
-                    String name = annotation.name();
-                    link.setTitle(name);
-                    link.setType(Constants.ENTITY_NAVIGATION_LINK_TYPE);
-                    link.setRel(Constants.NS_NAVIGATION_LINK_REL + name);
-
-                    if (ReflectionUtil.isArrayOrCollection(f)) {
-                        EntityCollection entityCollection = new EntityCollection();
-                        if (value.getClass().isArray()) {
-                            entityCollection.getEntities().addAll(Arrays.asList((Entity[]) value));
-                        } else {
-                            entityCollection.getEntities().addAll((Collection<Entity>) value);
-                        }
-                        link.setInlineEntitySet(entityCollection);
-                    } else {
-                        link.setInlineEntity((Entity) value);
-                    }
-
-                    proxy.links.add(link);
-                    proxy.linkAccessors.put(name, accessors);
-                }
+        List<Link> links = super.getNavigationLinks();
+        Object[] slots = slots();
+        if (slots[LINKS_READ_SLOT] == null) {
+            slots[LINKS_READ_SLOT] = Boolean.TRUE;
+
+            int size = getMetadata().getNavigations().size();
+            for (int i = 0; i < size; ++i) {
+                links.add(getLinkSlot(i));
             }
         }
-        return proxy.links;
+        return links;
+    }
+
+    /**
+     * Chooses navigation properties which should be returned inline, e.g. those from {@code $expand}.
+     *
+     * @param expansion
+     *         navigation properties to be expanded, shared between entities of the same response
+     * @return this entity
+     */
+    public JpaOlingoEntity expand(NavigationExpansion expansion) {
+        Object[] slots = slots();
+        slots[EXPANSION_SLOT] = expansion;
+        resetLinks(slots);
+        return this;
+    }
+
+    /**
+     * Sets the inline content of an {@link #expand(NavigationExpansion) expanded} navigation property which was
+     * loaded elsewhere, e.g. with a single query for many entities. The association itself is not read.
+     *
+     * @param name
+     *         OData name of the navigation property
+     * @param value
+     *         expanded entity or collection of entities
+     */
+    public void setExpanded(String name, Object value) {
+        int index = getMetadata().indexOfNavigation(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No navigation property " + name);
+        }
+
+        Object[] slots = slots();
+        slots[FIXED_SLOTS + getMetadata().getProperties().size() + index] =
+                createLink(getMetadata().getNavigations().get(index), true, value);
+    }
+
+    /**
+     * Checks if the association behind the navigation property is already loaded, without loading it.
+     *
+     * @param name
+     *         OData name of the navigation property
+     * @return true if reading the navigation property won't hit the database
+     */
+    public boolean isNavigationLoaded(String name) {
+        int index = getMetadata().indexOfNavigation(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("No navigation property " + name);
+        }
+
+        Object value = getMetadata().getNavigations().get(index).getAccessor().get(this);
+        return value == null || isLoaded(value);
+    }
+
+    /**
+     * Hook for checking if the association (e.g. a lazy collection or a proxy) is initialized.
+     * Uses JPA {@link javax.persistence.PersistenceUtil}, can be overridden e.g. with {@code Hibernate.isInitialized}.
+     *
+     * @param association
+     *         value returned from the getter of navigation property
+     * @return true if initialized
+     */
+    protected boolean isLoaded(Object association) {
+        return Persistence.getPersistenceUtil().isLoaded(association);
     }
 
     /**
@@ -163,9 +230,10 @@ public abstract class JpaOlingoEntity extends Entity {
      * It flushes cache.
      */
     public Entity refreshAndGet() {
-        proxy.id = null;
-        proxy.links = null;
-        proxy.fields = null;
+        Object[] slots = slots();
+        slots[ID_SLOT] = null;
+        resetProperties(slots, true);
+        resetLinks(slots);
 
         getId();
         getProperties();
@@ -188,152 +256,136 @@ public abstract class JpaOlingoEntity extends Entity {
         setFromEntity(entity, true);
     }
 
+    /**
+     * Method for setting just sent fields of a new entity, keys included. Navigation links are not touched.
+     */
+    public void post(Entity entity) {
+        setProperties(entity, false, true);
+    }
+
     // TODO: navigation links support
     protected void setFromEntity(Entity entity, boolean overrideWithNull) {
-        List<Property> sourceProperties = entity.getProperties();
+        setProperties(entity, overrideWithNull, false);
+    }
 
-        if (proxy.properties == null || proxy.propertyAccessors == null) {
-            getProperties();
-        }
+    private void setProperties(Entity entity, boolean overrideWithNull, boolean withKeys) {
+        for (PropertyDescriptor descriptor : getMetadata().getProperties()) {
+            if (descriptor.isKey() && !withKeys) {
+                continue;
+            }
 
-        if (overrideWithNull) {
-            proxy.properties.forEach(prop -> {
-                if (!sourceProperties.contains(prop)) {
-                    proxy.propertyAccessors.get(prop.getName()).set(this, null);
-                }
-            });
+            Property source = entity.getProperty(descriptor.getName());
+            if (source != null) {
+                // Olingo gives its default types, e.g. Calendar for Edm.Date, whatever the field is
+                Object value = EdmTypeUtil.toJavaValue(source.getValue(), descriptor.getJavaType());
+                descriptor.getAccessor().set(this, value);
+            } else if (overrideWithNull) {
+                descriptor.getAccessor().set(this, null);
+            }
         }
 
-        sourceProperties.forEach(prop -> proxy.propertyAccessors.get(prop.getName()).set(this, prop.getValue()));
-
         // we need new values in the cache after the next call
-        proxy.properties = null;
+        resetProperties(slots(), true);
     }
 
-    private Field[] getAccessibleFields() {
-        if (proxy.fields == null) {
-            proxy.fields = ReflectionUtil.getFieldsUpToJpaOlingoEntity(getClass());
-            Stream.of(proxy.fields).forEach(f -> f.setAccessible(true));
+    /**
+     * Layout: {@link #FIXED_SLOTS} first, then properties (in the order of {@link EntityMetadata#getProperties()}),
+     * then navigation properties (in the order of {@link EntityMetadata#getNavigations()}).
+     */
+    private Object[] slots() {
+        if (slots == null) {
+            EntityMetadata metadata = getMetadata();
+            slots = new Object[FIXED_SLOTS + metadata.getProperties().size() + metadata.getNavigations().size()];
         }
-        return proxy.fields;
+        return slots;
     }
 
-    private String parseKeyValue(String key, EdmPrimitiveTypeKind type) {
-        if (type == EdmPrimitiveTypeKind.String) {
-            key = "'" + key + "'";
-        }
+    private PropertySelection getSelection() {
+        Object selection = slots()[SELECTION_SLOT];
+        return selection == null ? PropertySelection.ALL : (PropertySelection) selection;
+    }
 
-        return key;
+    private NavigationExpansion getExpansion() {
+        Object expansion = slots()[EXPANSION_SLOT];
+        return expansion == null ? NavigationExpansion.NONE : (NavigationExpansion) expansion;
     }
 
-    /**
-     * Proxy to skip iterating through annotations each time some method is called.
-     */
-    private static class Proxy {
-        /**
-         * URI, ended usually with Set(id).
-         */
-        URI id;
-
-        /**
-         * Name of the set of given entities.
-         */
-        String set;
-
-        /**
-         * Fields from class and its supertypes up to JpaOlingoEntity.
-         */
-        Field[] fields;
-
-        /**
-         * Navigation properties.
-         */
-        List<Link> links;
-
-        /**
-         * Primitive properties.
-         */
-        List<Property> properties;
-
-        /**
-         * Storage of Java getters and setters for links (navigation properties).
-         */
-        Map<String, RealAccessors> linkAccessors;
-
-        /**
-         * Storage of Java getters and setters for OData primitive properties.
-         */
-        Map<String, RealAccessors> propertyAccessors;
+    private void resetProperties(Object[] slots, boolean values) {
+        slots[PROPERTIES_READ_SLOT] = null;
+        super.getProperties().clear();
+        if (values) {
+            Arrays.fill(slots, FIXED_SLOTS, FIXED_SLOTS + getMetadata().getProperties().size(), null);
+        }
     }
 
-    /**
-     * Getter and setter from the "java" entity.
-     *
-     * @param <T>
-     *         entity to be used in OData service
-     */
-    private static class RealAccessors<T extends JpaOlingoEntity> {
-        private String name;
-        private boolean isKey;
-        private Method getter;
-        private Method setter;
-
-        RealAccessors(T entity, Field f) {
-            name = f.getName();
-            isKey = f.isAnnotationPresent(ODataKey.class);
-            try {
-                getter = entity.getClass().getMethod(prepareGetter());
-                setter = entity.getClass().getMethod(prepareSetter(), f.getType());
-            } catch (NoSuchMethodException e) {
-                LOG.error("Reflection problem with preparing an accessor", e);
-            }
+    private void resetLinks(Object[] slots) {
+        slots[LINKS_READ_SLOT] = null;
+        super.getNavigationLinks().clear();
+        Arrays.fill(slots, FIXED_SLOTS + getMetadata().getProperties().size(), slots.length, null);
+    }
+
+    private Link getLinkSlot(int index) {
+        Object[] slots = slots();
+        int slot = FIXED_SLOTS + getMetadata().getProperties().size() + index;
+
+        Link result = (Link) slots[slot];
+        if (result == null) {
+            result = createLink(getMetadata().getNavigations().get(index));
+            slots[slot] = result;
         }
+        return result;
+    }
 
-        /**
-         * Executes getter.
-         *
-         * @param entity
-         *         this object
-         * @return value from the object
-         */
-        Object get(T entity) {
-            try {
-                return getter.invoke(entity);
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                LOG.error("Reflection problem with getting a value", e);
-            }
+    private Link createLink(NavigationDescriptor descriptor) {
+        boolean expanded = getExpansion().isExpanded(descriptor.getName());
+        return createLink(descriptor, expanded, expanded ? descriptor.getAccessor().get(this) : null);
+    }
+
+    private Link createLink(NavigationDescriptor descriptor, boolean expanded, Object value) {
+        Link link = new Link();
+
+        String name = descriptor.getName();
+        link.setTitle(name);
+        link.setType(Constants.ENTITY_NAVIGATION_LINK_TYPE);
+        link.setRel(Constants.NS_NAVIGATION_LINK_REL + name);
 
-            return null;
+        URI id = getId();
+        if (id != null) {
+            link.setHref(id.toASCIIString() + "/" + name);
         }
 
-        /**
-         * Executes setter. Overrides property value (if the property is not a key).
-         *
-         * @param entity
-         *         this object
-         * @param value
-         *         new value to be set
-         */
-        void set(T entity, Object value) {
-            if (!isKey) {
-                try {
-                    setter.invoke(entity, value);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    LOG.error("Reflection problem with setting a value", e);
+        if (expanded) {
+            if (descriptor.isCollection()) {
+                EntityCollection entityCollection = new EntityCollection();
+                if (value instanceof Entity[]) {
+                    entityCollection.getEntities().addAll(Arrays.asList((Entity[]) value));
+                } else if (value != null) {
+                    entityCollection.getEntities().addAll((Collection<Entity>) value);
                 }
+                link.setInlineEntitySet(entityCollection);
+            } else {
+                link.setInlineEntity((Entity) value);
             }
         }
 
-        private String prepareGetter() {
-            return prepareAccessor('g');
-        }
+        return link;
+    }
 
-        private String prepareSetter() {
-            return prepareAccessor('s');
-        }
+    private Property getPropertySlot(int index) {
+        Object[] slots = slots();
+        int slot = FIXED_SLOTS + index;
 
-        private String prepareAccessor(char type) {
-            return type + "et" + name.substring(0, 1).toUpperCase() + name.substring(1);
+        Property result = (Property) slots[slot];
+        if (result == null) {
+            PropertyDescriptor descriptor = getMetadata().getProperties().get(index);
+            result = new Property(null, descriptor.getName(), descriptor.getValueType(),
+                    descriptor.getAccessor().get(this));
+            slots[slot] = result;
         }
+        return result;
+    }
+
+    private EntityMetadata getMetadata() {
+        return EntityMetadata.of(getClass());
     }
 }
@@ -1,15 +1,32 @@
 package io.github.mat3e.odata.common.entity;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
 import javax.persistence.Column;
 import javax.persistence.MappedSuperclass;
 
 /**
  * Special Entity which handles files upload.
+ * <p>
+ * Content is read and written as streams: {@link #getContentLength()}, {@link #openContent(long, long)} and
+ * {@link #setContent(InputStream, long)}. By default they are adapters of {@code byte[]} {@link #getContent()} and
+ * {@link #setContent(byte[])}, which buffer the whole content in memory. Big files should override them, e.g. with
+ * {@link BlobMediaEntity}.
  */
 @MappedSuperclass
 public abstract class JpaOlingoMediaEntity extends JpaOlingoEntity {
     public static final String MEDIA_PROPERTY_NAME = "$value";
 
+    private static final int BUFFER_SIZE = 8192;
+
     @Column(name = "content_type")
     protected String contentType;
 
@@ -17,6 +34,92 @@ public abstract class JpaOlingoMediaEntity extends JpaOlingoEntity {
 
     public abstract void setContent(byte[] data);
 
+    /**
+     * @return size of the content in bytes, 0 when there is no content
+     */
+    public long getContentLength() {
+        byte[] content = getContent();
+        return content == null ? 0 : content.length;
+    }
+
+    /**
+     * Opens a part of the content, e.g. for HTTP {@code Range} requests.
+     *
+     * @param offset
+     *         index of the first byte
+     * @param length
+     *         number of bytes
+     * @return stream of the requested bytes, to be closed by the caller
+     */
+    public InputStream openContent(long offset, long length) {
+        byte[] content = getContent();
+        if (content == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        int from = (int) Math.min(offset, content.length);
+        return new ByteArrayInputStream(content, from, (int) Math.min(length, content.length - from));
+    }
+
+    /**
+     * Replaces the content with the given stream.
+     *
+     * @param data
+     *         new content, not closed
+     * @param length
+     *         number of bytes in the stream or -1 when unknown
+     */
+    public void setContent(InputStream data, long length) {
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(
+                    length < 0 || length > Integer.MAX_VALUE ? BUFFER_SIZE : (int) length);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = data.read(buffer); read >= 0; read = data.read(buffer)) {
+                result.write(buffer, 0, read);
+            }
+            setContent(result.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read media content", e);
+        }
+    }
+
+    /**
+     * Replaces the content with the bytes read from the channel.
+     *
+     * @param data
+     *         new content, not closed
+     * @param length
+     *         number of bytes in the channel or -1 when unknown
+     */
+    public void setContent(ReadableByteChannel data, long length) {
+        setContent(Channels.newInputStream(data), length);
+    }
+
+    /**
+     * Copies a part of the content to the channel through a single buffer, without loading it whole.
+     *
+     * @param target
+     *         channel to write to, not closed
+     * @param offset
+     *         index of the first byte
+     * @param length
+     *         number of bytes
+     * @return number of bytes written
+     */
+    public long writeContent(WritableByteChannel target, long offset, long length) {
+        try (ReadableByteChannel source = Channels.newChannel(openContent(offset, length))) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long written = 0;
+            while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                written += target.write(buffer);
+                buffer.compact();
+            }
+            return written;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write media content", e);
+        }
+    }
+
     @Override
     public String getMediaContentType() {
         String result = super.getMediaContentType();
@@ -33,4 +136,4 @@ public abstract class JpaOlingoMediaEntity extends JpaOlingoEntity {
         contentType = mediaType;
         super.setMediaContentType(mediaType);
     }
-}
\ No newline at end of file
+}
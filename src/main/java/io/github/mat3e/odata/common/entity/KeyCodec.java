@@ -0,0 +1,477 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.IdClass;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.core.Encoder;
+import org.apache.olingo.commons.core.edm.primitivetype.EdmPrimitiveTypeFactory;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+/**
+ * Keys of a {@link JpaOlingoEntity} class, compiled once: formatting of key predicates for URI ids and parsing of
+ * key predicates into JPA primary keys for {@link javax.persistence.EntityManager#find(Class, Object)}.
+ * <p>
+ * Literals of numbers, booleans, strings (with {@code '} doubled) and GUIDs are written straight into the given
+ * builder, primitive keys without boxing. Other types (e.g. dates, decimals) go through Olingo. Characters which are
+ * not unreserved in URIs (e.g. {@code /}, spaces, non-ASCII) are percent-encoded, so the result is always a valid
+ * relative URI. Composite keys are written as {@code Name=value} pairs. The primary key is the value itself for
+ * a single key, an instance of {@link IdClass} or of the {@link EmbeddedId} type (fields named like the Java key
+ * properties), or otherwise an instance of the entity with just the keys set, as for Hibernate composite ids without
+ * a separate class.
+ */
+public final class KeyCodec {
+    private static final ClassValue<KeyCodec> REGISTRY = new ClassValue<KeyCodec>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected KeyCodec computeValue(Class<?> type) {
+            return new KeyCodec((Class<? extends JpaOlingoEntity>) type);
+        }
+    };
+
+    // precision for temporal types formatted by Olingo, so fractional seconds are not rejected
+    private static final Integer MAX_PRECISION = 12;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Class<? extends JpaOlingoEntity> entityClass;
+    private final EntityMetadata metadata;
+    private final PropertyDescriptor[] keys;
+    private final Literal[] literals;
+    // positions of keys in EntityMetadata#getProperties()
+    private final int[] indexes;
+
+    // primary key built from the values unless it's a single key; no fields when it's the entity itself
+    private final boolean composite;
+    private final Constructor<?> idConstructor;
+    private final Field[] idFields;
+
+    private KeyCodec(Class<? extends JpaOlingoEntity> entityClass) {
+        this.entityClass = entityClass;
+        this.metadata = EntityMetadata.of(entityClass);
+        List<PropertyDescriptor> keyList = metadata.getKeys();
+        this.keys = keyList.toArray(new PropertyDescriptor[keyList.size()]);
+        this.literals = new Literal[keys.length];
+        this.indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            literals[i] = Literal.of(keys[i].getType(), ReflectionUtil.wrap(keys[i].getJavaType()));
+            indexes[i] = metadata.indexOfProperty(keys[i].getName());
+        }
+
+        Class<?> idClass = findIdClass(entityClass);
+        this.composite = idClass != null || keys.length > 1;
+        if (idClass != null) {
+            this.idConstructor = noArgConstructor(idClass);
+            this.idFields = new Field[keys.length];
+            for (int i = 0; i < keys.length; ++i) {
+                idFields[i] = findField(idClass, keys[i].getJavaName());
+            }
+        } else {
+            this.idConstructor = composite ? noArgConstructor(entityClass) : null;
+            this.idFields = null;
+        }
+    }
+
+    public static KeyCodec of(Class<? extends JpaOlingoEntity> entityClass) {
+        return REGISTRY.get(entityClass);
+    }
+
+    /**
+     * Keys in the order of predicates and values.
+     */
+    public List<PropertyDescriptor> getKeys() {
+        return metadata.getKeys();
+    }
+
+    /**
+     * Appends {@code EntitySet(key)}.
+     *
+     * @return out
+     */
+    public StringBuilder appendId(StringBuilder out, JpaOlingoEntity entity) {
+        return appendKey(out.append(metadata.getEntitySetName()).append('('), entity).append(')');
+    }
+
+    /**
+     * Appends {@code EntitySet(key)}.
+     *
+     * @param values
+     *         values of all the properties, in the order of {@link EntityMetadata#getProperties()}
+     * @return out
+     */
+    public StringBuilder appendId(StringBuilder out, Object[] values) {
+        return appendKey(out.append(metadata.getEntitySetName()).append('('), values).append(')');
+    }
+
+    /**
+     * Appends the key predicate of the entity, without parentheses.
+     *
+     * @return out
+     */
+    public StringBuilder appendKey(StringBuilder out, JpaOlingoEntity entity) {
+        for (int i = 0; i < keys.length; ++i) {
+            appendName(out, i);
+            PropertyAccessor accessor = keys[i].getAccessor();
+            if (accessor.getType() == Integer.TYPE) {
+                out.append(accessor.getInt(entity));
+            } else if (accessor.getType() == Long.TYPE) {
+                out.append(accessor.getLong(entity));
+            } else {
+                appendValue(out, i, accessor.get(entity));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Appends the key predicate, without parentheses.
+     *
+     * @param values
+     *         values of all the properties, in the order of {@link EntityMetadata#getProperties()}
+     * @return out
+     */
+    public StringBuilder appendKey(StringBuilder out, Object[] values) {
+        for (int i = 0; i < keys.length; ++i) {
+            appendName(out, i);
+            appendValue(out, i, values[indexes[i]]);
+        }
+        return out;
+    }
+
+    /**
+     * @param predicates
+     *         parsed key predicates, in any order
+     * @return key values converted to Java types, in the order of {@link #getKeys()}
+     * @throws IllegalArgumentException
+     *         for unknown, missing or invalid keys
+     */
+    public Object[] parseValues(List<UriParameter> predicates) {
+        if (predicates.size() != keys.length) {
+            throw new IllegalArgumentException("Expected " + keys.length + " keys");
+        }
+        Object[] result = new Object[keys.length];
+        for (UriParameter predicate : predicates) {
+            // a single key may come without its name
+            int i = keys.length == 1 ? 0 : indexOfKey(predicate.getName());
+            if (i < 0 || result[i] != null) {
+                throw new IllegalArgumentException("Unexpected key " + predicate.getName());
+            }
+            result[i] = literals[i].parse(predicate.getText());
+        }
+        return result;
+    }
+
+    /**
+     * @param values
+     *         key values in the order of {@link #getKeys()}
+     * @return primary key for {@link javax.persistence.EntityManager#find(Class, Object)}
+     */
+    public Object toPrimaryKey(Object[] values) {
+        if (!composite) {
+            return values[0];
+        }
+        if (idConstructor == null) {
+            throw new IllegalStateException("Primary key of " + entityClass.getName() + " needs a no-arg constructor");
+        }
+        try {
+            Object result = idConstructor.newInstance();
+            for (int i = 0; i < keys.length; ++i) {
+                if (idFields == null) {
+                    keys[i].getAccessor().set(result, values[i]);
+                } else {
+                    idFields[i].set(result, values[i]);
+                }
+            }
+            return result;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create the primary key of " + entityClass.getName(), e);
+        }
+    }
+
+    /**
+     * {@link #toPrimaryKey(Object[])} of {@link #parseValues(List)}.
+     */
+    public Object parsePrimaryKey(List<UriParameter> predicates) {
+        return toPrimaryKey(parseValues(predicates));
+    }
+
+    private void appendName(StringBuilder out, int i) {
+        if (keys.length > 1) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(keys[i].getName()).append('=');
+        }
+    }
+
+    private void appendValue(StringBuilder out, int i, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else {
+            literals[i].append(out, value);
+        }
+    }
+
+    /**
+     * Unreserved characters of RFC 3986, never percent-encoded.
+     */
+    private static boolean isUnreserved(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private int indexOfKey(String name) {
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Class<?> findIdClass(Class<?> entityClass) {
+        for (Class<?> current = entityClass; current != null && current != JpaOlingoEntity.class;
+                current = current.getSuperclass()) {
+            IdClass idClass = current.getAnnotation(IdClass.class);
+            if (idClass != null) {
+                return idClass.value();
+            }
+        }
+        for (Field field : ReflectionUtil.getFieldsUpToJpaOlingoEntity(entityClass)) {
+            if (field.isAnnotationPresent(EmbeddedId.class)) {
+                return field.getType();
+            }
+        }
+        return null;
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            try {
+                Field result = current.getDeclaredField(name);
+                result.setAccessible(true);
+                return result;
+            } catch (NoSuchFieldException e) {
+                // try the superclass
+            }
+        }
+        throw new IllegalStateException("No field " + name + " in " + type.getName());
+    }
+
+    /**
+     * @return constructor or null when there is none, e.g. for inner classes
+     */
+    private static Constructor<?> noArgConstructor(Class<?> type) {
+        try {
+            Constructor<?> result = type.getDeclaredConstructor();
+            result.setAccessible(true);
+            return result;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * URI literal of a single primitive type.
+     */
+    private abstract static class Literal {
+        abstract void append(StringBuilder out, Object value);
+
+        abstract Object parse(String literal);
+
+        static Literal of(EdmPrimitiveTypeKind kind, Class<?> javaType) {
+            switch (kind) {
+                case String:
+                    return javaType == String.class ? new StringLiteral() : new OlingoLiteral(kind, javaType);
+                case Guid:
+                    return javaType == UUID.class ? new GuidLiteral() : new OlingoLiteral(kind, javaType);
+                case Byte:
+                case SByte:
+                case Int16:
+                case Int32:
+                case Int64:
+                    return javaType == Integer.class || javaType == Long.class ?
+                            new IntegralLiteral(kind, javaType) :
+                            new OlingoLiteral(kind, javaType);
+                case Boolean:
+                    return javaType == Boolean.class ? new BooleanLiteral() : new OlingoLiteral(kind, javaType);
+                default:
+                    return new OlingoLiteral(kind, javaType);
+            }
+        }
+    }
+
+    private static final class StringLiteral extends Literal {
+        @Override
+        void append(StringBuilder out, Object value) {
+            String string = (String) value;
+            out.append('\'');
+            for (int i = 0; i < string.length(); ) {
+                int c = string.codePointAt(i);
+                if (c == '\'') {
+                    out.append("''");
+                } else if (isUnreserved(c)) {
+                    out.append((char) c);
+                } else {
+                    out.append(Encoder.encode(new String(Character.toChars(c))));
+                }
+                i += Character.charCount(c);
+            }
+            out.append('\'');
+        }
+
+        @Override
+        Object parse(String literal) {
+            if (literal.length() < 2 || literal.charAt(0) != '\'' || literal.charAt(literal.length() - 1) != '\'') {
+                throw new IllegalArgumentException("Not a string literal: " + literal);
+            }
+            StringBuilder result = new StringBuilder(literal.length() - 2);
+            for (int i = 1; i < literal.length() - 1; ++i) {
+                char c = literal.charAt(i);
+                if (c == '\'') {
+                    if (literal.charAt(i + 1) != '\'' || i + 1 == literal.length() - 1) {
+                        throw new IllegalArgumentException("Unescaped quote in " + literal);
+                    }
+                    ++i;
+                }
+                result.append(c);
+            }
+            return result.toString();
+        }
+    }
+
+    private static final class GuidLiteral extends Literal {
+        @Override
+        void append(StringBuilder out, Object value) {
+            UUID uuid = (UUID) value;
+            appendHex(out, uuid.getMostSignificantBits() >>> 32, 8).append('-');
+            appendHex(out, uuid.getMostSignificantBits() >>> 16, 4).append('-');
+            appendHex(out, uuid.getMostSignificantBits(), 4).append('-');
+            appendHex(out, uuid.getLeastSignificantBits() >>> 48, 4).append('-');
+            appendHex(out, uuid.getLeastSignificantBits(), 12);
+        }
+
+        @Override
+        Object parse(String literal) {
+            return UUID.fromString(literal);
+        }
+
+        private static StringBuilder appendHex(StringBuilder out, long bits, int digits) {
+            for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+                out.append(HEX[(int) (bits >>> shift) & 0xf]);
+            }
+            return out;
+        }
+    }
+
+    private static final class IntegralLiteral extends Literal {
+        private final EdmPrimitiveTypeKind kind;
+        private final boolean asLong;
+        // range of the EDM type, narrowed to the Java type
+        private final long min;
+        private final long max;
+
+        IntegralLiteral(EdmPrimitiveTypeKind kind, Class<?> javaType) {
+            this.kind = kind;
+            this.asLong = javaType == Long.class;
+            switch (kind) {
+                case Byte:
+                    this.min = 0;
+                    this.max = 255;
+                    break;
+                case SByte:
+                    this.min = Byte.MIN_VALUE;
+                    this.max = Byte.MAX_VALUE;
+                    break;
+                case Int16:
+                    this.min = Short.MIN_VALUE;
+                    this.max = Short.MAX_VALUE;
+                    break;
+                case Int32:
+                    this.min = Integer.MIN_VALUE;
+                    this.max = Integer.MAX_VALUE;
+                    break;
+                default:
+                    this.min = asLong ? Long.MIN_VALUE : Integer.MIN_VALUE;
+                    this.max = asLong ? Long.MAX_VALUE : Integer.MAX_VALUE;
+            }
+        }
+
+        @Override
+        void append(StringBuilder out, Object value) {
+            out.append(((Number) value).longValue());
+        }
+
+        @Override
+        Object parse(String literal) {
+            try {
+                long value = Long.parseLong(literal);
+                if (value < min || value > max) {
+                    throw new IllegalArgumentException(literal + " is out of range of " + kind);
+                }
+                return asLong ? (Object) value : (Object) (int) value;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a valid " + kind + ": " + literal, e);
+            }
+        }
+    }
+
+    private static final class BooleanLiteral extends Literal {
+        @Override
+        void append(StringBuilder out, Object value) {
+            out.append(((Boolean) value).booleanValue());
+        }
+
+        @Override
+        Object parse(String literal) {
+            if ("true".equals(literal) || "false".equals(literal)) {
+                return Boolean.valueOf(literal);
+            }
+            throw new IllegalArgumentException("Not a valid Boolean: " + literal);
+        }
+    }
+
+    /**
+     * Everything else, formatted and parsed by Olingo.
+     */
+    private static final class OlingoLiteral extends Literal {
+        private final EdmPrimitiveType type;
+        private final Class<?> javaType;
+        private final Integer precision;
+
+        OlingoLiteral(EdmPrimitiveTypeKind kind, Class<?> javaType) {
+            this.type = EdmPrimitiveTypeFactory.getInstance(kind);
+            this.javaType = javaType;
+            this.precision = kind == EdmPrimitiveTypeKind.DateTimeOffset || kind == EdmPrimitiveTypeKind.TimeOfDay ||
+                    kind == EdmPrimitiveTypeKind.Duration ? MAX_PRECISION : null;
+        }
+
+        @Override
+        void append(StringBuilder out, Object value) {
+            try {
+                out.append(Encoder.encode(type.toUriLiteral(
+                        type.valueToString(value, null, null, precision, null, null))));
+            } catch (EdmPrimitiveTypeException e) {
+                throw new IllegalArgumentException("Can't format key " + value, e);
+            }
+        }
+
+        @Override
+        Object parse(String literal) {
+            try {
+                return type.valueOfString(type.fromUriLiteral(literal), null, null, precision, null, null, javaType);
+            } catch (EdmPrimitiveTypeException e) {
+                throw new IllegalArgumentException("Not a valid " + type.getName() + ": " + literal, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+
+/**
+ * Navigation properties requested by the client with {@code $expand}.
+ * Immutable, so a single instance can be shared by all the entities of the response.
+ */
+public final class NavigationExpansion {
+    /**
+     * Nothing expanded, all the navigation properties are deferred links.
+     */
+    public static final NavigationExpansion NONE = new NavigationExpansion(Collections.emptySet());
+
+    /**
+     * Everything expanded ({@code $expand=*}).
+     */
+    public static final NavigationExpansion ALL = new NavigationExpansion(null);
+
+    /**
+     * Null for all the navigation properties.
+     */
+    private final Set<String> names;
+
+    private NavigationExpansion(Set<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * @param names
+     *         OData names of expanded navigation properties
+     */
+    public static NavigationExpansion of(Collection<String> names) {
+        return names == null || names.isEmpty() ?
+                NONE :
+                new NavigationExpansion(Collections.unmodifiableSet(new HashSet<>(names)));
+    }
+
+    /**
+     * Reads expanded navigation properties from {@code $expand}, just the first level.
+     */
+    public static NavigationExpansion of(ExpandOption expand) {
+        if (expand == null || expand.getExpandItems() == null || expand.getExpandItems().isEmpty()) {
+            return NONE;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (ExpandItem item : expand.getExpandItems()) {
+            if (item.isStar()) {
+                return ALL;
+            }
+            if (item.getResourcePath() != null) {
+                List<UriResource> parts = item.getResourcePath().getUriResourceParts();
+                if (!parts.isEmpty() && parts.get(0) instanceof UriResourceNavigation) {
+                    names.add(((UriResourceNavigation) parts.get(0)).getProperty().getName());
+                }
+            }
+        }
+        return of(names);
+    }
+
+    public boolean isExpanded(String name) {
+        return names == null || names.contains(name);
+    }
+
+    /**
+     * @return expanded names or null when everything is expanded
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+}
@@ -0,0 +1,341 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Getter and setter from the "java" entity, resolved once per class and shared between its instances.
+ * <p>
+ * Public accessors of public classes are turned into direct calls with {@link LambdaMetafactory}, so they can be
+ * inlined by JIT. Other accessors (and fields without Java Bean accessors) are called through method handles.
+ * Primitive {@code int}, {@code long} and {@code double} properties can be read without boxing.
+ */
+public final class PropertyAccessor {
+    private static final Logger LOG = LoggerFactory.getLogger(PropertyAccessor.class);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final String name;
+    private final Class<?> type;
+    private final Function<Object, Object> getter;
+    private final BiConsumer<Object, Object> setter;
+    private final ToIntFunction<Object> intGetter;
+    private final ToLongFunction<Object> longGetter;
+    private final ToDoubleFunction<Object> doubleGetter;
+
+    private PropertyAccessor(String name, Class<?> type, Function<Object, Object> getter,
+            BiConsumer<Object, Object> setter, ToIntFunction<Object> intGetter, ToLongFunction<Object> longGetter,
+            ToDoubleFunction<Object> doubleGetter) {
+        this.name = name;
+        this.type = type;
+        this.getter = getter;
+        this.setter = setter;
+        this.intGetter = intGetter;
+        this.longGetter = longGetter;
+        this.doubleGetter = doubleGetter;
+    }
+
+    /**
+     * Accessor made from already compiled functions, e.g. from the code generated by
+     * {@link io.github.mat3e.odata.common.apt.ODataEntityProcessor}.
+     */
+    public static PropertyAccessor of(String name, Class<?> type, Function<Object, Object> getter,
+            BiConsumer<Object, Object> setter) {
+        return new PropertyAccessor(name, type, getter, setter, null, null, null);
+    }
+
+    /**
+     * Accessor for a primitive {@code int} field.
+     */
+    public static PropertyAccessor ofInt(String name, ToIntFunction<Object> getter, BiConsumer<Object, Object> setter) {
+        return new PropertyAccessor(name, Integer.TYPE, getter::applyAsInt, setter, getter, null, null);
+    }
+
+    /**
+     * Accessor for a primitive {@code long} field.
+     */
+    public static PropertyAccessor ofLong(String name, ToLongFunction<Object> getter,
+            BiConsumer<Object, Object> setter) {
+        return new PropertyAccessor(name, Long.TYPE, getter::applyAsLong, setter, null, getter, null);
+    }
+
+    /**
+     * Accessor for a primitive {@code double} field.
+     */
+    public static PropertyAccessor ofDouble(String name, ToDoubleFunction<Object> getter,
+            BiConsumer<Object, Object> setter) {
+        return new PropertyAccessor(name, Double.TYPE, getter::applyAsDouble, setter, null, null, getter);
+    }
+
+    /**
+     * Accessor built from the Java field and its getter and setter (if there are such).
+     */
+    static PropertyAccessor forField(Class<?> entityClass, Field f) {
+        String name = f.getName();
+        Class<?> type = f.getType();
+
+        Method getterMethod = findGetter(entityClass, f);
+        Method setterMethod = findSetter(entityClass, f);
+        boolean direct = isDirectlyAccessible(entityClass);
+
+        try {
+            MethodHandle getterHandle = getterMethod == null ? unreflectGetter(f) : unreflect(getterMethod);
+            MethodHandle setterHandle = setterMethod == null ? unreflectSetter(f) : unreflect(setterMethod);
+
+            boolean directGetter = direct && getterMethod != null && isPublic(getterMethod);
+            boolean directSetter = direct && setterMethod != null && isPublic(setterMethod);
+
+            Function<Object, Object> getter = directGetter ?
+                    generate(Function.class, "apply", getterHandle) :
+                    handleGetter(getterHandle);
+            BiConsumer<Object, Object> setter = directSetter ?
+                    generate(BiConsumer.class, "accept", setterHandle) :
+                    handleSetter(setterHandle);
+
+            ToIntFunction<Object> intGetter = type == Integer.TYPE ?
+                    directGetter ? generate(ToIntFunction.class, "applyAsInt", getterHandle) :
+                            handleIntGetter(getterHandle) :
+                    null;
+            ToLongFunction<Object> longGetter = type == Long.TYPE ?
+                    directGetter ? generate(ToLongFunction.class, "applyAsLong", getterHandle) :
+                            handleLongGetter(getterHandle) :
+                    null;
+            ToDoubleFunction<Object> doubleGetter = type == Double.TYPE ?
+                    directGetter ? generate(ToDoubleFunction.class, "applyAsDouble", getterHandle) :
+                            handleDoubleGetter(getterHandle) :
+                    null;
+
+            return new PropertyAccessor(name, type, getter, setter, intGetter, longGetter, doubleGetter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't prepare accessors for " + entityClass.getName() + "." + name, e);
+        }
+    }
+
+    /**
+     * Executes getter.
+     *
+     * @param entity
+     *         object to read from
+     * @return value from the object
+     */
+    public Object get(Object entity) {
+        return getter.apply(entity);
+    }
+
+    /**
+     * Executes setter. Primitive fields can't be cleared, so null values are skipped for them.
+     *
+     * @param entity
+     *         object to write to
+     * @param value
+     *         new value to be set
+     */
+    public void set(Object entity, Object value) {
+        if (value == null && type.isPrimitive()) {
+            LOG.debug("Skipping null value for primitive field {}", name);
+            return;
+        }
+        setter.accept(entity, value);
+    }
+
+    /**
+     * @return Java type of the underlying field
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Reads {@code int} value without boxing, when the field is a primitive {@code int}.
+     */
+    public int getInt(Object entity) {
+        return intGetter != null ? intGetter.applyAsInt(entity) : ((Number) get(entity)).intValue();
+    }
+
+    /**
+     * Reads {@code long} value without boxing, when the field is a primitive {@code long}.
+     */
+    public long getLong(Object entity) {
+        return longGetter != null ? longGetter.applyAsLong(entity) : ((Number) get(entity)).longValue();
+    }
+
+    /**
+     * Reads {@code double} value without boxing, when the field is a primitive {@code double}.
+     */
+    public double getDouble(Object entity) {
+        return doubleGetter != null ? doubleGetter.applyAsDouble(entity) : ((Number) get(entity)).doubleValue();
+    }
+
+    private static Method findGetter(Class<?> entityClass, Field f) {
+        Method result = findMethod(entityClass, prepareAccessor("get", f.getName()));
+        if (result == null && (f.getType() == Boolean.TYPE || f.getType() == Boolean.class)) {
+            result = findMethod(entityClass, prepareAccessor("is", f.getName()));
+        }
+        return result != null && f.getType().isAssignableFrom(result.getReturnType()) ? result : null;
+    }
+
+    private static Method findSetter(Class<?> entityClass, Field f) {
+        return findMethod(entityClass, prepareAccessor("set", f.getName()), f.getType());
+    }
+
+    private static Method findMethod(Class<?> entityClass, String name, Class<?>... parameterTypes) {
+        try {
+            return entityClass.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            LOG.debug("No {} method in {}, field will be used instead", name, entityClass.getName());
+            return null;
+        }
+    }
+
+    private static String prepareAccessor(String prefix, String name) {
+        return prefix + name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+
+    /**
+     * Generated classes live next to this one, so the entity has to be public and visible from our class loader.
+     */
+    private static boolean isDirectlyAccessible(Class<?> entityClass) {
+        for (Class<?> c = entityClass; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        try {
+            return Class.forName(entityClass.getName(), false, PropertyAccessor.class.getClassLoader()) == entityClass;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean isPublic(Method method) {
+        return Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers());
+    }
+
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        method.setAccessible(true);
+        return LOOKUP.unreflect(method);
+    }
+
+    private static MethodHandle unreflectGetter(Field f) throws IllegalAccessException {
+        f.setAccessible(true);
+        return LOOKUP.unreflectGetter(f);
+    }
+
+    private static MethodHandle unreflectSetter(Field f) throws IllegalAccessException {
+        f.setAccessible(true);
+        return LOOKUP.unreflectSetter(f);
+    }
+
+    /**
+     * Spins a functional object which calls the accessor directly. Falls back to a method handle when not possible.
+     */
+    @SuppressWarnings("unchecked")
+    private static <F> F generate(Class<? super F> functionalInterface, String methodName, MethodHandle accessor) {
+        Method sam = findSam(functionalInterface, methodName);
+        MethodType samType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
+        MethodType instantiatedType = accessor.type().wrap();
+        if (samType.returnType().isPrimitive()) {
+            instantiatedType = instantiatedType.changeReturnType(samType.returnType());
+        } else if (samType.returnType() == Void.TYPE) {
+            instantiatedType = instantiatedType.changeReturnType(Void.TYPE);
+        }
+        instantiatedType = instantiatedType.changeParameterType(0, accessor.type().parameterType(0));
+        try {
+            return (F) LambdaMetafactory.metafactory(LOOKUP, methodName, MethodType.methodType(functionalInterface),
+                    samType, accessor, instantiatedType).getTarget().invoke();
+        } catch (Throwable e) {
+            LOG.warn("Can't generate direct accessor, method handle will be used instead", e);
+            return (F) fallback(functionalInterface, accessor);
+        }
+    }
+
+    private static Method findSam(Class<?> functionalInterface, String methodName) {
+        for (Method method : functionalInterface.getMethods()) {
+            if (method.getName().equals(methodName) && Modifier.isAbstract(method.getModifiers())) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("No method " + methodName + " in " + functionalInterface.getName());
+    }
+
+    private static Object fallback(Class<?> functionalInterface, MethodHandle accessor) {
+        if (functionalInterface == Function.class) {
+            return handleGetter(accessor);
+        } else if (functionalInterface == BiConsumer.class) {
+            return handleSetter(accessor);
+        } else if (functionalInterface == ToIntFunction.class) {
+            return handleIntGetter(accessor);
+        } else if (functionalInterface == ToLongFunction.class) {
+            return handleLongGetter(accessor);
+        }
+        return handleDoubleGetter(accessor);
+    }
+
+    private static Function<Object, Object> handleGetter(MethodHandle accessor) {
+        MethodHandle handle = accessor.asType(MethodType.methodType(Object.class, Object.class));
+        return entity -> {
+            try {
+                return handle.invokeExact(entity);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Problem with getting a value", e);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> handleSetter(MethodHandle accessor) {
+        MethodHandle handle = accessor.asType(MethodType.methodType(Void.TYPE, Object.class, Object.class));
+        return (entity, value) -> {
+            try {
+                handle.invokeExact(entity, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Problem with setting a value", e);
+            }
+        };
+    }
+
+    private static ToIntFunction<Object> handleIntGetter(MethodHandle accessor) {
+        MethodHandle handle = accessor.asType(MethodType.methodType(Integer.TYPE, Object.class));
+        return entity -> {
+            try {
+                return (int) handle.invokeExact(entity);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Problem with getting a value", e);
+            }
+        };
+    }
+
+    private static ToLongFunction<Object> handleLongGetter(MethodHandle accessor) {
+        MethodHandle handle = accessor.asType(MethodType.methodType(Long.TYPE, Object.class));
+        return entity -> {
+            try {
+                return (long) handle.invokeExact(entity);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Problem with getting a value", e);
+            }
+        };
+    }
+
+    private static ToDoubleFunction<Object> handleDoubleGetter(MethodHandle accessor) {
+        MethodHandle handle = accessor.asType(MethodType.methodType(Double.TYPE, Object.class));
+        return entity -> {
+            try {
+                return (double) handle.invokeExact(entity);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Problem with getting a value", e);
+            }
+        };
+    }
+}
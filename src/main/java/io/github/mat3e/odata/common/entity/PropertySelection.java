@@ -0,0 +1,78 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceProperty;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+
+/**
+ * Properties requested by the client, e.g. with {@code $select}.
+ * Immutable, so a single instance can be shared by all the entities of the response.
+ */
+public final class PropertySelection {
+    /**
+     * No restrictions, all the properties are selected.
+     */
+    public static final PropertySelection ALL = new PropertySelection(null);
+
+    /**
+     * Null for all the properties.
+     */
+    private final Set<String> names;
+
+    private PropertySelection(Set<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * @param names
+     *         OData names of selected properties, null for all the properties
+     */
+    public static PropertySelection of(Collection<String> names) {
+        return names == null ? ALL : new PropertySelection(Collections.unmodifiableSet(new HashSet<>(names)));
+    }
+
+    /**
+     * Reads selected properties from {@code $select}. No option or {@code *} means all the properties.
+     */
+    public static PropertySelection of(SelectOption select) {
+        if (select == null || select.getSelectItems() == null || select.getSelectItems().isEmpty()) {
+            return ALL;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (SelectItem item : select.getSelectItems()) {
+            if (item.isStar()) {
+                return ALL;
+            }
+            if (item.getResourcePath() != null) {
+                List<UriResource> parts = item.getResourcePath().getUriResourceParts();
+                if (!parts.isEmpty() && parts.get(0) instanceof UriResourceProperty) {
+                    names.add(((UriResourceProperty) parts.get(0)).getProperty().getName());
+                }
+            }
+        }
+        return new PropertySelection(Collections.unmodifiableSet(names));
+    }
+
+    public boolean isAll() {
+        return names == null;
+    }
+
+    public boolean isSelected(String name) {
+        return names == null || names.contains(name);
+    }
+
+    /**
+     * @return selected names or null when all the properties are selected
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.mat3e.odata.common.entity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+
+import javax.persistence.Column;
+import javax.persistence.MappedSuperclass;
+
+import io.github.mat3e.odata.common.media.MediaStore;
+
+/**
+ * Media entity with the content in a {@link MediaStore}, e.g.
+ * {@link io.github.mat3e.odata.common.media.FileSystemMediaStore}. The table keeps just the key of the content and
+ * its length, so neither reads nor writes of the content go through JDBC.
+ */
+@MappedSuperclass
+public abstract class StoredMediaEntity extends JpaOlingoMediaEntity {
+    @Column(name = "content_key")
+    protected String contentKey;
+
+    @Column(name = "content_length")
+    protected long contentLength;
+
+    /**
+     * @return store of the content, usually a single instance for all the entities
+     */
+    protected abstract MediaStore getMediaStore();
+
+    @Override
+    public byte[] getContent() {
+        if (contentKey == null) {
+            return null;
+        }
+        try (InputStream in = openContent(0, contentLength)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream((int) contentLength);
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                result.write(buffer, 0, read);
+            }
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read media content", e);
+        }
+    }
+
+    @Override
+    public void setContent(byte[] data) {
+        if (data == null) {
+            contentKey = null;
+            contentLength = 0;
+        } else {
+            setContent(new ByteArrayInputStream(data), data.length);
+        }
+    }
+
+    /**
+     * Taken from the entity, the store is not asked.
+     */
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public InputStream openContent(long offset, long length) {
+        if (contentKey == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        try {
+            return getMediaStore().open(contentKey, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read media content", e);
+        }
+    }
+
+    /**
+     * Content is written to the store right away, content already stored is not written again.
+     */
+    @Override
+    public void setContent(InputStream data, long length) {
+        try {
+            String key = getMediaStore().put(data);
+            contentLength = getMediaStore().size(key);
+            contentKey = key;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store media content", e);
+        }
+    }
+
+    @Override
+    public long writeContent(WritableByteChannel target, long offset, long length) {
+        if (contentKey == null) {
+            return 0;
+        }
+        try {
+            return getMediaStore().transferTo(contentKey, offset, length, target);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write media content", e);
+        }
+    }
+
+    public String getContentKey() {
+        return contentKey;
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.mat3e.odata.common.media;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Storage of media content outside of the database, addressed by keys kept in the entities.
+ * Implementations are content-addressed: the same content always gets the same key and is stored once.
+ */
+public interface MediaStore {
+    /**
+     * @param data
+     *         content to be stored, read to the end but not closed
+     * @return key of the content
+     */
+    String put(InputStream data) throws IOException;
+
+    /**
+     * @return size of the content in bytes
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * @param offset
+     *         index of the first byte
+     * @param length
+     *         number of bytes
+     * @return stream of the requested bytes, to be closed by the caller
+     */
+    InputStream open(String key, long offset, long length) throws IOException;
+
+    /**
+     * Copies a part of the content to the channel, with as few copies as the store can do.
+     *
+     * @param offset
+     *         index of the first byte
+     * @param length
+     *         number of bytes
+     * @param target
+     *         channel to write to, not closed
+     * @return number of bytes written
+     */
+    long transferTo(String key, long offset, long length, WritableByteChannel target) throws IOException;
+
+    /**
+     * Removes the content. Content is shared, so it should be called only when no entity refers to the key.
+     *
+     * @return true if there was such content
+     */
+    boolean delete(String key) throws IOException;
+}
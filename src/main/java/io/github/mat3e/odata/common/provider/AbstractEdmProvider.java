@@ -1,10 +1,18 @@
 package io.github.mat3e.odata.common.provider;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
 import org.apache.olingo.commons.api.edm.provider.CsdlAbstractEdmItem;
@@ -22,14 +30,34 @@ import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
 import org.apache.olingo.commons.api.edm.provider.CsdlOperation;
 import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
 import org.apache.olingo.commons.api.ex.ODataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
 import io.github.mat3e.odata.common.provider.csdl.CsdlProvider;
+import io.github.mat3e.odata.common.provider.csdl.JavaObjectCsdlProvider;
+import io.github.mat3e.odata.common.provider.csdl.LazyCsdlProvider;
 import io.github.mat3e.odata.common.util.FullQualifiedNamesUtil;
 
 /**
  * Base for EdmProviders which makes a usage of {@link CsdlProvider CsdlProviders}.
+ * <p>
+ * Providers are merged in the given order, so schemas don't depend on hashing or threads. With many entities
+ * reflection is the most expensive part of startup, use {@link #extract(Collection)} to create independent providers
+ * in parallel. For schemas with many more types than a single instance serves, the lazy mode
+ * ({@link #AbstractEdmProvider(List, boolean)} with {@link LazyCsdlProvider LazyCsdlProviders}) resolves types one
+ * by one and builds all the schemas only for {@code $metadata}.
  */
 public abstract class AbstractEdmProvider extends CsdlAbstractEdmProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractEdmProvider.class);
+
+    private final List<CsdlProvider> providers;
+
+    // lazy mode: providers indexed without extracting their CSDL, until everything is built
+    private final Map<FullQualifiedName, CsdlProvider> providersByFqn = new HashMap<>();
+    private final Map<String, CsdlProvider> providersBySet = new HashMap<>();
+    private volatile boolean built;
+
     private List<CsdlSchema> schemas = new ArrayList<>();
 
     /**
@@ -38,56 +66,111 @@ public abstract class AbstractEdmProvider extends CsdlAbstractEdmProvider {
     // TODO: extended containers
     private CsdlEntityContainer container = new CsdlEntityContainer().setName(FullQualifiedNamesUtil.CONTAINER);
 
-    // maps, for making request by fqn more readable
-    private Map<FullQualifiedName, CsdlEntityType> entities = new HashMap<>();
-    private Map<FullQualifiedName, CsdlEnumType> enums = new HashMap<>();
-    private Map<FullQualifiedName, CsdlComplexType> complexTypes = new HashMap<>();
-    private Map<FullQualifiedName, List<CsdlAction>> actions = new HashMap<>();
-    private Map<FullQualifiedName, List<CsdlFunction>> functions = new HashMap<>();
+    // immutable indexes of the container, replacing its linear scans by name during URI parsing
+    private Map<String, CsdlEntitySet> entitySetsByName = Collections.emptyMap();
+    private Map<String, CsdlActionImport> actionImportsByName = Collections.emptyMap();
+    private Map<String, CsdlFunctionImport> functionImportsByName = Collections.emptyMap();
 
-    public AbstractEdmProvider(List<CsdlProvider> providers) {
-
-        // Set is always in the context of container.
-        List<CsdlEntitySet> entitySets = new ArrayList<>();
-
-        providers.forEach(csdlProvider -> {
-            CsdlEntitySet set = csdlProvider.getCsdlEntitySet();
-            if (set != null) {
-                entitySets.add(set);
-            }
+    // maps, for making request by fqn more readable; linked to keep the order of providers in schemas
+    private Map<FullQualifiedName, CsdlEntityType> entities = new LinkedHashMap<>();
+    private Map<FullQualifiedName, CsdlEnumType> enums = new LinkedHashMap<>();
+    private Map<FullQualifiedName, CsdlComplexType> complexTypes = new LinkedHashMap<>();
+    private Map<FullQualifiedName, List<CsdlAction>> actions = new LinkedHashMap<>();
+    private Map<FullQualifiedName, List<CsdlFunction>> functions = new LinkedHashMap<>();
 
-            updateTypesMapWithType(csdlProvider.getCsdlEntityType(), entities);
+    public AbstractEdmProvider(List<CsdlProvider> providers) {
+        this(providers, false);
+    }
 
-            updateTypesMapWithType(csdlProvider.getCsdlEnumType(), enums);
-            updateTypesMapWithType(csdlProvider.getCsdlComplexType(), complexTypes);
+    /**
+     * @param providers
+     *         sources of CSDL
+     * @param lazy
+     *         if true, types and sets are looked up in the single provider they come from, {@link LazyCsdlProvider
+     *         LazyCsdlProviders} are extracted on first lookup. Everything is merged only when needed as a whole,
+     *         e.g. for {@code $metadata}, the service document or operations.
+     */
+    public AbstractEdmProvider(List<CsdlProvider> providers, boolean lazy) {
+        this.providers = providers;
+        if (lazy) {
+            providers.forEach(csdlProvider -> {
+                if (csdlProvider.getFQN() != null) {
+                    providersByFqn.put(csdlProvider.getFQN(), csdlProvider);
+                }
+                String setName = getEntitySetName(csdlProvider);
+                if (setName != null) {
+                    providersBySet.put(setName, csdlProvider);
+                }
+            });
+        } else {
+            build();
+        }
+    }
 
-            updateOperationsMapFromList(csdlProvider.getCsdlActions(), actions);
-            updateOperationsMapFromList(csdlProvider.getCsdlFunctions(), functions);
-        });
+    /**
+     * {@link #extract(Collection, ForkJoinPool)} on the common pool.
+     */
+    public static List<CsdlProvider> extract(Collection<? extends CsdlProvider.Factory> factories)
+            throws CsdlExtractException {
+        return extract(factories, ForkJoinPool.commonPool());
+    }
 
-        container.setEntitySets(entitySets).setActionImports(getActionImports())
-                 .setFunctionImports(getFunctionImports());
+    /**
+     * Creates providers concurrently, logging the time spent on each of them (debug) and on all of them (info).
+     *
+     * @param factories
+     *         factories of independent providers
+     * @param pool
+     *         pool running the factories
+     * @return providers in the order of factories
+     * @throws CsdlExtractException
+     *         first failure, in the order of factories
+     */
+    public static List<CsdlProvider> extract(Collection<? extends CsdlProvider.Factory> factories, ForkJoinPool pool)
+            throws CsdlExtractException {
+        long start = System.nanoTime();
+        List<Callable<CsdlProvider>> tasks = new ArrayList<>(factories.size());
+        for (CsdlProvider.Factory factory : factories) {
+            tasks.add(() -> {
+                long providerStart = System.nanoTime();
+                CsdlProvider result = factory.create();
+                LOG.debug("CSDL for {} extracted in {} us", describe(result),
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - providerStart));
+                return result;
+            });
+        }
 
-        schemas.add(
-                new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.ENTITIES).setEntityContainer(container)
-                                .setEntityTypes(new ArrayList<>(entities.values())));
-        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.ACTIONS)
-                                    .setActions(normalizeOperations(actions)));
-        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.FUNCTIONS)
-                                    .setFunctions(normalizeOperations(functions)));
-        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.ENUMS)
-                                    .setEnumTypes(new ArrayList<>(enums.values())));
-        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.COMPLEX_TYPES)
-                                    .setComplexTypes(new ArrayList<>(complexTypes.values())));
+        List<CsdlProvider> result = new ArrayList<>(tasks.size());
+        for (Future<CsdlProvider> future : pool.invokeAll(tasks)) {
+            try {
+                result.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CsdlExtractException("Interrupted while extracting CSDL");
+            } catch (ExecutionException e) {
+                // some JDKs wrap checked exceptions of adapted callables once more
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof CsdlExtractException) {
+                        throw (CsdlExtractException) cause;
+                    }
+                }
+                throw new IllegalStateException("Can't extract CSDL", e.getCause());
+            }
+        }
+        LOG.info("CSDL for {} providers extracted in {} ms", result.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
     }
 
     @Override
     public List<CsdlSchema> getSchemas() {
+        ensureBuilt();
         return schemas;
     }
 
     @Override
     public CsdlEntityContainer getEntityContainer() {
+        ensureBuilt();
         return container;
     }
 
@@ -100,41 +183,61 @@ public abstract class AbstractEdmProvider extends CsdlAbstractEdmProvider {
 
     @Override
     public CsdlEntityType getEntityType(FullQualifiedName entityTypeName) {
+        if (!built) {
+            CsdlProvider provider = providersByFqn.get(entityTypeName);
+            return provider == null ? null : provider.getCsdlEntityType();
+        }
         return entities.get(entityTypeName);
     }
 
     @Override
     public CsdlEntitySet getEntitySet(FullQualifiedName entityContainer, String entitySetName) {
         if (entityContainer.equals(FullQualifiedNamesUtil.CONTAINER_FQN)) {
-            return container.getEntitySet(entitySetName);
+            if (!built) {
+                CsdlProvider provider = providersBySet.get(entitySetName);
+                return provider == null ? null : provider.getCsdlEntitySet();
+            }
+            return entitySetsByName.get(entitySetName);
         }
         return null;
     }
 
     @Override
     public CsdlEnumType getEnumType(FullQualifiedName enumTypeName) throws ODataException {
+        if (!built) {
+            CsdlProvider provider = providersByFqn.get(enumTypeName);
+            return provider == null ? null : provider.getCsdlEnumType();
+        }
         return enums.get(enumTypeName);
     }
 
     @Override
     public CsdlComplexType getComplexType(FullQualifiedName complexTypeName) throws ODataException {
+        if (!built) {
+            CsdlProvider provider = providersByFqn.get(complexTypeName);
+            return provider == null ? null : provider.getCsdlComplexType();
+        }
         return complexTypes.get(complexTypeName);
     }
 
     @Override
     public List<CsdlAction> getActions(FullQualifiedName actionName) {
+        // bound operations are declared by their entities, so they need everything
+        ensureBuilt();
         return actions.get(actionName);
     }
 
     @Override
     public List<CsdlFunction> getFunctions(FullQualifiedName functionName) {
+        ensureBuilt();
         return functions.get(functionName);
     }
 
     @Override
     public CsdlActionImport getActionImport(FullQualifiedName entityContainer, String actionImportName) {
         if (entityContainer.equals(FullQualifiedNamesUtil.CONTAINER_FQN)) {
-            return container.getActionImport(actionImportName);
+            ensureBuilt();
+            return actionImportsByName.get(actionImportName);
         }
         return null;
     }
@@ -142,7 +245,8 @@ public abstract class AbstractEdmProvider extends CsdlAbstractEdmProvider {
     @Override
     public CsdlFunctionImport getFunctionImport(FullQualifiedName entityContainer, String functionImportName) {
         if (entityContainer.equals(FullQualifiedNamesUtil.CONTAINER_FQN)) {
-            return container.getFunctionImport(functionImportName);
+            ensureBuilt();
+            return functionImportsByName.get(functionImportName);
         }
         return null;
     }
@@ -186,11 +290,8 @@ public abstract class AbstractEdmProvider extends CsdlAbstractEdmProvider {
                 throw new IllegalStateException("Not an operation");
             }
 
-            if (operations.containsKey(fqn)) {
-                operations.get(fqn).add(operation);
-            } else {
-                operations.put(fqn, Arrays.asList(operation));
-            }
+            // overloads share FQN
+            operations.computeIfAbsent(fqn, key -> new ArrayList<>()).add(operation);
         }
     }
 
@@ -201,4 +302,79 @@ public abstract class AbstractEdmProvider extends CsdlAbstractEdmProvider {
         }
         return normalized;
     }
+
+    private void ensureBuilt() {
+        if (!built) {
+            build();
+        }
+    }
+
+    private synchronized void build() {
+        if (built) {
+            return;
+        }
+
+        // Set is always in the context of container.
+        List<CsdlEntitySet> entitySets = new ArrayList<>();
+
+        providers.forEach(csdlProvider -> {
+            CsdlEntitySet set = csdlProvider.getCsdlEntitySet();
+            if (set != null) {
+                entitySets.add(set);
+            }
+
+            updateTypesMapWithType(csdlProvider.getCsdlEntityType(), entities);
+
+            updateTypesMapWithType(csdlProvider.getCsdlEnumType(), enums);
+            updateTypesMapWithType(csdlProvider.getCsdlComplexType(), complexTypes);
+
+            updateOperationsMapFromList(csdlProvider.getCsdlActions(), actions);
+            updateOperationsMapFromList(csdlProvider.getCsdlFunctions(), functions);
+        });
+
+        container.setEntitySets(entitySets).setActionImports(getActionImports())
+                 .setFunctionImports(getFunctionImports());
+        entitySetsByName = indexByName(container.getEntitySets(), CsdlEntitySet::getName);
+        actionImportsByName = indexByName(container.getActionImports(), CsdlActionImport::getName);
+        functionImportsByName = indexByName(container.getFunctionImports(), CsdlFunctionImport::getName);
+
+        schemas.add(
+                new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.ENTITIES).setEntityContainer(container)
+                                .setEntityTypes(new ArrayList<>(entities.values())));
+        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.ACTIONS)
+                                    .setActions(normalizeOperations(actions)));
+        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.FUNCTIONS)
+                                    .setFunctions(normalizeOperations(functions)));
+        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.ENUMS)
+                                    .setEnumTypes(new ArrayList<>(enums.values())));
+        schemas.add(new CsdlSchema().setNamespace(FullQualifiedNamesUtil.NAMESPACE.COMPLEX_TYPES)
+                                    .setComplexTypes(new ArrayList<>(complexTypes.values())));
+        built = true;
+    }
+
+    private static <T> Map<String, T> indexByName(List<T> items, Function<T, String> name) {
+        if (items == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, T> result = new HashMap<>();
+        for (T item : items) {
+            // first wins, like in the scan of CsdlEntityContainer
+            result.putIfAbsent(name.apply(item), item);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static String getEntitySetName(CsdlProvider provider) {
+        if (provider instanceof LazyCsdlProvider) {
+            return ((LazyCsdlProvider) provider).getEntitySetName();
+        }
+        CsdlEntitySet set = provider.getCsdlEntitySet();
+        return set == null ? null : set.getName();
+    }
+
+    private static String describe(CsdlProvider provider) {
+        return provider instanceof JavaObjectCsdlProvider ?
+                ((JavaObjectCsdlProvider<?>) provider).getBackingClass().getName() :
+                provider.getClass().getName();
+    }
 }
@@ -10,6 +10,8 @@ import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
 import org.apache.olingo.commons.api.edm.provider.CsdlEnumType;
 import org.apache.olingo.commons.api.edm.provider.CsdlFunction;
 
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+
 /**
  * Basic building block which allows to build $metadata.
  * CSDL = Common Schema Definition Language, lang for $metadata.
@@ -56,4 +58,15 @@ public interface CsdlProvider {
      * Functions are read-only. Shouldn't change any type.
      */
     List<CsdlFunction> getCsdlFunctions();
+
+    /**
+     * Deferred creation of a provider, so independent providers can be extracted in parallel, e.g.
+     * {@code () -> new JpaEntityCsdlProvider<>(Person.class)}.
+     *
+     * @see io.github.mat3e.odata.common.provider.AbstractEdmProvider#extract(java.util.Collection)
+     */
+    @FunctionalInterface
+    interface Factory {
+        CsdlProvider create() throws CsdlExtractException;
+    }
 }
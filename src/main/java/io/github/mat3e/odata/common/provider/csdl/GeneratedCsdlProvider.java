@@ -0,0 +1,17 @@
+package io.github.mat3e.odata.common.provider.csdl;
+
+import java.util.Map;
+
+/**
+ * CSDL of the entity generated at compile time by {@link io.github.mat3e.odata.common.apt.ODataEntityProcessor}.
+ * Implementation is placed next to the entity and named after it, e.g. {@code Outer_Entity_OlingoCsdl}
+ * for {@code Outer.Entity}.
+ */
+public interface GeneratedCsdlProvider extends CsdlProvider {
+    String SUFFIX = "_OlingoCsdl";
+
+    /**
+     * @return OData property (and navigation property) names mapped to the names of the source Java fields
+     */
+    Map<String, String> getJavaProperties();
+}
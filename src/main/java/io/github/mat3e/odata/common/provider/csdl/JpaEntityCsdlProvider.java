@@ -4,6 +4,8 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -56,7 +58,18 @@ public class JpaEntityCsdlProvider<T extends JpaOlingoEntity> extends JavaObject
 
     private Map<String, String> ODataToJavaProperties = new HashMap<>();
 
+    // prepared calls of the operations, by OData name (overloads share it)
+    private Map<String, List<OperationInvoker>> invokers = new HashMap<>();
+
     public JpaEntityCsdlProvider(Class<T> clazz) throws CsdlExtractException {
+        this(clazz, true);
+    }
+
+    /**
+     * @param useGenerated
+     *         false to extract CSDL with reflection even if there is a generated {@link GeneratedCsdlProvider}
+     */
+    JpaEntityCsdlProvider(Class<T> clazz, boolean useGenerated) throws CsdlExtractException {
         super(clazz);
 
         this.entityAnnotation = clazz.getAnnotation(ODataEntity.class);
@@ -64,7 +77,7 @@ public class JpaEntityCsdlProvider<T extends JpaOlingoEntity> extends JavaObject
             throw new CsdlExtractException("Entity must be annotated as ODataEntity to build its CSDL representation");
         }
 
-        init();
+        init(useGenerated);
     }
 
     @Override
@@ -110,6 +123,32 @@ public class JpaEntityCsdlProvider<T extends JpaOlingoEntity> extends JavaObject
         return ODataToJavaProperties.get(ODataProperty);
     }
 
+    /**
+     * @param name
+     *         OData name of a bound operation
+     * @return prepared call of the operation or null if there is no such; the first one for overloads
+     */
+    public OperationInvoker getOperationInvoker(String name) {
+        List<OperationInvoker> overloads = invokers.get(name);
+        return overloads == null ? null : overloads.get(0);
+    }
+
+    /**
+     * @param name
+     *         OData name of a bound operation
+     * @param parameterNames
+     *         names of parameters, without the binding one
+     * @return prepared call of the overload taking exactly the given parameters or null if there is no such
+     */
+    public OperationInvoker getOperationInvoker(String name, Collection<String> parameterNames) {
+        for (OperationInvoker invoker : invokers.getOrDefault(name, Collections.emptyList())) {
+            if (invoker.accepts(parameterNames)) {
+                return invoker;
+            }
+        }
+        return null;
+    }
+
     /**
      * Entity shouldn't define enums inside.
      */
@@ -126,7 +165,21 @@ public class JpaEntityCsdlProvider<T extends JpaOlingoEntity> extends JavaObject
         return null;
     }
 
-    private void init() throws CsdlExtractException {
+    private void init(boolean useGenerated) throws CsdlExtractException {
+        GeneratedCsdlProvider generated = useGenerated ?
+                ReflectionUtil.instantiateGenerated(clazz, GeneratedCsdlProvider.SUFFIX, GeneratedCsdlProvider.class) :
+                null;
+        if (generated != null) {
+            initFromGenerated(generated);
+            // generated CSDL doesn't cover calls
+            for (Method method : ReflectionUtil.getMethodsUpToJpaOdataEntity(clazz)) {
+                if (method.isAnnotationPresent(ODataOperation.class)) {
+                    addInvoker(method);
+                }
+            }
+            return;
+        }
+
         this.fqn = FullQualifiedNamesUtil.createFullQualifiedEntityName(entityAnnotation.name());
 
         this.eType = new CsdlEntityType().setName(entityAnnotation.name())
@@ -160,6 +213,7 @@ public class JpaEntityCsdlProvider<T extends JpaOlingoEntity> extends JavaObject
                 } else {
                     functions.add(extractFunction(method));
                 }
+                addInvoker(method);
             }
         }
 
@@ -168,6 +222,23 @@ public class JpaEntityCsdlProvider<T extends JpaOlingoEntity> extends JavaObject
                                        .setNavigationPropertyBindings(navBinds).setIncludeInServiceDocument(true);
     }
 
+    /**
+     * Reuses CSDL prepared at compile time by {@link io.github.mat3e.odata.common.apt.ODataEntityProcessor}.
+     */
+    private void initFromGenerated(GeneratedCsdlProvider generated) {
+        this.fqn = generated.getFQN();
+        this.eType = generated.getCsdlEntityType();
+        this.eSet = generated.getCsdlEntitySet();
+        this.actions.addAll(generated.getCsdlActions());
+        this.functions.addAll(generated.getCsdlFunctions());
+        this.ODataToJavaProperties.putAll(generated.getJavaProperties());
+    }
+
+    private void addInvoker(Method method) throws CsdlExtractException {
+        OperationInvoker invoker = OperationInvoker.of(method);
+        invokers.computeIfAbsent(invoker.getName(), name -> new ArrayList<>(1)).add(invoker);
+    }
+
     private CsdlPropertyRef extractKey(Field f) throws CsdlExtractException {
         ODataProperty prop = f.getAnnotation(ODataProperty.class);
         if (prop == null) {
@@ -0,0 +1,128 @@
+package io.github.mat3e.odata.common.provider.csdl;
+
+import java.util.List;
+
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlAction;
+import org.apache.olingo.commons.api.edm.provider.CsdlComplexType;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntitySet;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+import org.apache.olingo.commons.api.edm.provider.CsdlEnumType;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunction;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.util.FullQualifiedNamesUtil;
+
+/**
+ * Provider known just by its FQN and entity set name until any CSDL is requested. Then the real provider is created
+ * once and every call is delegated to it.
+ * <p>
+ * Meant for lazy {@link io.github.mat3e.odata.common.provider.AbstractEdmProvider}, where only the types used by
+ * requests are extracted.
+ */
+public final class LazyCsdlProvider implements CsdlProvider {
+    private final FullQualifiedName fqn;
+    private final String entitySetName;
+    private final Factory factory;
+
+    private volatile CsdlProvider delegate;
+
+    /**
+     * @param fqn
+     *         FQN of the provided type
+     * @param entitySetName
+     *         name of the entity set, null if the provider has no set
+     * @param factory
+     *         creates the real provider
+     */
+    public LazyCsdlProvider(FullQualifiedName fqn, String entitySetName, Factory factory) {
+        this.fqn = fqn;
+        this.entitySetName = entitySetName;
+        this.factory = factory;
+    }
+
+    /**
+     * Reads only {@link ODataEntity} up front, the rest of the class is scanned by {@link JpaEntityCsdlProvider}
+     * on first use.
+     */
+    public static <T extends JpaOlingoEntity> LazyCsdlProvider of(Class<T> entityClass) throws CsdlExtractException {
+        ODataEntity entityAnnotation = entityClass.getAnnotation(ODataEntity.class);
+        if (entityAnnotation == null) {
+            throw new CsdlExtractException("Entity must be annotated as ODataEntity to build its CSDL representation");
+        }
+        return new LazyCsdlProvider(FullQualifiedNamesUtil.createFullQualifiedEntityName(entityAnnotation.name()),
+                entityAnnotation.entitySetName(), () -> new JpaEntityCsdlProvider<>(entityClass));
+    }
+
+    @Override
+    public FullQualifiedName getFQN() {
+        return fqn;
+    }
+
+    /**
+     * Name of the entity set, available without extracting CSDL.
+     */
+    public String getEntitySetName() {
+        return entitySetName;
+    }
+
+    /**
+     * @return true if the real provider was already created
+     */
+    public boolean isExtracted() {
+        return delegate != null;
+    }
+
+    /**
+     * Real provider, created on the first call.
+     */
+    public CsdlProvider getDelegate() {
+        CsdlProvider result = delegate;
+        if (result == null) {
+            synchronized (this) {
+                result = delegate;
+                if (result == null) {
+                    try {
+                        result = factory.create();
+                    } catch (CsdlExtractException e) {
+                        throw new IllegalStateException("Can't extract CSDL for " + fqn, e);
+                    }
+                    delegate = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CsdlEntitySet getCsdlEntitySet() {
+        return getDelegate().getCsdlEntitySet();
+    }
+
+    @Override
+    public CsdlEntityType getCsdlEntityType() {
+        return getDelegate().getCsdlEntityType();
+    }
+
+    @Override
+    public CsdlEnumType getCsdlEnumType() {
+        return getDelegate().getCsdlEnumType();
+    }
+
+    @Override
+    public CsdlComplexType getCsdlComplexType() {
+        return getDelegate().getCsdlComplexType();
+    }
+
+    @Override
+    public List<CsdlAction> getCsdlActions() {
+        return getDelegate().getCsdlActions();
+    }
+
+    @Override
+    public List<CsdlFunction> getCsdlFunctions() {
+        return getDelegate().getCsdlFunctions();
+    }
+}
@@ -0,0 +1,265 @@
+package io.github.mat3e.odata.common.provider.csdl;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.Parameter;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.core.edm.primitivetype.EdmPrimitiveTypeFactory;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.serializer.PrimitiveSerializerOptions;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.serializer.SerializerResult;
+import org.apache.olingo.server.api.uri.UriParameter;
+
+import io.github.mat3e.odata.common.annotation.ODataOperation;
+import io.github.mat3e.odata.common.annotation.ODataOperationParameter;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.util.EdmTypeUtil;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+/**
+ * Call of a bound {@link ODataOperation} method, prepared once by {@link JpaEntityCsdlProvider}.
+ * <p>
+ * {@link ODataOperationParameter} names are bound to argument slots, each slot gets its EDM type and conversion
+ * (the same types as in CSDL, from {@link EdmTypeUtil}). The method is called through a {@link MethodHandle} spread
+ * over the slots, which unboxes arguments itself, so there is neither a {@link Method} lookup nor reflective argument
+ * checks per call. Results are serialized with the EDM return type known up front.
+ */
+public final class OperationInvoker {
+    private final String name;
+    private final boolean action;
+    private final MethodHandle handle;
+
+    // argument slots
+    private final String[] parameterNames;
+    private final Class<?>[] parameterTypes;
+    private final boolean[] primitive;
+    private final EdmPrimitiveType[] parameterEdmTypes;
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    // null for void methods
+    private final EdmPrimitiveType returnType;
+    private final boolean returnsCollection;
+
+    private OperationInvoker(Method method) throws CsdlExtractException {
+        ODataOperation annotation = method.getAnnotation(ODataOperation.class);
+        this.name = annotation.name();
+        this.action = annotation.action();
+
+        Class<?>[] types = method.getParameterTypes();
+        Annotation[][] annotations = method.getParameterAnnotations();
+        this.parameterNames = new String[types.length];
+        this.parameterTypes = new Class<?>[types.length];
+        this.primitive = new boolean[types.length];
+        this.parameterEdmTypes = new EdmPrimitiveType[types.length];
+        for (int i = 0; i < types.length; ++i) {
+            for (Annotation parameterAnnotation : annotations[i]) {
+                if (parameterAnnotation instanceof ODataOperationParameter) {
+                    parameterNames[i] = ((ODataOperationParameter) parameterAnnotation).name();
+                    break;
+                }
+            }
+            if (parameterNames[i] == null) {
+                throw new CsdlExtractException("Parameter " + i + " of " + method + " must be annotated as " +
+                        "ODataOperationParameter");
+            }
+            slots.put(parameterNames[i], i);
+            parameterTypes[i] = ReflectionUtil.wrap(types[i]);
+            primitive[i] = types[i].isPrimitive();
+            parameterEdmTypes[i] = EdmPrimitiveTypeFactory.getInstance(EdmTypeUtil.getEdmPrimitiveTypeFor(types[i]));
+        }
+
+        Class<?> returnClass = method.getReturnType();
+        this.returnType = returnClass == Void.TYPE ?
+                null :
+                EdmPrimitiveTypeFactory.getInstance(EdmTypeUtil.getEdmPrimitiveTypeFor(returnClass));
+        this.returnsCollection = returnClass != Void.TYPE && ReflectionUtil.isArrayOrCollection(returnClass);
+
+        try {
+            method.setAccessible(true);
+            // (Entity, P1..Pn)R adapted to (Object, Object[])Object, void returning null
+            this.handle = MethodHandles.lookup().unreflect(method)
+                                       .asType(MethodType.genericMethodType(types.length + 1))
+                                       .asSpreader(Object[].class, types.length);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new CsdlExtractException("Can't prepare a call of " + method + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return invoker of the method annotated with {@link ODataOperation}
+     */
+    public static OperationInvoker of(Method method) throws CsdlExtractException {
+        return new OperationInvoker(method);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isAction() {
+        return action;
+    }
+
+    /**
+     * Names of parameters, without the binding one, in the order of the method.
+     */
+    public List<String> getParameterNames() {
+        return Collections.unmodifiableList(Arrays.asList(parameterNames));
+    }
+
+    /**
+     * @return true if this overload takes exactly the given parameters
+     */
+    public boolean accepts(Collection<String> names) {
+        if (names.size() != parameterNames.length) {
+            return false;
+        }
+        for (String parameterName : names) {
+            if (!slots.containsKey(parameterName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls an action with the deserialized parameters.
+     *
+     * @param target
+     *         entity the operation is bound to
+     * @param parameters
+     *         parameters by name, e.g. from {@code ODataDeserializer#actionParameters}
+     * @return result of the method, null for void ones
+     * @throws InvocationTargetException
+     *         when the method throws a checked exception
+     */
+    public Object invoke(Object target, Map<String, Parameter> parameters) throws InvocationTargetException {
+        Object[] arguments = new Object[parameterNames.length];
+        for (int i = 0; i < arguments.length; ++i) {
+            Parameter parameter = parameters.get(parameterNames[i]);
+            arguments[i] = parameter == null ? null : convert(i, parameter.getValue());
+        }
+        return call(target, arguments);
+    }
+
+    /**
+     * Calls a function with parameters from the URI.
+     *
+     * @param target
+     *         entity the operation is bound to
+     * @param parameters
+     *         parameters with literals, e.g. from {@code UriResourceFunction#getParameters}
+     * @return result of the method, null for void ones
+     * @throws InvocationTargetException
+     *         when the method throws a checked exception
+     */
+    public Object invoke(Object target, List<UriParameter> parameters) throws InvocationTargetException {
+        Object[] arguments = new Object[parameterNames.length];
+        for (UriParameter parameter : parameters) {
+            Integer slot = slots.get(parameter.getName());
+            if (slot == null) {
+                throw new IllegalArgumentException("Unknown parameter " + parameter.getName() + " of " + name);
+            }
+            arguments[slot] = parse(slot, parameter.getText());
+        }
+        return call(target, arguments);
+    }
+
+    /**
+     * @return result of the method as a property of the EDM return type
+     */
+    public Property toProperty(Object result) {
+        if (!returnsCollection) {
+            return new Property(null, name, ValueType.PRIMITIVE, result);
+        }
+        List<Object> values;
+        if (result == null) {
+            values = Collections.emptyList();
+        } else if (result instanceof Collection) {
+            values = new ArrayList<>((Collection<?>) result);
+        } else {
+            values = new ArrayList<>(Array.getLength(result));
+            for (int i = 0; i < Array.getLength(result); ++i) {
+                values.add(Array.get(result, i));
+            }
+        }
+        return new Property(null, name, ValueType.COLLECTION_PRIMITIVE, values);
+    }
+
+    /**
+     * Serializes the result with the return type prepared for the operation.
+     *
+     * @throws IllegalStateException
+     *         for void operations
+     */
+    public SerializerResult serialize(OData odata, ServiceMetadata serviceMetadata, ContentType format,
+            Object result) throws SerializerException {
+        if (returnType == null) {
+            throw new IllegalStateException("Operation " + name + " returns nothing");
+        }
+        ContextURL.Builder contextUrl = ContextURL.with().type(returnType);
+        PrimitiveSerializerOptions options = PrimitiveSerializerOptions.with()
+                .contextURL((returnsCollection ? contextUrl.asCollection() : contextUrl).build())
+                .build();
+        return returnsCollection ?
+                odata.createSerializer(format).primitiveCollection(serviceMetadata, returnType, toProperty(result),
+                        options) :
+                odata.createSerializer(format).primitive(serviceMetadata, returnType, toProperty(result), options);
+    }
+
+    private Object call(Object target, Object[] arguments) throws InvocationTargetException {
+        for (int i = 0; i < arguments.length; ++i) {
+            if (arguments[i] == null ? primitive[i] : !parameterTypes[i].isInstance(arguments[i])) {
+                throw new IllegalArgumentException("Invalid " + parameterNames[i] + " of " + name + ": " +
+                        arguments[i]);
+            }
+        }
+        try {
+            return (Object) handle.invokeExact(target, arguments);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Olingo deserializes numbers to the default Java types of their EDM types, which may differ from the method.
+     */
+    private Object convert(int slot, Object value) {
+        return EdmTypeUtil.toJavaValue(value, parameterTypes[slot]);
+    }
+
+    private Object parse(int slot, String literal) {
+        if (literal == null || "null".equals(literal)) {
+            return null;
+        }
+        EdmPrimitiveType type = parameterEdmTypes[slot];
+        try {
+            return type.valueOfString(type.fromUriLiteral(literal), null, null, null, null, null,
+                    parameterTypes[slot]);
+        } catch (EdmPrimitiveTypeException e) {
+            throw new IllegalArgumentException("Invalid " + parameterNames[slot] + " of " + name + ": " + literal, e);
+        }
+    }
+}
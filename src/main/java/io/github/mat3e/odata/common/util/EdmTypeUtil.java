@@ -9,8 +9,10 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -21,7 +23,7 @@ import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
 import io.github.mat3e.odata.common.exception.CsdlExtractException;
 
 /**
- * Util for mapping from Java to Edm types.
+ * Util for mapping from Java to Edm types and back, for values deserialized by Olingo.
  */
 public class EdmTypeUtil {
 
@@ -80,4 +82,94 @@ public class EdmTypeUtil {
 
         return result;
     }
+
+    /**
+     * Converts a value deserialized by Olingo into the Java type of the field or parameter. Olingo answers with its
+     * default types, e.g. {@link Calendar} for {@code Edm.Date} and {@code Edm.TimeOfDay}, {@link Timestamp} for
+     * {@code Edm.DateTimeOffset}, {@link BigDecimal} seconds for {@code Edm.Duration} and {@link Short} for
+     * {@code Edm.Byte}, which the field of e.g. {@link LocalDate} type doesn't accept. Calendars are read by their
+     * fields (not the instant), so a date stays the same day regardless of the time zone of the JVM.
+     *
+     * @param value
+     *         value from Olingo, may be null
+     * @param javaType
+     *         declared Java type, primitives allowed
+     * @return value of the Java type if a conversion is known, the value itself otherwise
+     */
+    public static Object toJavaValue(Object value, Class<?> javaType) {
+        Class<?> type = ReflectionUtil.wrap(javaType);
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            return fromLocal(LocalDateTime.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+                    calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.HOUR_OF_DAY),
+                    calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND),
+                    calendar.get(Calendar.MILLISECOND) * 1_000_000), type, value);
+        }
+        if (value instanceof Timestamp) {
+            return fromLocal(((Timestamp) value).toLocalDateTime(), type, value);
+        }
+        if (value instanceof Date) {
+            return fromLocal(LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault()), type, value);
+        }
+        if (value instanceof BigDecimal && type == Duration.class) {
+            BigDecimal seconds = (BigDecimal) value;
+            BigDecimal whole = new BigDecimal(seconds.toBigInteger());
+            return Duration.ofSeconds(whole.longValueExact(), seconds.subtract(whole).movePointRight(9).longValue());
+        }
+        if (value instanceof Number) {
+            return fromNumber((Number) value, type);
+        }
+        if (value instanceof byte[] && type == Byte[].class) {
+            byte[] bytes = (byte[]) value;
+            Byte[] boxed = new Byte[bytes.length];
+            for (int i = 0; i < bytes.length; ++i) {
+                boxed[i] = bytes[i];
+            }
+            return boxed;
+        }
+        return value;
+    }
+
+    private static Object fromLocal(LocalDateTime local, Class<?> type, Object value) {
+        if (type == LocalDate.class) {
+            return local.toLocalDate();
+        } else if (type == LocalTime.class) {
+            return local.toLocalTime();
+        } else if (type == LocalDateTime.class) {
+            return local;
+        } else if (type == java.sql.Date.class) {
+            return java.sql.Date.valueOf(local.toLocalDate());
+        } else if (type == Time.class) {
+            return new Time(Timestamp.valueOf(local.toLocalTime().atDate(LocalDate.ofEpochDay(0))).getTime());
+        } else if (type == Timestamp.class) {
+            return Timestamp.valueOf(local);
+        } else if (type == Date.class) {
+            return Date.from(local.atZone(ZoneId.systemDefault()).toInstant());
+        } else if (type == Calendar.class) {
+            return GregorianCalendar.from(local.atZone(ZoneId.systemDefault()));
+        }
+        return value;
+    }
+
+    private static Object fromNumber(Number number, Class<?> type) {
+        if (type == Integer.class) {
+            return number.intValue();
+        } else if (type == Long.class) {
+            return number.longValue();
+        } else if (type == Short.class) {
+            return number.shortValue();
+        } else if (type == Byte.class) {
+            return number.byteValue();
+        } else if (type == Double.class) {
+            return number.doubleValue();
+        } else if (type == Float.class) {
+            return number.floatValue();
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(number.toString());
+        }
+        return number;
+    }
 }
@@ -3,6 +3,8 @@ package io.github.mat3e.odata.common.util;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
@@ -11,6 +13,16 @@ import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
  * Helper class for extracting annotations from Olingo Entities.
  */
 public class ReflectionUtil {
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<Class<?>, Class<?>>() {{
+        put(boolean.class, Boolean.class);
+        put(byte.class, Byte.class);
+        put(short.class, Short.class);
+        put(int.class, Integer.class);
+        put(long.class, Long.class);
+        put(float.class, Float.class);
+        put(double.class, Double.class);
+        put(char.class, Character.class);
+    }};
 
     /**
      * Checks field class conditions to answer if it contains multiple elements.
@@ -76,6 +88,61 @@ public class ReflectionUtil {
         return result.toArray(Method[]::new);
     }
 
+    /**
+     * Name of the class generated for the given one, placed in the same package.
+     * Nested classes are flattened, e.g. {@code a.Outer$Inner} with {@code _Suffix} becomes
+     * {@code a.Outer_Inner_Suffix}.
+     *
+     * @param source
+     *         class for which the code was generated
+     * @param suffix
+     *         suffix of the generated class
+     * @return binary name of the generated class
+     */
+    public static String getGeneratedClassName(Class<?> source, String suffix) {
+        String name = source.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        return name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + suffix;
+    }
+
+    /**
+     * Creates an instance of the class generated for the given one, if there is such.
+     *
+     * @param source
+     *         class for which the code was generated
+     * @param suffix
+     *         suffix of the generated class
+     * @param expectedType
+     *         type which should be implemented by the generated class
+     * @return instance of the generated class or null when the class is not generated
+     */
+    public static <T> T instantiateGenerated(Class<?> source, String suffix, Class<T> expectedType) {
+        Class<?> generated;
+        try {
+            generated = Class.forName(getGeneratedClassName(source, suffix), true, source.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        if (!expectedType.isAssignableFrom(generated)) {
+            return null;
+        }
+        try {
+            return expectedType.cast(generated.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't instantiate generated " + generated.getName(), e);
+        }
+    }
+
+    /**
+     * @param type
+     *         any class
+     * @return wrapper for primitive type, the type itself otherwise
+     */
+    public static Class<?> wrap(Class<?> type) {
+        return type.isPrimitive() ? WRAPPERS.get(type) : type;
+    }
+
     private static boolean isLastClass(Class<?> clazz) {
         return clazz.equals(JpaOlingoEntity.class);
     }
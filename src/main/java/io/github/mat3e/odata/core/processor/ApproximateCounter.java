@@ -0,0 +1,19 @@
+package io.github.mat3e.odata.core.processor;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Source of approximate entity set counts, for sets marked with
+ * {@link io.github.mat3e.odata.common.annotation.ODataEntity#approximateCount()}.
+ */
+@FunctionalInterface
+public interface ApproximateCounter {
+    /**
+     * @param entityManager
+     *         manager for running queries
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @return estimated number of all the entities of the class or null when there is no estimate
+     */
+    Long estimate(EntityManager entityManager, Class<?> entityClass);
+}
@@ -0,0 +1,237 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.Link;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityMetadata.NavigationDescriptor;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+/**
+ * Persists deserialized OData entities, together with the entities nested inline in their navigation properties
+ * (deep insert).
+ * <p>
+ * Entities are only {@link EntityManager#persist(Object) persisted}, so with {@code hibernate.jdbc.batch_size} (and
+ * {@code hibernate.order_inserts}) Hibernate sends them to the database in JDBC batches. Every {@code flushInterval}
+ * entities the persistence context is flushed and cleared, after a whole tree of nested entities, so it never holds
+ * more than a single interval. Hibernate disables JDBC batching of inserts for {@code IDENTITY} keys.
+ */
+class BulkInsert {
+    // navigation properties of the class mapped to fields on the other side of bidirectional associations
+    private static final ClassValue<Map<String, Field>> INVERSE_FIELDS = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            return inverseFields(type);
+        }
+    };
+
+    private final EntityManager entityManager;
+    private final int flushInterval;
+
+    // entities persisted since the last flush
+    private int pending;
+    private int count;
+
+    /**
+     * @param flushInterval
+     *         number of entities between flushes, 0 for no intermediate flushes (e.g. inside of a changeset)
+     */
+    BulkInsert(EntityManager entityManager, int flushInterval) {
+        this.entityManager = entityManager;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @param source
+     *         deserialized entity, with the nested entities as inline links
+     * @return persisted entity, detached when the persistence context was cleared afterwards
+     */
+    <T extends JpaOlingoEntity> T insert(Class<T> entityClass, Entity source) throws ODataApplicationException {
+        Node<T> root = build(entityClass, source);
+        persist(root);
+        if (flushInterval > 0 && pending >= flushInterval) {
+            entityManager.flush();
+            entityManager.clear();
+            pending = 0;
+        }
+        return root.entity;
+    }
+
+    /**
+     * @return number of persisted entities, nested ones included
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Whole graph of the new entities, with associations set on both sides.
+     */
+    private static <T extends JpaOlingoEntity> Node<T> build(Class<T> entityClass, Entity source)
+            throws ODataApplicationException {
+        Node<T> result = new Node<>(instantiate(entityClass));
+        result.entity.post(source);
+
+        Map<String, Field> inverseFields = INVERSE_FIELDS.get(entityClass);
+        for (NavigationDescriptor navigation : EntityMetadata.of(entityClass).getNavigations()) {
+            Link link = source.getNavigationLink(navigation.getName());
+            if (link == null || (link.getInlineEntity() == null && link.getInlineEntitySet() == null)) {
+                continue;
+            }
+
+            Class<? extends JpaOlingoEntity> targetType = targetType(navigation);
+            Field inverse = inverseFields.get(navigation.getName());
+            if (navigation.isCollection()) {
+                List<Entity> sources = link.getInlineEntitySet() == null ?
+                        Collections.singletonList(link.getInlineEntity()) :
+                        link.getInlineEntitySet().getEntities();
+                List<JpaOlingoEntity> targets = new ArrayList<>(sources.size());
+                for (Entity nested : sources) {
+                    Node<?> target = build(targetType, nested);
+                    setInverse(inverse, target.entity, result.entity);
+                    targets.add(target.entity);
+                    result.after.add(target);
+                }
+                navigation.getAccessor().set(result.entity, toCollection(navigation, targets));
+            } else {
+                Node<?> target = build(targetType, link.getInlineEntity());
+                setInverse(inverse, target.entity, result.entity);
+                navigation.getAccessor().set(result.entity, target.entity);
+                // without the inverse field the owner holds the foreign key
+                (inverse == null ? result.before : result.after).add(target);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Entities referenced by the foreign keys of the owner are persisted before it, the others after it.
+     */
+    private void persist(Node<?> node) {
+        for (Node<?> before : node.before) {
+            persist(before);
+        }
+        entityManager.persist(node.entity);
+        ++pending;
+        ++count;
+        for (Node<?> after : node.after) {
+            persist(after);
+        }
+    }
+
+    private static void setInverse(Field inverse, JpaOlingoEntity target, JpaOlingoEntity owner) {
+        if (inverse == null) {
+            return;
+        }
+        try {
+            inverse.set(target, owner);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can't set " + inverse, e);
+        }
+    }
+
+    /**
+     * Fields named in {@code mappedBy} of {@link OneToMany} and {@link OneToOne} navigation properties.
+     */
+    private static Map<String, Field> inverseFields(Class<?> entityClass) {
+        Map<String, Field> result = new HashMap<>();
+        for (Field field : ReflectionUtil.getFieldsUpToJpaOlingoEntity(entityClass)) {
+            String mappedBy = mappedBy(field);
+            if (mappedBy.isEmpty()) {
+                continue;
+            }
+            for (NavigationDescriptor navigation : EntityMetadata.of(entityClass.asSubclass(JpaOlingoEntity.class))
+                    .getNavigations()) {
+                if (navigation.getJavaName().equals(field.getName())) {
+                    Field inverse = findField(navigation.getTargetType(), mappedBy);
+                    inverse.setAccessible(true);
+                    result.put(navigation.getName(), inverse);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String mappedBy(Field field) {
+        OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+        if (oneToMany != null) {
+            return oneToMany.mappedBy();
+        }
+        OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+        return oneToOne == null ? "" : oneToOne.mappedBy();
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return field;
+                }
+            }
+        }
+        throw new IllegalStateException("No field " + name + " in " + type.getName());
+    }
+
+    private static Object toCollection(NavigationDescriptor navigation, List<JpaOlingoEntity> targets) {
+        Class<?> type = navigation.getAccessor().getType();
+        if (type.isArray()) {
+            Object result = Array.newInstance(type.getComponentType(), targets.size());
+            for (int i = 0; i < targets.size(); ++i) {
+                Array.set(result, i, targets.get(i));
+            }
+            return result;
+        }
+        return Set.class.isAssignableFrom(type) ? new LinkedHashSet<>(targets) : targets;
+    }
+
+    private static Class<? extends JpaOlingoEntity> targetType(NavigationDescriptor navigation)
+            throws ODataApplicationException {
+        if (!JpaOlingoEntity.class.isAssignableFrom(navigation.getTargetType())) {
+            throw new ODataApplicationException("Navigation property " + navigation.getName() + " is not backed by JPA",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+        return navigation.getTargetType().asSubclass(JpaOlingoEntity.class);
+    }
+
+    private static <T> T instantiate(Class<T> entityClass) throws ODataApplicationException {
+        try {
+            Constructor<T> constructor = entityClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ODataApplicationException("Can't create " + entityClass.getSimpleName(),
+                    HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH, e);
+        }
+    }
+
+    private static final class Node<T extends JpaOlingoEntity> {
+        final T entity;
+        final List<Node<?>> before = new ArrayList<>();
+        final List<Node<?>> after = new ArrayList<>();
+
+        Node(T entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.MetadataProcessor;
+import org.apache.olingo.server.api.processor.ServiceDocumentProcessor;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.uri.UriInfo;
+
+/**
+ * Serves {@code $metadata} and the service document rendered just once.
+ * <p>
+ * EDM doesn't change at runtime, so every document is serialized by Olingo once per format (the service document
+ * also once per service root, for up to {@link #MAX_SERVICE_ROOTS} roots), kept as immutable bytes, plain and
+ * gzipped, and tagged with a strong {@code ETag} from its hash, different for each of the two encodings.
+ * {@code If-None-Match} with the current tag gets {@code 304} without a body, clients accepting gzip get the
+ * precompressed bytes. XML {@code $metadata} is rendered right in {@link #init(OData, ServiceMetadata)}.
+ * <p>
+ * Documents are rendered again only for another {@link ServiceMetadata} instance, so it should be created once
+ * rather than for every request. To use it, mark a subclass with
+ * {@link io.github.mat3e.odata.core.spring.annotation.OlingoProcessor}.
+ */
+public class CachedMetadataProcessor implements MetadataProcessor, ServiceDocumentProcessor {
+    /**
+     * Service roots come from requests (e.g. the {@code Host} header), so just the first ones get cached documents.
+     */
+    public static final int MAX_SERVICE_ROOTS = 8;
+
+    private static final String GZIP = "gzip";
+
+    // the same instances are registered in the handler of every request
+    private volatile Documents documents;
+
+    protected OData odata;
+    protected ServiceMetadata serviceMetadata;
+
+    @Override
+    public void init(OData odata, ServiceMetadata serviceMetadata) {
+        this.odata = odata;
+        this.serviceMetadata = serviceMetadata;
+
+        Documents current = documents;
+        if (current == null || current.serviceMetadata != serviceMetadata) {
+            Documents rendered = new Documents(serviceMetadata);
+            try {
+                rendered.get(this, ContentType.APPLICATION_XML, null);
+            } catch (SerializerException e) {
+                throw new IllegalStateException("Can't render $metadata", e);
+            }
+            documents = rendered;
+        }
+    }
+
+    @Override
+    public void readMetadata(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+            ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
+        write(request, response, documents().get(this, responseFormat, null));
+    }
+
+    @Override
+    public void readServiceDocument(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+            ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
+        write(request, response, documents().get(this, responseFormat, request.getRawBaseUri()));
+    }
+
+    /**
+     * @param format
+     *         negotiated format of the document
+     * @param serviceRoot
+     *         root for the service document, null for {@code $metadata}
+     * @return serialized document
+     */
+    protected InputStream render(ContentType format, String serviceRoot) throws SerializerException {
+        return serviceRoot == null ?
+                odata.createSerializer(format).metadataDocument(serviceMetadata).getContent() :
+                odata.createSerializer(format).serviceDocument(serviceMetadata, serviceRoot).getContent();
+    }
+
+    private Documents documents() throws ODataApplicationException {
+        Documents result = documents;
+        if (result == null) {
+            throw new ODataApplicationException("Processor not initialized",
+                    HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), Locale.ENGLISH);
+        }
+        return result;
+    }
+
+    static void write(ODataRequest request, ODataResponse response, Document document) {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeader.ACCEPT_ENCODING));
+        // each encoding is a separate representation with its own tag
+        String etag = gzip ? document.gzippedEtag : document.etag;
+        response.setHeader(HttpHeader.ETAG, etag);
+        response.setHeader(HttpHeader.VARY, HttpHeader.ACCEPT_ENCODING);
+        if (ETags.matches(request.getHeader(HttpHeader.IF_NONE_MATCH), etag)) {
+            response.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+            return;
+        }
+
+        byte[] content = gzip ? document.gzipped : document.plain;
+        if (gzip) {
+            response.setHeader(HttpHeader.CONTENT_ENCODING, GZIP);
+        }
+        response.setContent(new ByteArrayInputStream(content));
+        response.setHeader(HttpHeader.CONTENT_LENGTH, Integer.toString(content.length));
+        response.setHeader(HttpHeader.CONTENT_TYPE, document.contentType);
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+    }
+
+    /**
+     * @return true if gzip is listed without {@code q=0}
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "*".equals(name)) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Documents rendered for a single {@link ServiceMetadata}.
+     */
+    private static final class Documents {
+        final ServiceMetadata serviceMetadata;
+        final ConcurrentMap<String, Document> rendered = new ConcurrentHashMap<>();
+        final Set<String> serviceRoots = ConcurrentHashMap.newKeySet();
+
+        Documents(ServiceMetadata serviceMetadata) {
+            this.serviceMetadata = serviceMetadata;
+        }
+
+        Document get(CachedMetadataProcessor processor, ContentType format, String serviceRoot)
+                throws SerializerException {
+            String key = format.toContentTypeString() + (serviceRoot == null ? "" : " " + serviceRoot);
+            Document result = rendered.get(key);
+            if (result == null) {
+                // rendering twice by concurrent requests is harmless, the documents are equal
+                result = new Document(toBytes(processor.render(format, serviceRoot)), format.toContentTypeString());
+                if (serviceRoot != null && !isCached(serviceRoot)) {
+                    return result;
+                }
+                Document previous = rendered.putIfAbsent(key, result);
+                result = previous == null ? result : previous;
+            }
+            return result;
+        }
+
+        /**
+         * @return true if documents for the root can be kept, the number of roots may go slightly above the limit
+         * with concurrent requests
+         */
+        private boolean isCached(String serviceRoot) {
+            if (serviceRoots.contains(serviceRoot)) {
+                return true;
+            }
+            if (serviceRoots.size() >= MAX_SERVICE_ROOTS) {
+                return false;
+            }
+            serviceRoots.add(serviceRoot);
+            return true;
+        }
+
+        private static byte[] toBytes(InputStream content) {
+            try (InputStream in = content) {
+                ByteArrayOutputStream result = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    result.write(buffer, 0, read);
+                }
+                return result.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't render document", e);
+            }
+        }
+    }
+
+    /**
+     * Immutable rendered document.
+     */
+    static final class Document {
+        final byte[] plain;
+        final byte[] gzipped;
+        final String etag;
+        final String gzippedEtag;
+        final String contentType;
+
+        Document(byte[] plain, String contentType) {
+            this.plain = plain;
+            this.gzipped = gzip(plain);
+            this.etag = ETags.of(plain);
+            this.gzippedEtag = etag.substring(0, etag.length() - 1) + "-" + GZIP + '"';
+            this.contentType = contentType;
+        }
+
+        private static byte[] gzip(byte[] plain) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(plain.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(result)) {
+                out.write(plain);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't compress document", e);
+            }
+            return result.toByteArray();
+        }
+    }
+}
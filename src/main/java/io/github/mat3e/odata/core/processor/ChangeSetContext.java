@@ -0,0 +1,30 @@
+package io.github.mat3e.odata.core.processor;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Entity manager of the {@code $batch} changeset processed by the current thread, see
+ * {@link JpaBatchProcessor#processChangeSet}. Processors modifying data should use it when present, so all the
+ * requests of the changeset share a single transaction and a single flush.
+ */
+public final class ChangeSetContext {
+    private static final ThreadLocal<EntityManager> CURRENT = new ThreadLocal<>();
+
+    private ChangeSetContext() {
+    }
+
+    /**
+     * @return manager with an active transaction or null outside of a changeset
+     */
+    public static EntityManager getEntityManager() {
+        return CURRENT.get();
+    }
+
+    static void bind(EntityManager entityManager) {
+        CURRENT.set(entityManager);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+}
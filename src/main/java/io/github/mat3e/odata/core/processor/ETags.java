@@ -0,0 +1,72 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Building and matching of HTTP entity tags.
+ */
+final class ETags {
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // 128 bits are more than enough to tell versions of a document apart
+    private static final int HASH_BYTES = 16;
+
+    private ETags() {
+    }
+
+    /**
+     * @return strong entity tag from the hash of the content
+     */
+    static String of(byte[] content) {
+        byte[] hash = newDigest().digest(content);
+        char[] result = new char[HASH_BYTES * 2];
+        for (int i = 0; i < HASH_BYTES; ++i) {
+            result[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return quote(new String(result));
+    }
+
+    /**
+     * @return strong entity tag with the given value
+     */
+    static String quote(String value) {
+        return '"' + value + '"';
+    }
+
+    /**
+     * Weak comparison, as required for {@code If-None-Match}: {@code W/} prefixes are ignored.
+     *
+     * @param header
+     *         value of {@code If-None-Match} or {@code If-Match}, may be null
+     * @param etag
+     *         current entity tag
+     * @return true if the header lists the tag or is {@code *}
+     */
+    static boolean matches(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        String current = stripWeak(etag);
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag) || stripWeak(tag).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is required on every Java platform", e);
+        }
+    }
+}
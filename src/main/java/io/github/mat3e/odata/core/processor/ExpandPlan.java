@@ -0,0 +1,343 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityMetadata.NavigationDescriptor;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.entity.NavigationExpansion;
+import io.github.mat3e.odata.common.entity.PropertySelection;
+
+/**
+ * Plan for loading {@code $expand} (with nested {@code $select}, {@code $filter}, {@code $orderby}, {@code $top},
+ * {@code $skip} and {@code $expand}) in a fixed number of queries per response instead of one per entity.
+ * <p>
+ * Navigation properties to one entity and small collections are fetch joined to the query of their owners.
+ * Collections are loaded in batches instead, with a single {@code IN} query for all the owners of the chunk
+ * or page, when:
+ * <ul>
+ * <li>owners query is limited (page, cursor, {@code $top}): joined rows would break the limit,</li>
+ * <li>collection is {@link io.github.mat3e.odata.common.annotation.ODataNavigationProperty#large() large},</li>
+ * <li>there are nested options restricting the collection,</li>
+ * <li>another collection is already fetch joined to the same query (Hibernate can't fetch two bags at once).</li>
+ * </ul>
+ * Nested {@code $top} and {@code $skip} are applied by the database with a limited query per owner (JPQL has no
+ * window functions to limit a single {@code IN} query per owner), so such expansion costs one query per owner of
+ * the chunk or page. Nested collections of those targets are then batched too, as joined rows would break the limit.
+ */
+final class ExpandPlan {
+    private final Class<? extends JpaOlingoEntity> entityClass;
+    private final List<Step> steps;
+    private final NavigationExpansion expansion;
+
+    private ExpandPlan(Class<? extends JpaOlingoEntity> entityClass, List<Step> steps,
+            NavigationExpansion expansion) {
+        this.entityClass = entityClass;
+        this.steps = steps;
+        this.expansion = expansion;
+    }
+
+    /**
+     * @param entityClass
+     *         JPA class of the owners
+     * @param expand
+     *         {@code $expand} from the request or null
+     * @param limited
+     *         true if the query of the owners is limited (paged, read with a cursor)
+     */
+    static ExpandPlan of(Class<? extends JpaOlingoEntity> entityClass, ExpandOption expand, boolean limited)
+            throws ODataApplicationException {
+        return of(entityClass, expand, new QueryState(limited));
+    }
+
+    private static ExpandPlan of(Class<? extends JpaOlingoEntity> entityClass, ExpandOption expand,
+            QueryState query) throws ODataApplicationException {
+        if (expand == null || expand.getExpandItems() == null || expand.getExpandItems().isEmpty()) {
+            return new ExpandPlan(entityClass, Collections.emptyList(), NavigationExpansion.NONE);
+        }
+
+        EntityMetadata metadata = EntityMetadata.of(entityClass);
+        // expanded navigation properties with their nested options, null for *
+        Map<NavigationDescriptor, ExpandItem> items = new LinkedHashMap<>();
+        for (ExpandItem item : expand.getExpandItems()) {
+            if (item.isStar()) {
+                for (NavigationDescriptor navigation : metadata.getNavigations()) {
+                    items.putIfAbsent(navigation, null);
+                }
+            } else if (item.getResourcePath() != null && !item.isRef()) {
+                List<UriResource> parts = item.getResourcePath().getUriResourceParts();
+                if (parts.size() != 1 || !(parts.get(0) instanceof UriResourceNavigation)) {
+                    throw new ODataApplicationException("Only navigation properties of the entity can be expanded",
+                            HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+                }
+                int index = metadata.indexOfNavigation(parts.get(0).getSegmentValue());
+                if (index >= 0) {
+                    items.put(metadata.getNavigations().get(index), item);
+                }
+            }
+        }
+
+        List<Step> steps = new ArrayList<>(items.size());
+        Set<String> names = new LinkedHashSet<>();
+        for (Map.Entry<NavigationDescriptor, ExpandItem> entry : items.entrySet()) {
+            NavigationDescriptor navigation = entry.getKey();
+            names.add(navigation.getName());
+            if (JpaOlingoEntity.class.isAssignableFrom(navigation.getTargetType())) {
+                steps.add(Step.of(navigation, entry.getValue(), query));
+            }
+        }
+        return new ExpandPlan(entityClass, steps, NavigationExpansion.of(names));
+    }
+
+    /**
+     * Navigation properties to be exposed inline, for {@link JpaOlingoEntity#expand(NavigationExpansion)}.
+     */
+    NavigationExpansion getExpansion() {
+        return expansion;
+    }
+
+    boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Adds fetch joins to the query of the owners.
+     */
+    void fetch(FetchParent<?, ?> owner) {
+        for (Step step : steps) {
+            if (!step.batched) {
+                Fetch<?, ?> fetch = owner.fetch(step.navigation.getJavaName(), JoinType.LEFT);
+                step.nested.fetch(fetch);
+            }
+        }
+    }
+
+    /**
+     * Completes the owners read with the {@link #fetch(FetchParent) fetch joins} of this plan: loads batched
+     * collections and applies nested options to all the expanded entities, level by level.
+     *
+     * @param owners
+     *         entities already {@link JpaOlingoEntity#expand(NavigationExpansion) expanded} with
+     *         {@link #getExpansion()}
+     */
+    void load(EntityManager entityManager, List<? extends JpaOlingoEntity> owners) throws ODataApplicationException {
+        if (owners.isEmpty()) {
+            return;
+        }
+        for (Step step : steps) {
+            Collection<JpaOlingoEntity> targets = step.batched ?
+                    step.loadBatch(entityManager, entityClass, owners) :
+                    step.readFetched(owners);
+            if (!targets.isEmpty()) {
+                step.nested.load(entityManager, new ArrayList<>(targets));
+            }
+        }
+    }
+
+    /**
+     * Fetch joins of a single query.
+     */
+    private static final class QueryState {
+        private final boolean limited;
+        private boolean collectionFetched;
+
+        QueryState(boolean limited) {
+            this.limited = limited;
+        }
+    }
+
+    /**
+     * Loading of a single expanded navigation property.
+     */
+    private static final class Step {
+        private final NavigationDescriptor navigation;
+        private final Class<? extends JpaOlingoEntity> targetClass;
+        private final ExpandItem item;
+        private final boolean batched;
+        private final PropertySelection selection;
+        private final ExpandPlan nested;
+
+        private Step(NavigationDescriptor navigation, ExpandItem item, boolean batched, ExpandPlan nested) {
+            this.navigation = navigation;
+            this.targetClass = navigation.getTargetType().asSubclass(JpaOlingoEntity.class);
+            this.item = item;
+            this.batched = batched;
+            this.selection = item == null ? PropertySelection.ALL : PropertySelection.of(item.getSelectOption());
+            this.nested = nested;
+        }
+
+        static Step of(NavigationDescriptor navigation, ExpandItem item, QueryState query)
+                throws ODataApplicationException {
+            Class<? extends JpaOlingoEntity> targetClass = navigation.getTargetType().asSubclass(JpaOlingoEntity.class);
+            ExpandOption nestedExpand = item == null ? null : item.getExpandOption();
+            boolean batched = navigation.isCollection() &&
+                    (query.limited || query.collectionFetched || navigation.isLarge() || isRestricted(item));
+            if (batched) {
+                // new query for the targets, its rows limited per owner with nested $top or $skip
+                return new Step(navigation, item, true, ExpandPlan.of(targetClass, nestedExpand, isLimited(item)));
+            }
+            query.collectionFetched |= navigation.isCollection();
+            return new Step(navigation, item, false, ExpandPlan.of(targetClass, nestedExpand, query));
+        }
+
+        private static boolean isRestricted(ExpandItem item) {
+            return item != null && (item.getFilterOption() != null || item.getOrderByOption() != null ||
+                    isLimited(item));
+        }
+
+        private static boolean isLimited(ExpandItem item) {
+            return item != null && (item.getTopOption() != null || item.getSkipOption() != null);
+        }
+
+        /**
+         * Targets already read with fetch joins, just the nested options are applied.
+         */
+        Collection<JpaOlingoEntity> readFetched(List<? extends JpaOlingoEntity> owners) {
+            Set<JpaOlingoEntity> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (JpaOlingoEntity owner : owners) {
+                Object value = navigation.getAccessor().get(owner);
+                if (value instanceof JpaOlingoEntity) {
+                    targets.add((JpaOlingoEntity) value);
+                } else if (value instanceof JpaOlingoEntity[]) {
+                    targets.addAll(Arrays.asList((JpaOlingoEntity[]) value));
+                } else if (value instanceof Collection) {
+                    for (Object target : (Collection<?>) value) {
+                        targets.add((JpaOlingoEntity) target);
+                    }
+                }
+            }
+            for (JpaOlingoEntity target : targets) {
+                target.select(selection).expand(nested.getExpansion());
+            }
+            return targets;
+        }
+
+        /**
+         * {@code SELECT o, t FROM Owner o JOIN o.targets t WHERE o IN (...)} for all the owners at once or, with
+         * nested {@code $top} or {@code $skip}, one such query limited by the database per owner.
+         */
+        Collection<JpaOlingoEntity> loadBatch(EntityManager entityManager,
+                Class<? extends JpaOlingoEntity> ownerClass, List<? extends JpaOlingoEntity> owners)
+                throws ODataApplicationException {
+            Map<Object, List<JpaOlingoEntity>> targetsByOwner = new IdentityHashMap<>();
+            if (isLimited(item)) {
+                int skip = item.getSkipOption() == null ? 0 : item.getSkipOption().getValue();
+                int top = item.getTopOption() == null ? Integer.MAX_VALUE : item.getTopOption().getValue();
+                for (JpaOlingoEntity ownerEntity : owners) {
+                    read(entityManager.createQuery(query(entityManager, ownerClass,
+                            Collections.singletonList(ownerEntity))).setFirstResult(skip).setMaxResults(top),
+                            targetsByOwner);
+                }
+            } else {
+                read(entityManager.createQuery(query(entityManager, ownerClass, owners)), targetsByOwner);
+            }
+
+            Set<JpaOlingoEntity> result = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (JpaOlingoEntity ownerEntity : owners) {
+                List<JpaOlingoEntity> expanded = targetsByOwner.getOrDefault(ownerEntity, new ArrayList<>());
+                ownerEntity.setExpanded(navigation.getName(), expanded);
+                result.addAll(expanded);
+            }
+            for (JpaOlingoEntity targetEntity : result) {
+                targetEntity.select(selection).expand(nested.getExpansion());
+            }
+            return result;
+        }
+
+        private CriteriaQuery<Object[]> query(EntityManager entityManager, Class<? extends JpaOlingoEntity> ownerClass,
+                List<? extends JpaOlingoEntity> owners) throws ODataApplicationException {
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+            Root<? extends JpaOlingoEntity> owner = query.from(ownerClass);
+            Join<?, ?> target = owner.join(navigation.getJavaName());
+            query.multiselect(owner, target);
+            nested.fetch(target);
+
+            List<Predicate> conditions = new ArrayList<>();
+            conditions.add(in(owner, ownerClass, owners));
+            List<Order> orders = new ArrayList<>();
+            FilterExpressionVisitor visitor = new FilterExpressionVisitor(cb, query, target, targetClass);
+            if (item != null) {
+                Predicate filter = visitor.toPredicate(item.getFilterOption());
+                if (filter != null) {
+                    conditions.add(filter);
+                }
+                if (item.getOrderByOption() != null) {
+                    for (OrderByItem order : item.getOrderByOption().getOrders()) {
+                        Expression<?> expression = visitor.toExpression(order.getExpression());
+                        orders.add(order.isDescending() ? cb.desc(expression) : cb.asc(expression));
+                    }
+                }
+            }
+            if (isLimited(item)) {
+                // keys make the limit deterministic, as for the pages
+                for (PropertyDescriptor key : EntityMetadata.of(targetClass).getKeys()) {
+                    orders.add(cb.asc(target.get(key.getJavaName())));
+                }
+            }
+            if (!orders.isEmpty()) {
+                query.orderBy(orders);
+            }
+            return query.where(conditions.toArray(new Predicate[conditions.size()]));
+        }
+
+        private static void read(TypedQuery<Object[]> query, Map<Object, List<JpaOlingoEntity>> targetsByOwner) {
+            // rows are repeated for every fetch joined collection of targets, the same instances of the context
+            Map<Object, Set<Object>> seen = new IdentityHashMap<>();
+            for (Object[] row : query.getResultList()) {
+                if (seen.computeIfAbsent(row[0], key -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(row[1])) {
+                    targetsByOwner.computeIfAbsent(row[0], key -> new ArrayList<>()).add((JpaOlingoEntity) row[1]);
+                }
+            }
+        }
+
+        /**
+         * Single keys are compared directly, composite ones are left to the JPA provider.
+         */
+        private static Predicate in(Root<? extends JpaOlingoEntity> owner, Class<? extends JpaOlingoEntity> ownerClass,
+                List<? extends JpaOlingoEntity> owners) {
+            List<PropertyDescriptor> keys = EntityMetadata.of(ownerClass).getKeys();
+            if (keys.size() != 1) {
+                return owner.in(owners);
+            }
+            List<Object> values = new ArrayList<>(owners.size());
+            for (JpaOlingoEntity ownerEntity : owners) {
+                values.add(keys.get(0).getAccessor().get(ownerEntity));
+            }
+            return owner.get(keys.get(0).getJavaName()).in(values);
+        }
+    }
+}
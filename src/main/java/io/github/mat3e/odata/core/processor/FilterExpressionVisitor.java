@@ -0,0 +1,602 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.UriResourceLambdaVariable;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.FilterOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.BinaryOperatorKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitException;
+import org.apache.olingo.server.api.uri.queryoption.expression.ExpressionVisitor;
+import org.apache.olingo.server.api.uri.queryoption.expression.Literal;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.apache.olingo.server.api.uri.queryoption.expression.MethodKind;
+import org.apache.olingo.server.api.uri.queryoption.expression.UnaryOperatorKind;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityMetadata.NavigationDescriptor;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+/**
+ * Translates {@code $filter} into JPA Criteria predicate, so the database does the filtering.
+ * <p>
+ * OData names are resolved to Java fields with {@link EntityMetadata}, the same mapping
+ * {@link io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider#getJavaPropertyForODataProperty} exposes.
+ * Literals are converted to the Java type of the property they are compared with. Chains of {@code eq} on the same
+ * property joined with {@code or} become a single {@code IN}. Lambdas ({@code any}, {@code all}) over collection
+ * navigation properties become correlated {@code EXISTS} subqueries.
+ * <p>
+ * Date and math functions without a JPA counterpart are called by their OData names, e.g. {@code year(...)},
+ * which is what most of the Hibernate dialects register.
+ */
+public class FilterExpressionVisitor implements ExpressionVisitor<Object> {
+    private final CriteriaBuilder cb;
+    private final From<?, ?> root;
+    private final Class<? extends JpaOlingoEntity> rootClass;
+
+    // query for creating subqueries, changes inside lambdas
+    private AbstractQuery<?> query;
+
+    // lambda variables in the current scope
+    private final Map<String, LambdaScope> lambdaScopes = new HashMap<>();
+
+    // properties behind visited members
+    private final Map<Expression<?>, MemberInfo> members = new IdentityHashMap<>();
+
+    // single eq predicates and already collapsed INs, for collapsing or-ed chains
+    private final Map<Expression<?>, InList> inLists = new IdentityHashMap<>();
+
+    /**
+     * @param cb
+     *         builder for creating the predicate
+     * @param query
+     *         query the predicate is for, used for creating subqueries
+     * @param root
+     *         root of the query (or a join, e.g. for nested {@code $filter} of {@code $expand}), an entity of
+     *         the filtered set
+     * @param rootClass
+     *         JPA class of the root
+     */
+    public FilterExpressionVisitor(CriteriaBuilder cb, AbstractQuery<?> query, From<?, ?> root,
+            Class<? extends JpaOlingoEntity> rootClass) {
+        this.cb = cb;
+        this.query = query;
+        this.root = root;
+        this.rootClass = rootClass;
+    }
+
+    /**
+     * @param filter
+     *         {@code $filter} from the request
+     * @return predicate or null when there is no filter
+     * @throws ODataApplicationException
+     *         if the filter uses something which cannot be translated
+     */
+    public Predicate toPredicate(FilterOption filter) throws ODataApplicationException {
+        if (filter == null || filter.getExpression() == null) {
+            return null;
+        }
+        return asPredicate(visit(filter.getExpression()));
+    }
+
+    /**
+     * Translates any other OData expression, e.g. from {@code $orderby}.
+     *
+     * @param expression
+     *         OData expression
+     * @return Criteria expression
+     * @throws ODataApplicationException
+     *         if the expression uses something which cannot be translated
+     */
+    public Expression<?> toExpression(org.apache.olingo.server.api.uri.queryoption.expression.Expression expression)
+            throws ODataApplicationException {
+        return asExpression(visit(expression), null);
+    }
+
+    @Override
+    public Object visitBinaryOperator(BinaryOperatorKind operator, Object left, Object right)
+            throws ODataApplicationException {
+        switch (operator) {
+            case AND:
+                return cb.and(asPredicate(left), asPredicate(right));
+            case OR:
+                return or(asPredicate(left), asPredicate(right));
+            case EQ:
+            case NE:
+            case GT:
+            case GE:
+            case LT:
+            case LE:
+                return compare(operator, left, right);
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+            case MOD:
+                return arithmetic(operator, left, right);
+            default:
+                throw notImplemented("Operator " + operator);
+        }
+    }
+
+    @Override
+    public Object visitUnaryOperator(UnaryOperatorKind operator, Object operand) throws ODataApplicationException {
+        switch (operator) {
+            case NOT:
+                return cb.not(asPredicate(operand));
+            case MINUS:
+                return cb.neg(asNumber(operand, null));
+            default:
+                throw notImplemented("Operator " + operator);
+        }
+    }
+
+    @Override
+    public Object visitMethodCall(MethodKind method, List<Object> parameters) throws ODataApplicationException {
+        switch (method) {
+            case CONTAINS:
+                return like(parameters, "%", "%");
+            case STARTSWITH:
+                return like(parameters, "", "%");
+            case ENDSWITH:
+                return like(parameters, "%", "");
+            case LENGTH:
+                return cb.length(asString(parameters.get(0)));
+            case INDEXOF:
+                // OData counts from 0, JPA from 1
+                return cb.diff(cb.locate(asString(parameters.get(0)), asString(parameters.get(1))), 1);
+            case SUBSTRING:
+                Expression<Integer> start = cb.sum(asInteger(parameters.get(1)), 1);
+                return parameters.size() > 2 ?
+                        cb.substring(asString(parameters.get(0)), start, asInteger(parameters.get(2))) :
+                        cb.substring(asString(parameters.get(0)), start);
+            case TOLOWER:
+                return cb.lower(asString(parameters.get(0)));
+            case TOUPPER:
+                return cb.upper(asString(parameters.get(0)));
+            case TRIM:
+                return cb.trim(asString(parameters.get(0)));
+            case CONCAT:
+                return cb.concat(asString(parameters.get(0)), asString(parameters.get(1)));
+            case YEAR:
+            case MONTH:
+            case DAY:
+            case HOUR:
+            case MINUTE:
+            case SECOND:
+                return cb.function(method.name().toLowerCase(Locale.ENGLISH), Integer.class,
+                        asExpression(parameters.get(0), null));
+            case DATE:
+                return cb.function("date", java.sql.Date.class, asExpression(parameters.get(0), null));
+            case TIME:
+                return cb.function("time", java.sql.Time.class, asExpression(parameters.get(0), null));
+            case NOW:
+                return cb.currentTimestamp();
+            case ROUND:
+            case FLOOR:
+            case CEILING:
+                return cb.function(method.name().toLowerCase(Locale.ENGLISH), Number.class,
+                        asExpression(parameters.get(0), null));
+            default:
+                throw notImplemented("Method " + method);
+        }
+    }
+
+    @Override
+    public Object visitLambdaExpression(String lambdaFunction, String lambdaVariable,
+            org.apache.olingo.server.api.uri.queryoption.expression.Expression expression)
+            throws ODataApplicationException {
+        // lambdas come as the last part of members, see visitMember
+        throw notImplemented("Lambda " + lambdaFunction + " outside of a member");
+    }
+
+    @Override
+    public Object visitLiteral(Literal literal) {
+        return new LiteralValue((EdmPrimitiveType) literal.getType(), literal.getText());
+    }
+
+    @Override
+    public Object visitMember(Member member) throws ExpressionVisitException, ODataApplicationException {
+        List<UriResource> parts = member.getResourcePath().getUriResourceParts();
+
+        Path<?> path = root;
+        Class<?> type = rootClass;
+        StringBuilder key = new StringBuilder();
+        int i = 0;
+        if (parts.get(0) instanceof UriResourceLambdaVariable) {
+            String variable = ((UriResourceLambdaVariable) parts.get(0)).getVariableName();
+            LambdaScope scope = lambdaScopes.get(variable);
+            if (scope == null) {
+                throw new ODataApplicationException("Unknown lambda variable " + variable,
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+            }
+            path = scope.from;
+            type = scope.type;
+            key.append(variable);
+            i = 1;
+        }
+
+        Class<?> javaType = type;
+        for (; i < parts.size(); ++i) {
+            UriResource part = parts.get(i);
+            String name = part.getSegmentValue();
+            key.append('/').append(name);
+            EntityMetadata metadata = EntityMetadata.of(type.asSubclass(JpaOlingoEntity.class));
+            if (part instanceof UriResourcePrimitiveProperty) {
+                int index = metadata.indexOfProperty(name);
+                if (index < 0) {
+                    throw notImplemented("Property " + name + " is not backed by a Java field");
+                }
+                PropertyDescriptor property = metadata.getProperties().get(index);
+                path = path.get(property.getJavaName());
+                javaType = property.getJavaType();
+            } else if (part instanceof UriResourceNavigation) {
+                int index = metadata.indexOfNavigation(name);
+                if (index < 0) {
+                    throw notImplemented("Navigation property " + name + " is not backed by a Java field");
+                }
+                NavigationDescriptor navigation = metadata.getNavigations().get(index);
+                if (i + 1 < parts.size() &&
+                        (parts.get(i + 1) instanceof UriResourceLambdaAny ||
+                                parts.get(i + 1) instanceof UriResourceLambdaAll)) {
+                    return lambda(path, navigation, parts.get(i + 1));
+                }
+                if (navigation.isCollection()) {
+                    throw notImplemented("Collection " + name + " can be filtered just with any or all");
+                }
+                path = path.get(navigation.getJavaName());
+                type = javaType = navigation.getTargetType();
+            } else {
+                throw notImplemented("Member part " + name);
+            }
+        }
+
+        members.put(path, new MemberInfo(key.toString(), javaType));
+        return path;
+    }
+
+    @Override
+    public Object visitAlias(String aliasName) throws ODataApplicationException {
+        throw notImplemented("Alias " + aliasName);
+    }
+
+    @Override
+    public Object visitTypeLiteral(EdmType type) throws ODataApplicationException {
+        throw notImplemented("Type literal " + type.getName());
+    }
+
+    @Override
+    public Object visitLambdaReference(String variableName) throws ODataApplicationException {
+        throw notImplemented("Lambda reference " + variableName);
+    }
+
+    @Override
+    public Object visitEnum(EdmEnumType type, List<String> enumValues) throws ODataApplicationException {
+        throw notImplemented("Enum " + type.getName());
+    }
+
+    private Object visit(org.apache.olingo.server.api.uri.queryoption.expression.Expression expression)
+            throws ODataApplicationException {
+        try {
+            return expression.accept(this);
+        } catch (ExpressionVisitException e) {
+            throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                    Locale.ENGLISH, e);
+        }
+    }
+
+    private Predicate or(Predicate left, Predicate right) {
+        InList leftIn = inLists.get(left);
+        InList rightIn = inLists.get(right);
+        if (leftIn != null && rightIn != null && leftIn.key.equals(rightIn.key)) {
+            List<Object> values = new ArrayList<>(leftIn.values);
+            values.addAll(rightIn.values);
+            Predicate result = leftIn.path.in(values);
+            inLists.put(result, new InList(leftIn.key, leftIn.path, values));
+            return result;
+        }
+        return cb.or(left, right);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Predicate compare(BinaryOperatorKind operator, Object left, Object right)
+            throws ODataApplicationException {
+        if (isNullLiteral(left) || isNullLiteral(right)) {
+            Expression<?> other = isNullLiteral(left) ? asExpression(right, null) : asExpression(left, null);
+            switch (operator) {
+                case EQ:
+                    return cb.isNull(other);
+                case NE:
+                    return cb.isNotNull(other);
+                default:
+                    throw new ODataApplicationException("Null can be only compared with eq and ne",
+                            HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+            }
+        }
+
+        Expression leftExpression = asExpression(left, javaTypeOf(right));
+        Expression rightExpression = asExpression(right, javaTypeOf(left));
+        switch (operator) {
+            case EQ:
+                Predicate result = cb.equal(leftExpression, rightExpression);
+                registerInCandidate(result, left, right);
+                return result;
+            case NE:
+                return cb.notEqual(leftExpression, rightExpression);
+            case GT:
+                return cb.greaterThan(leftExpression, rightExpression);
+            case GE:
+                return cb.greaterThanOrEqualTo(leftExpression, rightExpression);
+            case LT:
+                return cb.lessThan(leftExpression, rightExpression);
+            default:
+                return cb.lessThanOrEqualTo(leftExpression, rightExpression);
+        }
+    }
+
+    private void registerInCandidate(Predicate eq, Object left, Object right) throws ODataApplicationException {
+        Object member = right instanceof LiteralValue ? left : right;
+        Object literal = right instanceof LiteralValue ? right : left;
+        MemberInfo info = member instanceof Expression ? members.get(member) : null;
+        if (info != null && literal instanceof LiteralValue) {
+            inLists.put(eq, new InList(info.key, (Path<?>) member,
+                    Collections.singletonList(((LiteralValue) literal).toValue(info.javaType))));
+        }
+    }
+
+    private Expression<? extends Number> arithmetic(BinaryOperatorKind operator, Object left, Object right)
+            throws ODataApplicationException {
+        Expression<? extends Number> leftNumber = asNumber(left, javaTypeOf(right));
+        Expression<? extends Number> rightNumber = asNumber(right, javaTypeOf(left));
+        switch (operator) {
+            case ADD:
+                return cb.sum(leftNumber, rightNumber);
+            case SUB:
+                return cb.diff(leftNumber, rightNumber);
+            case MUL:
+                return cb.prod(leftNumber, rightNumber);
+            case DIV:
+                return cb.quot(leftNumber, rightNumber);
+            default:
+                return cb.mod(asInteger(left), asInteger(right));
+        }
+    }
+
+    private Predicate like(List<Object> parameters, String prefix, String suffix) throws ODataApplicationException {
+        Expression<String> value = asString(parameters.get(0));
+        Object pattern = parameters.get(1);
+        if (pattern instanceof LiteralValue) {
+            String text = (String) ((LiteralValue) pattern).toValue(String.class);
+            return cb.like(value, prefix + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + suffix,
+                    '\\');
+        }
+        Expression<String> result = asString(pattern);
+        if (!prefix.isEmpty()) {
+            result = cb.concat(prefix, result);
+        }
+        if (!suffix.isEmpty()) {
+            result = cb.concat(result, suffix);
+        }
+        return cb.like(value, result);
+    }
+
+    /**
+     * {@code any} is {@code EXISTS} with the condition, {@code all} is {@code NOT EXISTS} with members for which the
+     * condition is not true. It's not enough to negate the condition: {@code NOT (quantity > 5)} is unknown, not true,
+     * for a null quantity, so such a member would be skipped instead of failing {@code all}. The condition is
+     * therefore turned into {@code CASE WHEN condition THEN true ELSE false END = false}.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Predicate lambda(Path<?> path, NavigationDescriptor navigation, UriResource lambdaPart)
+            throws ExpressionVisitException, ODataApplicationException {
+        if (!(path instanceof Root || path instanceof Join)) {
+            throw notImplemented("Lambda over " + navigation.getName() + " after a single navigation property");
+        }
+
+        boolean all = lambdaPart instanceof UriResourceLambdaAll;
+        String variable = all ?
+                ((UriResourceLambdaAll) lambdaPart).getLambdaVariable() :
+                ((UriResourceLambdaAny) lambdaPart).getLambdaVariable();
+        org.apache.olingo.server.api.uri.queryoption.expression.Expression condition = all ?
+                ((UriResourceLambdaAll) lambdaPart).getExpression() :
+                ((UriResourceLambdaAny) lambdaPart).getExpression();
+
+        Subquery<Integer> subquery = query.subquery(Integer.class);
+        From<?, ?> correlated = path instanceof Root ?
+                subquery.correlate((Root) path) :
+                subquery.correlate((Join) path);
+        Join<?, ?> join = correlated.join(navigation.getJavaName());
+        subquery.select(cb.literal(1));
+
+        if (condition != null) {
+            AbstractQuery<?> outer = query;
+            query = subquery;
+            lambdaScopes.put(variable, new LambdaScope(join, navigation.getTargetType()));
+            try {
+                Predicate predicate = asPredicate(condition.accept(this));
+                subquery.where(all ? isNotTrue(predicate) : predicate);
+            } finally {
+                lambdaScopes.remove(variable);
+                query = outer;
+            }
+        }
+        return all ? cb.not(cb.exists(subquery)) : cb.exists(subquery);
+    }
+
+    private Predicate isNotTrue(Predicate predicate) {
+        return cb.equal(cb.<Boolean>selectCase().when(predicate, true).otherwise(false), false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate asPredicate(Object operand) throws ODataApplicationException {
+        if (operand instanceof Predicate) {
+            return (Predicate) operand;
+        }
+        if (operand instanceof LiteralValue) {
+            return Boolean.TRUE.equals(((LiteralValue) operand).toValue(Boolean.class)) ?
+                    cb.conjunction() :
+                    cb.disjunction();
+        }
+        return cb.isTrue((Expression<Boolean>) operand);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Expression<String> asString(Object operand) throws ODataApplicationException {
+        return (Expression<String>) asExpression(operand, String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Expression<Integer> asInteger(Object operand) throws ODataApplicationException {
+        return (Expression<Integer>) asExpression(operand, Integer.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Expression<? extends Number> asNumber(Object operand, Class<?> javaType) throws ODataApplicationException {
+        return (Expression<? extends Number>) asExpression(operand, javaType);
+    }
+
+    /**
+     * @param javaType
+     *         type for converting literals, null for their default types
+     */
+    @SuppressWarnings("unchecked")
+    private Expression<?> asExpression(Object operand, Class<?> javaType) throws ODataApplicationException {
+        if (operand instanceof LiteralValue) {
+            Object value = ((LiteralValue) operand).toValue(javaType);
+            if (value != null) {
+                return cb.literal(value);
+            }
+            return cb.nullLiteral((Class<Object>) (javaType == null ? Object.class : ReflectionUtil.wrap(javaType)));
+        }
+        return (Expression<?>) operand;
+    }
+
+    private Class<?> javaTypeOf(Object operand) {
+        MemberInfo info = operand instanceof Expression ? members.get(operand) : null;
+        return info == null ? null : info.javaType;
+    }
+
+    private static boolean isNullLiteral(Object operand) {
+        return operand instanceof LiteralValue && ((LiteralValue) operand).type == null;
+    }
+
+    private static ODataApplicationException notImplemented(String what) {
+        return new ODataApplicationException(what + " is not supported in $filter",
+                HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+    }
+
+    /**
+     * Literal kept as text until it is known what it is compared with.
+     */
+    private static class LiteralValue {
+        // null for null literal
+        private final EdmPrimitiveType type;
+        private final String text;
+
+        LiteralValue(EdmPrimitiveType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        /**
+         * @param javaType
+         *         expected type, null for the default type of the literal
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Object toValue(Class<?> javaType) throws ODataApplicationException {
+            if (type == null) {
+                return null;
+            }
+            try {
+                String value = type.fromUriLiteral(text);
+                Class<?> target = javaType == null ? type.getDefaultType() : ReflectionUtil.wrap(javaType);
+                if (target.isEnum()) {
+                    return Enum.valueOf((Class<Enum>) target, value);
+                }
+                if (target == LocalDate.class) {
+                    return LocalDate.parse(value);
+                }
+                if (target == LocalTime.class) {
+                    return LocalTime.parse(value);
+                }
+                if (target == LocalDateTime.class) {
+                    return type.valueOfString(value, null, null, null, null, null, Timestamp.class).toLocalDateTime();
+                }
+                try {
+                    return type.valueOfString(value, null, null, null, null, null, target);
+                } catch (EdmPrimitiveTypeException e) {
+                    // e.g. Decimal property compared with Double literal
+                    return type.valueOfString(value, null, null, null, null, null, type.getDefaultType());
+                }
+            } catch (EdmPrimitiveTypeException | RuntimeException e) {
+                throw new ODataApplicationException("Invalid literal " + text,
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH, e);
+            }
+        }
+    }
+
+    private static class MemberInfo {
+        // path of OData names, for recognizing the same property
+        private final String key;
+        private final Class<?> javaType;
+
+        MemberInfo(String key, Class<?> javaType) {
+            this.key = key;
+            this.javaType = javaType;
+        }
+    }
+
+    private static class LambdaScope {
+        private final From<?, ?> from;
+        private final Class<?> type;
+
+        LambdaScope(From<?, ?> from, Class<?> type) {
+            this.from = from;
+            this.type = type;
+        }
+    }
+
+    private static class InList {
+        private final String key;
+        private final Path<?> path;
+        private final List<Object> values;
+
+        InList(String key, Path<?> path, List<Object> values) {
+            this.key = key;
+            this.path = path;
+            this.values = values;
+        }
+    }
+}
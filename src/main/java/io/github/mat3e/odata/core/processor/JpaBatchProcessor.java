@@ -0,0 +1,234 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataHandler;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.batch.BatchFacade;
+import org.apache.olingo.server.api.deserializer.batch.BatchOptions;
+import org.apache.olingo.server.api.deserializer.batch.BatchRequestPart;
+import org.apache.olingo.server.api.deserializer.batch.ODataResponsePart;
+import org.apache.olingo.server.api.processor.BatchProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code $batch} with independent reads run concurrently and changesets run in single JPA transactions.
+ * <p>
+ * Consecutive {@code GET} parts outside of changesets don't depend on each other, so they are processed in parallel
+ * on the executor, at most {@code parallelism} at once. Every such part gets its own {@link ODataHandler}, since
+ * Olingo handlers keep the state of the processed request. Changesets are a barrier: reads after a changeset see
+ * its changes. Responses keep the order of the request.
+ * <p>
+ * Each changeset runs in one transaction of the entity manager exposed with {@link ChangeSetContext}, flushed once
+ * on commit. A failed request rolls the whole changeset back.
+ */
+public class JpaBatchProcessor implements BatchProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(JpaBatchProcessor.class);
+
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Supplier<ODataHandler> handlers;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    protected OData odata;
+    protected ServiceMetadata serviceMetadata;
+
+    /**
+     * @param entityManagerFactory
+     *         source of changeset transactions
+     * @param handlers
+     *         creates handlers with all the processors registered, for reads run in parallel
+     */
+    public JpaBatchProcessor(EntityManagerFactory entityManagerFactory, Supplier<ODataHandler> handlers) {
+        this(entityManagerFactory, handlers, defaultExecutor(), DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param executor
+     *         executor for reads, not shut down by the processor
+     * @param parallelism
+     *         maximal number of reads of a single batch processed at once
+     */
+    public JpaBatchProcessor(EntityManagerFactory entityManagerFactory, Supplier<ODataHandler> handlers,
+            ExecutorService executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.handlers = handlers;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return virtual threads executor on Java 21+, cached thread pool otherwise
+     */
+    public static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    @Override
+    public void init(OData odata, ServiceMetadata serviceMetadata) {
+        this.odata = odata;
+        this.serviceMetadata = serviceMetadata;
+    }
+
+    @Override
+    public void processBatch(BatchFacade facade, ODataRequest request, ODataResponse response)
+            throws ODataApplicationException, ODataLibraryException {
+        String boundary = facade.extractBoundaryFromContentType(request.getHeader(HttpHeader.CONTENT_TYPE));
+        BatchOptions options = BatchOptions.with()
+                .rawBaseUri(request.getRawBaseUri())
+                .rawServiceResolutionUri(request.getRawServiceResolutionUri())
+                .build();
+        List<BatchRequestPart> parts = odata.createFixedFormatDeserializer()
+                .parseBatchRequest(request.getBody(), boundary, options);
+
+        List<ODataResponsePart> responseParts = new ArrayList<>(parts.size());
+        List<Future<ODataResponse>> reads = new ArrayList<>();
+        Semaphore permits = new Semaphore(parallelism);
+        for (BatchRequestPart part : parts) {
+            if (isRead(part)) {
+                reads.add(submit(part.getRequests().get(0), permits));
+                continue;
+            }
+            collect(reads, responseParts);
+            responseParts.add(facade.handleBatchRequest(part));
+        }
+        collect(reads, responseParts);
+
+        String responseBoundary = "batch_" + UUID.randomUUID();
+        response.setContent(odata.createFixedFormatSerializer().batchResponse(responseParts, responseBoundary));
+        response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.MULTIPART_MIXED + ";boundary=" + responseBoundary);
+        response.setStatusCode(HttpStatusCode.ACCEPTED.getStatusCode());
+    }
+
+    @Override
+    public ODataResponsePart processChangeSet(BatchFacade facade, List<ODataRequest> requests)
+            throws ODataApplicationException, ODataLibraryException {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        // flushed once, on commit
+        entityManager.setFlushMode(FlushModeType.COMMIT);
+        ChangeSetContext.bind(entityManager);
+        try {
+            entityManager.getTransaction().begin();
+            List<ODataResponse> responses = new ArrayList<>(requests.size());
+            for (ODataRequest request : requests) {
+                ODataResponse response = facade.handleODataRequest(request);
+                if (response.getStatusCode() >= HttpStatusCode.BAD_REQUEST.getStatusCode()) {
+                    // the first error is the response of the whole changeset
+                    entityManager.getTransaction().rollback();
+                    return new ODataResponsePart(response, false);
+                }
+                responses.add(response);
+            }
+            entityManager.getTransaction().commit();
+            return new ODataResponsePart(responses, true);
+        } catch (ODataApplicationException | ODataLibraryException | RuntimeException e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            ChangeSetContext.unbind();
+            entityManager.close();
+        }
+    }
+
+    private static boolean isRead(BatchRequestPart part) {
+        return !part.isChangeSet() && part.getRequests().size() == 1 &&
+                part.getRequests().get(0).getMethod() == HttpMethod.GET;
+    }
+
+    private Future<ODataResponse> submit(ODataRequest request, Semaphore permits) throws ODataApplicationException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataApplicationException("Batch interrupted",
+                    HttpStatusCode.SERVICE_UNAVAILABLE.getStatusCode(), Locale.ENGLISH, e);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return process(request);
+                } finally {
+                    permits.release();
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private ODataResponse process(ODataRequest request) {
+        ODataResponse response;
+        try {
+            response = handlers.get().process(request);
+        } catch (RuntimeException e) {
+            LOG.error("Batch part " + request.getRawRequestUri() + " failed", e);
+            response = new ODataResponse();
+            response.setStatusCode(HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+            response.setContent(new ByteArrayInputStream(
+                    HttpStatusCode.INTERNAL_SERVER_ERROR.getInfo().getBytes(StandardCharsets.UTF_8)));
+        }
+        String contentId = request.getHeader(HttpHeader.CONTENT_ID);
+        if (contentId != null) {
+            response.setHeader(HttpHeader.CONTENT_ID, contentId);
+        }
+        return response;
+    }
+
+    /**
+     * Waits for the reads submitted so far, in their order.
+     */
+    private static void collect(List<Future<ODataResponse>> reads, List<ODataResponsePart> responseParts)
+            throws ODataApplicationException {
+        try {
+            for (Future<ODataResponse> read : reads) {
+                responseParts.add(new ODataResponsePart(read.get(), false));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ODataApplicationException("Batch interrupted",
+                    HttpStatusCode.SERVICE_UNAVAILABLE.getStatusCode(), Locale.ENGLISH, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch part failed", e.getCause());
+        } finally {
+            reads.clear();
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityCollection;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.CountEntityCollectionProcessor;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.serializer.SerializerResult;
+import org.apache.olingo.server.api.serializer.SerializerStreamResult;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceCount;
+import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.SkipTokenOption;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityView;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.entity.PropertySelection;
+
+/**
+ * Streams entity sets of {@link JpaOlingoEntity JpaOlingoEntities} straight from a database cursor.
+ * <p>
+ * Rows are read with a forward-only Hibernate cursor and written one by one by Olingo streaming serializer,
+ * so no list of the whole result is ever built. Persistence context is cleared every {@link #getChunkSize()} rows,
+ * which keeps the memory flat no matter how big the set is.
+ * <p>
+ * Sets with {@link io.github.mat3e.odata.common.annotation.ODataEntity#pageSize()} are served in pages instead,
+ * linked with {@code $skiptoken} which seeks to the next page rather than skipping rows.
+ * <p>
+ * With {@code $select} only the selected columns and the keys are fetched and served as read-only
+ * {@link EntityView EntityViews}, unless navigation properties are expanded.
+ * <p>
+ * Both {@code $count=true} and {@code /$count} run a single {@code SELECT COUNT} with the same {@code $filter}.
+ * <p>
+ * Entity sets are found in JPA metamodel: every JPA entity extending {@link JpaOlingoEntity} with an entity set
+ * is served. To use it, extend the class and mark it with
+ * {@link io.github.mat3e.odata.core.spring.annotation.OlingoProcessor}.
+ */
+public class JpaEntityCollectionProcessor implements CountEntityCollectionProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(JpaEntityCollectionProcessor.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private static final String SKIP_TOKEN = "$skiptoken";
+    private static final String SKIP = "$skip";
+    private static final String TOP = "$top";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int chunkSize;
+
+    // entity sets mapped to JPA classes
+    private final Map<String, Class<? extends JpaOlingoEntity>> entityClasses;
+
+    // no approximate counts by default
+    private ApproximateCounter approximateCounter;
+
+    protected OData odata;
+    protected ServiceMetadata serviceMetadata;
+
+    public JpaEntityCollectionProcessor(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param entityManagerFactory
+     *         source of entities
+     * @param chunkSize
+     *         number of rows fetched from the database at once and kept in the persistence context
+     */
+    public JpaEntityCollectionProcessor(EntityManagerFactory entityManagerFactory, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.chunkSize = chunkSize;
+        this.entityClasses = findEntityClasses(entityManagerFactory);
+    }
+
+    /**
+     * @return entity sets mapped to JPA classes, for every JPA entity extending {@link JpaOlingoEntity}
+     */
+    static Map<String, Class<? extends JpaOlingoEntity>> findEntityClasses(EntityManagerFactory entityManagerFactory) {
+        Map<String, Class<? extends JpaOlingoEntity>> result = new HashMap<>();
+        for (EntityType<?> type : entityManagerFactory.getMetamodel().getEntities()) {
+            Class<?> javaType = type.getJavaType();
+            if (javaType != null && JpaOlingoEntity.class.isAssignableFrom(javaType)) {
+                EntityMetadata metadata = EntityMetadata.of(javaType.asSubclass(JpaOlingoEntity.class));
+                if (metadata.hasEntitySet()) {
+                    result.put(metadata.getEntitySetName(), javaType.asSubclass(JpaOlingoEntity.class));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void init(OData odata, ServiceMetadata serviceMetadata) {
+        this.odata = odata;
+        this.serviceMetadata = serviceMetadata;
+    }
+
+    @Override
+    public void readEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo,
+            ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
+        EdmEntitySet edmEntitySet = getEntitySet(uriInfo);
+        Class<? extends JpaOlingoEntity> entityClass = getEntityClass(edmEntitySet.getName());
+
+        if (EntityMetadata.of(entityClass).getPageSize() > 0) {
+            readPage(request, response, uriInfo, responseFormat, edmEntitySet, entityClass);
+        } else {
+            stream(request, response, uriInfo, responseFormat, edmEntitySet, entityClass);
+        }
+    }
+
+    @Override
+    public void countEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo)
+            throws ODataApplicationException, ODataLibraryException {
+        EdmEntitySet edmEntitySet = getEntitySet(uriInfo);
+        Class<? extends JpaOlingoEntity> entityClass = getEntityClass(edmEntitySet.getName());
+
+        response.setContent(odata.createFixedFormatSerializer().count(count(entityClass, uriInfo)));
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.TEXT_PLAIN.toContentTypeString());
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param approximateCounter
+     *         source of counts for unfiltered sets marked with
+     *         {@link io.github.mat3e.odata.common.annotation.ODataEntity#approximateCount()},
+     *         e.g. {@link TableStatisticsCounter}
+     */
+    public void setApproximateCounter(ApproximateCounter approximateCounter) {
+        this.approximateCounter = approximateCounter;
+    }
+
+    /**
+     * @param entitySetName
+     *         name of the entity set from EDM
+     * @return JPA class backing the set
+     * @throws ODataApplicationException
+     *         if there is no such class
+     */
+    protected Class<? extends JpaOlingoEntity> getEntityClass(String entitySetName) throws ODataApplicationException {
+        Class<? extends JpaOlingoEntity> result = entityClasses.get(entitySetName);
+        if (result == null) {
+            throw new ODataApplicationException("Entity set " + entitySetName + " is not backed by JPA",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the query for the entity set, with {@code $filter} translated by {@link FilterExpressionVisitor},
+     * {@code $orderby}, {@code $top} and {@code $skip}. Paged sets are also ordered by keys and continue after
+     * {@code $skiptoken}, see {@link KeysetPaging}. Navigation properties planned by {@link ExpandPlan} are fetch
+     * joined. Extension point for additional conditions and ordering. Requests with {@code $select} fetch just some
+     * columns instead, with the same options applied.
+     *
+     * @param entityManager
+     *         manager which runs the query
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @param uriInfo
+     *         parsed request
+     * @return query returning the entities of the set
+     */
+    protected <T extends JpaOlingoEntity> TypedQuery<T> createQuery(EntityManager entityManager, Class<T> entityClass,
+            UriInfo uriInfo) throws ODataApplicationException {
+        CriteriaQuery<T> query = entityManager.getCriteriaBuilder().createQuery(entityClass);
+        Root<T> root = query.from(entityClass);
+        query.select(root);
+        ExpandPlan.of(entityClass, uriInfo.getExpandOption(), true).fetch(root);
+        return createQuery(entityManager, query, root, entityClass, uriInfo);
+    }
+
+    /**
+     * Columns of the projection only, as {@code Object[]} rows.
+     */
+    private TypedQuery<Object[]> createQuery(EntityManager entityManager,
+            Class<? extends JpaOlingoEntity> entityClass, UriInfo uriInfo, Projection projection)
+            throws ODataApplicationException {
+        CriteriaQuery<Object[]> query = entityManager.getCriteriaBuilder().createQuery(Object[].class);
+        Root<? extends JpaOlingoEntity> root = query.from(entityClass);
+        query.multiselect(projection.selections(root));
+        return createQuery(entityManager, query, root, entityClass, uriInfo);
+    }
+
+    private <R> TypedQuery<R> createQuery(EntityManager entityManager, CriteriaQuery<R> query,
+            Root<? extends JpaOlingoEntity> root, Class<? extends JpaOlingoEntity> entityClass, UriInfo uriInfo)
+            throws ODataApplicationException {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        FilterExpressionVisitor visitor = new FilterExpressionVisitor(cb, query, root, entityClass);
+        List<Predicate> conditions = new ArrayList<>();
+        Predicate filter = visitor.toPredicate(uriInfo.getFilterOption());
+        if (filter != null) {
+            conditions.add(filter);
+        }
+
+        SkipTokenOption skipToken = uriInfo.getSkipTokenOption();
+        if (EntityMetadata.of(entityClass).getPageSize() > 0) {
+            KeysetPaging paging = new KeysetPaging(entityClass, uriInfo.getOrderByOption());
+            query.orderBy(paging.orderBy(cb, root));
+            if (skipToken != null) {
+                conditions.add(paging.after(cb, root, paging.parse(skipToken.getValue())));
+            }
+        } else if (uriInfo.getOrderByOption() != null) {
+            List<Order> orders = new ArrayList<>();
+            for (OrderByItem item : uriInfo.getOrderByOption().getOrders()) {
+                Expression<?> expression = visitor.toExpression(item.getExpression());
+                orders.add(item.isDescending() ? cb.desc(expression) : cb.asc(expression));
+            }
+            query.orderBy(orders);
+        }
+        query.where(conditions.toArray(new Predicate[conditions.size()]));
+
+        TypedQuery<R> result = entityManager.createQuery(query);
+        // skip is already a part of the token
+        if (uriInfo.getSkipOption() != null && skipToken == null) {
+            result.setFirstResult(uriInfo.getSkipOption().getValue());
+        }
+        if (uriInfo.getTopOption() != null) {
+            result.setMaxResults(uriInfo.getTopOption().getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Counts entities matching {@code $filter} with a single {@code SELECT COUNT}, no entity is loaded.
+     * Unfiltered sets with approximate counts use {@link ApproximateCounter} first.
+     *
+     * @param entityManager
+     *         manager which runs the query
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @param uriInfo
+     *         parsed request
+     * @return number of entities in the set
+     */
+    protected long count(EntityManager entityManager, Class<? extends JpaOlingoEntity> entityClass, UriInfo uriInfo)
+            throws ODataApplicationException {
+        if (uriInfo.getFilterOption() == null && approximateCounter != null &&
+                EntityMetadata.of(entityClass).isCountApproximate()) {
+            Long estimate = approximateCounter.estimate(entityManager, entityClass);
+            if (estimate != null) {
+                return estimate;
+            }
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<? extends JpaOlingoEntity> root = query.from(entityClass);
+        query.select(cb.count(root));
+
+        Predicate filter = new FilterExpressionVisitor(cb, query, root, entityClass)
+                .toPredicate(uriInfo.getFilterOption());
+        if (filter != null) {
+            query.where(filter);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    /**
+     * Whole set written straight from the cursor.
+     */
+    private void stream(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat,
+            EdmEntitySet edmEntitySet, Class<? extends JpaOlingoEntity> entityClass)
+            throws ODataApplicationException, ODataLibraryException {
+        Integer count = isCountRequested(uriInfo) ? count(entityClass, uriInfo) : null;
+        StreamingEntityIterator iterator = openCursor(entityClass, uriInfo);
+        iterator.setCount(count);
+        try {
+            // the first chunk is read before the response is committed, so that errors keep their status codes
+            iterator.hasNext();
+
+            EntityCollectionSerializerOptions options = options(request, uriInfo, edmEntitySet)
+                    .writeContentErrorCallback((context, channel) -> {
+                        LOG.error("Streaming of " + edmEntitySet.getName() + " failed", context.getException());
+                        iterator.close();
+                    })
+                    .build();
+
+            SerializerStreamResult result = odata.createSerializer(responseFormat)
+                    .entityCollectionStreamed(serviceMetadata, edmEntitySet.getEntityType(), iterator, options);
+
+            // content is written after this method returns, iterator closes the cursor once done
+            response.setODataContent(result.getODataContent());
+            response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+            response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+        } catch (ODataRuntimeException e) {
+            iterator.close();
+            if (e.getCause() instanceof ODataApplicationException) {
+                throw (ODataApplicationException) e.getCause();
+            }
+            throw e;
+        } catch (ODataLibraryException | RuntimeException e) {
+            iterator.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Single page, with a link to the next one if there are more rows. Olingo streaming serializer doesn't write
+     * next links, but the page is bounded anyway, so it's serialized at once and the manager closed right away.
+     */
+    private void readPage(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat,
+            EdmEntitySet edmEntitySet, Class<? extends JpaOlingoEntity> entityClass)
+            throws ODataApplicationException, ODataLibraryException {
+        int pageSize = EntityMetadata.of(entityClass).getPageSize();
+        KeysetPaging paging = new KeysetPaging(entityClass, uriInfo.getOrderByOption());
+        Projection projection = Projection.of(entityClass, uriInfo, paging.getColumns());
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            EntityCollection page = new EntityCollection();
+            if (isCountRequested(uriInfo)) {
+                page.setCount(toInteger(count(entityManager, entityClass, uriInfo)));
+            }
+
+            // one more row tells if there is the next page
+            String token = null;
+            if (projection == null) {
+                List<? extends JpaOlingoEntity> rows =
+                        firstRows(createQuery(entityManager, entityClass, uriInfo), pageSize + 1);
+                PropertySelection selection = PropertySelection.of(uriInfo.getSelectOption());
+                ExpandPlan plan = ExpandPlan.of(entityClass, uriInfo.getExpandOption(), true);
+                for (int i = 0; i < rows.size() && i < pageSize; ++i) {
+                    page.getEntities().add(rows.get(i).select(selection).expand(plan.getExpansion()));
+                }
+                plan.load(entityManager, rows.subList(0, Math.min(rows.size(), pageSize)));
+                if (rows.size() > pageSize) {
+                    token = paging.tokenOf(rows.get(pageSize - 1));
+                }
+            } else {
+                List<Object[]> rows =
+                        firstRows(createQuery(entityManager, entityClass, uriInfo, projection), pageSize + 1);
+                for (int i = 0; i < rows.size() && i < pageSize; ++i) {
+                    page.getEntities().add(projection.toView(rows.get(i)));
+                }
+                if (rows.size() > pageSize) {
+                    token = paging.tokenOf((EntityView) page.getEntities().get(pageSize - 1));
+                }
+            }
+            if (token != null) {
+                page.setNext(URI.create(nextLink(request, token, pageSize)));
+            }
+
+            SerializerResult result = odata.createSerializer(responseFormat)
+                    .entityCollection(serviceMetadata, edmEntitySet.getEntityType(), page,
+                            options(request, uriInfo, edmEntitySet).build());
+            response.setContent(result.getContent());
+            response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+            response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private EntityCollectionSerializerOptions.Builder options(ODataRequest request, UriInfo uriInfo,
+            EdmEntitySet edmEntitySet) throws SerializerException {
+        ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).selectList(odata.createUriHelper()
+                .buildContextURLSelectList(edmEntitySet.getEntityType(), uriInfo.getExpandOption(),
+                        uriInfo.getSelectOption())).build();
+        return EntityCollectionSerializerOptions.with()
+                .id(request.getRawBaseUri() + "/" + edmEntitySet.getName())
+                .contextURL(contextUrl)
+                .select(uriInfo.getSelectOption())
+                .expand(uriInfo.getExpandOption())
+                .count(uriInfo.getCountOption());
+    }
+
+    private static <R> List<R> firstRows(TypedQuery<R> query, int maxResults) {
+        return query.setMaxResults(Math.min(query.getMaxResults(), maxResults)).getResultList();
+    }
+
+    private Integer count(Class<? extends JpaOlingoEntity> entityClass, UriInfo uriInfo)
+            throws ODataApplicationException {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return toInteger(count(entityManager, entityClass, uriInfo));
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static boolean isCountRequested(UriInfo uriInfo) {
+        return uriInfo.getCountOption() != null && uriInfo.getCountOption().getValue();
+    }
+
+    // Olingo serializes counts as integers
+    private static Integer toInteger(long count) {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Request URI with the new {@code $skiptoken}, without {@code $skip} (it's in the token) and with {@code $top}
+     * decreased by the page size.
+     */
+    static String nextLink(ODataRequest request, String skipToken, int pageSize) {
+        StringBuilder result = new StringBuilder(request.getRawBaseUri()).append(request.getRawODataPath()).append('?');
+        if (request.getRawQueryPath() != null) {
+            for (String parameter : request.getRawQueryPath().split("&")) {
+                if (parameter.startsWith(SKIP_TOKEN + "=") || parameter.startsWith(SKIP + "=")) {
+                    continue;
+                }
+                if (parameter.startsWith(TOP + "=")) {
+                    parameter = TOP + "=" + (Integer.parseInt(parameter.substring(TOP.length() + 1)) - pageSize);
+                }
+                if (!parameter.isEmpty()) {
+                    result.append(parameter).append('&');
+                }
+            }
+        }
+        return result.append(SKIP_TOKEN).append('=').append(skipToken).toString();
+    }
+
+    private StreamingEntityIterator openCursor(Class<? extends JpaOlingoEntity> entityClass, UriInfo uriInfo)
+            throws ODataApplicationException {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            // most of the drivers (e.g. PostgreSQL) respect fetch size only inside a transaction
+            entityManager.getTransaction().begin();
+            Projection projection = Projection.of(entityClass, uriInfo, Collections.emptyList());
+            TypedQuery<?> query = projection == null ?
+                    createQuery(entityManager, entityClass, uriInfo) :
+                    createQuery(entityManager, entityClass, uriInfo, projection);
+            Query cursorQuery = query.unwrap(Query.class)
+                    .setFetchSize(chunkSize)
+                    .setReadOnly(true);
+            ScrollableResults results = cursorQuery.scroll(ScrollMode.FORWARD_ONLY);
+            if (projection != null) {
+                return new StreamingEntityIterator(entityManager, results, chunkSize, projection::toView, chunk -> {
+                });
+            }
+
+            ExpandPlan plan = ExpandPlan.of(entityClass, uriInfo.getExpandOption(), true);
+            PropertySelection selection = PropertySelection.of(uriInfo.getSelectOption());
+            return new StreamingEntityIterator(entityManager, results, chunkSize,
+                    row -> ((JpaOlingoEntity) row[0]).select(selection).expand(plan.getExpansion()),
+                    chunk -> loadExpanded(entityManager, plan, chunk));
+        } catch (ODataApplicationException | RuntimeException e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void loadExpanded(EntityManager entityManager, ExpandPlan plan, List<Entity> chunk) {
+        try {
+            plan.load(entityManager, (List<JpaOlingoEntity>) (List<?>) chunk);
+        } catch (ODataApplicationException e) {
+            throw new ODataRuntimeException(e);
+        }
+    }
+
+    private EdmEntitySet getEntitySet(UriInfo uriInfo) throws ODataApplicationException {
+        List<UriResource> parts = uriInfo.getUriResourceParts();
+        boolean plainOrCount = parts.size() == 1 || (parts.size() == 2 && parts.get(1) instanceof UriResourceCount);
+        if (!plainOrCount || !(parts.get(0) instanceof UriResourceEntitySet)) {
+            throw new ODataApplicationException("Only plain entity sets are supported",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+        return ((UriResourceEntitySet) parts.get(0)).getEntitySet();
+    }
+}
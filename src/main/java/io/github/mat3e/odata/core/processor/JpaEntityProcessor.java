@@ -0,0 +1,668 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.apache.olingo.commons.api.data.ContextURL;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityCollection;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.deserializer.ODataDeserializer;
+import org.apache.olingo.server.api.prefer.Preferences.Return;
+import org.apache.olingo.server.api.prefer.PreferencesApplied;
+import org.apache.olingo.server.api.processor.EntityProcessor;
+import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
+import org.apache.olingo.server.api.serializer.EntitySerializerOptions;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceEntitySet;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.entity.EntityMetadata.VersionDescriptor;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.entity.KeyCodec;
+import io.github.mat3e.odata.common.entity.PropertySelection;
+import io.github.mat3e.odata.common.util.EdmTypeUtil;
+
+/**
+ * Creates, reads and updates {@link JpaOlingoEntity JpaOlingoEntities}.
+ * <p>
+ * {@code POST} to an entity set accepts either a single entity, with nested entities inline in its navigation
+ * properties (deep insert), or a whole collection ({@code {"value": [...]}}). Everything is persisted in one
+ * transaction with {@link BulkInsert}, flushed and cleared every {@link #getFlushInterval()} entities. For JDBC
+ * batching set {@code hibernate.jdbc.batch_size} (best to the flush interval) and {@code hibernate.order_inserts}.
+ * Inside of a {@code $batch} changeset the transaction of {@link ChangeSetContext} is used and flushed just once.
+ * <p>
+ * With {@code Prefer: return=minimal} nothing is echoed: a single entity gets {@code 204} with its location, a
+ * collection gets just the number of created entities and the created entities are not kept for the response.
+ * <p>
+ * Entities with a {@link EntityMetadata#getVersion() version} have ETags. {@code If-None-Match} is checked against
+ * just the version read from the database, so {@code 304} doesn't load nor serialize the entity. Updates are single
+ * {@code UPDATE} statements, conditional on the version from {@code If-Match}, see
+ * {@link #update(EntityManager, Class, Map, Entity, boolean, Object, Object)}.
+ * <p>
+ * Reads with {@code $select} and without {@code $expand} fetch just the selected columns, as {@link Projection}.
+ * <p>
+ * To use it, extend the class and mark it with {@link io.github.mat3e.odata.core.spring.annotation.OlingoProcessor}.
+ */
+public class JpaEntityProcessor implements EntityProcessor {
+    public static final int DEFAULT_FLUSH_INTERVAL = 50;
+
+    // enough for "@odata.context" and the beginning of "value"
+    private static final int PEEK_LIMIT = 4096;
+    private static final String VALUE = "value";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int flushInterval;
+
+    // entity sets mapped to JPA classes
+    private final Map<String, Class<? extends JpaOlingoEntity>> entityClasses;
+
+    protected OData odata;
+    protected ServiceMetadata serviceMetadata;
+
+    public JpaEntityProcessor(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param entityManagerFactory
+     *         target of the entities
+     * @param flushInterval
+     *         number of entities persisted between flushes of the persistence context
+     */
+    public JpaEntityProcessor(EntityManagerFactory entityManagerFactory, int flushInterval) {
+        if (flushInterval < 1) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.flushInterval = flushInterval;
+        this.entityClasses = JpaEntityCollectionProcessor.findEntityClasses(entityManagerFactory);
+    }
+
+    @Override
+    public void init(OData odata, ServiceMetadata serviceMetadata) {
+        this.odata = odata;
+        this.serviceMetadata = serviceMetadata;
+    }
+
+    @Override
+    public void readEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat)
+            throws ODataApplicationException, ODataLibraryException {
+        UriResourceEntitySet resource = getEntityResource(uriInfo);
+        EdmEntitySet edmEntitySet = resource.getEntitySet();
+        Class<? extends JpaOlingoEntity> entityClass = getEntityClass(edmEntitySet.getName());
+        Map<PropertyDescriptor, Object> keys = parseKeys(resource, entityClass);
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            String ifNoneMatch = request.getHeader(HttpHeader.IF_NONE_MATCH);
+            if (ifNoneMatch != null && EntityMetadata.of(entityClass).getVersion() != null) {
+                String etag = readETag(entityManager, entityClass, keys);
+                if (ETags.matches(ifNoneMatch, etag)) {
+                    response.setHeader(HttpHeader.ETAG, etag);
+                    response.setStatusCode(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+                    return;
+                }
+            }
+
+            Entity entity;
+            String etag;
+            Projection projection = Projection.of(entityClass, uriInfo, Collections.emptyList());
+            if (projection != null) {
+                Object[] row = findRow(entityManager, entityClass, keys, projection);
+                entity = projection.toView(row);
+                VersionDescriptor version = EntityMetadata.of(entityClass).getVersion();
+                etag = version == null ? null : version.toETag(row[row.length - 1]);
+            } else {
+                ExpandPlan plan = ExpandPlan.of(entityClass, uriInfo.getExpandOption(), false);
+                List<? extends JpaOlingoEntity> rows = find(entityManager, entityClass, keys, plan);
+                JpaOlingoEntity found = rows.get(0)
+                        .select(PropertySelection.of(uriInfo.getSelectOption()))
+                        .expand(plan.getExpansion());
+                plan.load(entityManager, rows.subList(0, 1));
+                entity = found;
+                etag = found.getETag();
+            }
+
+            ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).suffix(ContextURL.Suffix.ENTITY)
+                    .selectList(odata.createUriHelper().buildContextURLSelectList(edmEntitySet.getEntityType(),
+                            uriInfo.getExpandOption(), uriInfo.getSelectOption()))
+                    .build();
+            response.setContent(odata.createSerializer(responseFormat)
+                    .entity(serviceMetadata, edmEntitySet.getEntityType(), entity, EntitySerializerOptions.with()
+                            .contextURL(contextUrl)
+                            .select(uriInfo.getSelectOption())
+                            .expand(uriInfo.getExpandOption())
+                            .build())
+                    .getContent());
+            if (etag != null) {
+                response.setHeader(HttpHeader.ETAG, etag);
+            }
+            response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+            response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Override
+    public void createEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType requestFormat,
+            ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
+        EdmEntitySet edmEntitySet = getEntitySet(uriInfo);
+        Class<? extends JpaOlingoEntity> entityClass = getEntityClass(edmEntitySet.getName());
+        boolean minimal = odata.createPreferences(request.getHeaders(HttpHeader.PREFER)).getReturn() == Return.MINIMAL;
+
+        BufferedInputStream body = new BufferedInputStream(request.getBody(), PEEK_LIMIT);
+        boolean bulk = isCollection(body);
+        ODataDeserializer deserializer = odata.createDeserializer(requestFormat, serviceMetadata);
+        List<Entity> payload = bulk ?
+                deserializer.entityCollection(body, edmEntitySet.getEntityType()).getEntityCollection().getEntities() :
+                Collections.singletonList(deserializer.entity(body, edmEntitySet.getEntityType()).getEntity());
+
+        // a single entity is always needed for its location
+        List<JpaOlingoEntity> created = bulk && minimal ? null : new ArrayList<>(payload.size());
+        int count = insert(entityClass, payload, created);
+
+        if (minimal) {
+            response.setHeader(HttpHeader.PREFERENCE_APPLIED,
+                    PreferencesApplied.with().returnRepresentation(Return.MINIMAL).build().toValueString());
+        }
+        if (!bulk) {
+            String location = request.getRawBaseUri() + "/" + created.get(0).getId().toASCIIString();
+            response.setHeader(HttpHeader.LOCATION, location);
+            if (minimal) {
+                response.setHeader(HttpHeader.ODATA_ENTITY_ID, location);
+                response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
+                return;
+            }
+            ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).suffix(ContextURL.Suffix.ENTITY).build();
+            response.setContent(odata.createSerializer(responseFormat)
+                    .entity(serviceMetadata, edmEntitySet.getEntityType(), created.get(0),
+                            EntitySerializerOptions.with().contextURL(contextUrl).build())
+                    .getContent());
+        } else if (minimal) {
+            // just the count, always JSON whatever format was negotiated for entities
+            response.setContent(new ByteArrayInputStream(
+                    ("{\"@odata.count\":" + count + "}").getBytes(StandardCharsets.UTF_8)));
+            response.setStatusCode(HttpStatusCode.CREATED.getStatusCode());
+            response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.APPLICATION_JSON.toContentTypeString());
+            return;
+        } else {
+            EntityCollection collection = new EntityCollection();
+            collection.getEntities().addAll(created);
+            response.setContent(odata.createSerializer(responseFormat)
+                    .entityCollection(serviceMetadata, edmEntitySet.getEntityType(), collection,
+                            EntityCollectionSerializerOptions.with()
+                                    .contextURL(ContextURL.with().entitySet(edmEntitySet).build())
+                                    .build())
+                    .getContent());
+        }
+        response.setStatusCode(HttpStatusCode.CREATED.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, responseFormat.toContentTypeString());
+    }
+
+    @Override
+    public void updateEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType requestFormat,
+            ContentType responseFormat) throws ODataApplicationException, ODataLibraryException {
+        UriResourceEntitySet resource = getEntityResource(uriInfo);
+        EdmEntitySet edmEntitySet = resource.getEntitySet();
+        Class<? extends JpaOlingoEntity> entityClass = getEntityClass(edmEntitySet.getName());
+        Map<PropertyDescriptor, Object> keys = parseKeys(resource, entityClass);
+        Entity payload = odata.createDeserializer(requestFormat, serviceMetadata)
+                .entity(request.getBody(), edmEntitySet.getEntityType()).getEntity();
+
+        VersionDescriptor version = EntityMetadata.of(entityClass).getVersion();
+        String ifMatch = request.getHeader(HttpHeader.IF_MATCH);
+        Object expected = null;
+        if (version != null && ifMatch != null && !"*".equals(ifMatch.trim())) {
+            expected = version.fromETag(ifMatch);
+            if (expected == null) {
+                throw preconditionFailed();
+            }
+        }
+
+        // numeric versions are increased in the database when not known
+        Object newVersion = version == null || (expected == null && version.isNumeric()) ?
+                null :
+                version.next(expected);
+        Object finalExpected = expected;
+        boolean put = request.getMethod() == HttpMethod.PUT;
+        inTransaction(entityManager -> {
+            if (update(entityManager, entityClass, keys, payload, put, finalExpected, newVersion) == 0) {
+                // either there is no entity or its version is different
+                throw exists(entityManager, entityClass, keys) ? preconditionFailed() : notFound();
+            }
+            return null;
+        });
+        if (newVersion != null) {
+            response.setHeader(HttpHeader.ETAG, version.toETag(newVersion));
+        }
+        response.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
+    }
+
+    @Override
+    public void deleteEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo)
+            throws ODataApplicationException, ODataLibraryException {
+        throw notImplemented();
+    }
+
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param entitySetName
+     *         name of the entity set from EDM
+     * @return JPA class backing the set
+     * @throws ODataApplicationException
+     *         if there is no such class
+     */
+    protected Class<? extends JpaOlingoEntity> getEntityClass(String entitySetName) throws ODataApplicationException {
+        Class<? extends JpaOlingoEntity> result = entityClasses.get(entitySetName);
+        if (result == null) {
+            throw new ODataApplicationException("Entity set " + entitySetName + " is not backed by JPA",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+        return result;
+    }
+
+    /**
+     * Updates just the sent properties (PATCH) or all of them (PUT) with a single {@code UPDATE}, without reading the
+     * entity. The version, if any, is changed by the same statement and with {@code expectedVersion} the update is
+     * conditional: {@code UPDATE ... WHERE <keys> AND version = ?}. It goes around the persistence context, so entity
+     * listeners are not called. Inside of a changeset the context is flushed before (so the statement sees entities
+     * of the previous requests) and cleared after (so they are not stale for the next ones).
+     *
+     * @param put
+     *         true if properties not sent should be cleared
+     * @param expectedVersion
+     *         version from {@code If-Match} or null for an unconditional update
+     * @param newVersion
+     *         version to be set, null to increase a numeric version in the database
+     * @return number of updated entities
+     */
+    protected <T extends JpaOlingoEntity> int update(EntityManager entityManager, Class<T> entityClass,
+            Map<PropertyDescriptor, Object> keys, Entity payload, boolean put, Object expectedVersion,
+            Object newVersion) {
+        boolean changeSet = entityManager == ChangeSetContext.getEntityManager();
+        if (changeSet) {
+            entityManager.flush();
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<T> update = cb.createCriteriaUpdate(entityClass);
+        Root<T> root = update.from(entityClass);
+        VersionDescriptor version = EntityMetadata.of(entityClass).getVersion();
+
+        boolean changed = false;
+        for (PropertyDescriptor descriptor : EntityMetadata.of(entityClass).getProperties()) {
+            if (descriptor.isKey() || (version != null && version.getJavaName().equals(descriptor.getJavaName()))) {
+                continue;
+            }
+            Property source = payload.getProperty(descriptor.getName());
+            if (source != null && source.getValue() != null) {
+                // same conversion as for POST, Olingo gives e.g. Calendar for Edm.Date
+                update.set(root.get(descriptor.getJavaName()),
+                        EdmTypeUtil.toJavaValue(source.getValue(), descriptor.getJavaType()));
+                changed = true;
+            } else if ((source != null || put) && !descriptor.getJavaType().isPrimitive()) {
+                setNull(cb, update, root.get(descriptor.getJavaName()), descriptor.getJavaType());
+                changed = true;
+            }
+        }
+
+        List<Predicate> conditions = keyConditions(cb, root, keys);
+        if (version != null) {
+            Path<Object> path = root.get(version.getJavaName());
+            if (expectedVersion != null) {
+                conditions.add(cb.equal(path, expectedVersion));
+            }
+            if (newVersion != null) {
+                update.set(path, newVersion);
+            } else {
+                Path<Number> numberPath = root.get(version.getJavaName());
+                update.set(numberPath, cb.sum(numberPath, (Number) version.next(0)));
+            }
+            changed = true;
+        }
+        if (!changed) {
+            return exists(entityManager, entityClass, keys) ? 1 : 0;
+        }
+
+        update.where(conditions.toArray(new Predicate[conditions.size()]));
+        int result = entityManager.createQuery(update).executeUpdate();
+        if (changeSet) {
+            entityManager.clear();
+        }
+        return result;
+    }
+
+    private static <Y> void setNull(CriteriaBuilder cb, CriteriaUpdate<?> update, Path<Y> path, Class<Y> type) {
+        update.set(path, cb.nullLiteral(type));
+    }
+
+    /**
+     * Persists the entities in a single transaction, the one of the changeset if there is such.
+     *
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @param payload
+     *         deserialized entities
+     * @param created
+     *         receives the persisted entities, null when they are not needed
+     * @return number of persisted entities, nested ones included
+     */
+    protected int insert(Class<? extends JpaOlingoEntity> entityClass, List<Entity> payload,
+            List<JpaOlingoEntity> created) throws ODataApplicationException {
+        EntityManager changeSet = ChangeSetContext.getEntityManager();
+        if (changeSet != null) {
+            // flushed once, when the changeset is committed
+            return insert(new BulkInsert(changeSet, 0), entityClass, payload, created);
+        }
+        return inTransaction(entityManager ->
+                insert(new BulkInsert(entityManager, flushInterval), entityClass, payload, created));
+    }
+
+    /**
+     * Runs the work in the transaction of the changeset or in a new one.
+     */
+    private <R> R inTransaction(Work<R> work) throws ODataApplicationException {
+        EntityManager changeSet = ChangeSetContext.getEntityManager();
+        if (changeSet != null) {
+            return work.execute(changeSet);
+        }
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            R result = work.execute(entityManager);
+            entityManager.getTransaction().commit();
+            return result;
+        } catch (ODataApplicationException | RuntimeException e) {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static int insert(BulkInsert bulkInsert, Class<? extends JpaOlingoEntity> entityClass,
+            List<Entity> payload, List<JpaOlingoEntity> created) throws ODataApplicationException {
+        for (Entity source : payload) {
+            JpaOlingoEntity entity = bulkInsert.insert(entityClass, source);
+            if (created != null) {
+                created.add(entity);
+            }
+        }
+        return bulkInsert.getCount();
+    }
+
+    /**
+     * Peeks at the beginning of JSON payload, the stream is reset afterwards.
+     *
+     * @return true for {@code {"value": [...]}}, optionally preceded by annotations
+     */
+    static boolean isCollection(BufferedInputStream body) throws ODataApplicationException {
+        try {
+            body.mark(PEEK_LIMIT);
+            byte[] prefix = new byte[PEEK_LIMIT];
+            int length = 0;
+            int read;
+            while (length < PEEK_LIMIT && (read = body.read(prefix, length, PEEK_LIMIT - length)) >= 0) {
+                length += read;
+            }
+            body.reset();
+            return isCollection(new String(prefix, 0, length, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ODataApplicationException("Can't read the payload", HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                    Locale.ENGLISH, e);
+        }
+    }
+
+    private static boolean isCollection(String json) {
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length() || json.charAt(i) != '{') {
+            return false;
+        }
+        while (true) {
+            i = skipWhitespace(json, i + 1);
+            int keyEnd = endOfString(json, i);
+            if (keyEnd < 0) {
+                return false;
+            }
+            String key = json.substring(i + 1, keyEnd);
+            i = skipWhitespace(json, keyEnd + 1);
+            if (i >= json.length() || json.charAt(i) != ':') {
+                return false;
+            }
+            i = skipWhitespace(json, i + 1);
+            if (VALUE.equals(key)) {
+                return i < json.length() && json.charAt(i) == '[';
+            }
+            // only string annotations, like @odata.context, can precede the value
+            int valueEnd = key.startsWith("@") ? endOfString(json, i) : -1;
+            if (valueEnd < 0) {
+                return false;
+            }
+            i = skipWhitespace(json, valueEnd + 1);
+            if (i >= json.length() || json.charAt(i) != ',') {
+                return false;
+            }
+        }
+    }
+
+    private static int skipWhitespace(String json, int from) {
+        int i = from;
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * @return index of the closing quote of the string starting at the given index or -1
+     */
+    private static int endOfString(String json, int from) {
+        if (from >= json.length() || json.charAt(from) != '"') {
+            return -1;
+        }
+        for (int i = from + 1; i < json.length(); ++i) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                ++i;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private EdmEntitySet getEntitySet(UriInfo uriInfo) throws ODataApplicationException {
+        List<UriResource> parts = uriInfo.getUriResourceParts();
+        if (parts.size() != 1 || !(parts.get(0) instanceof UriResourceEntitySet)) {
+            throw new ODataApplicationException("Only plain entity sets are supported",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+        return ((UriResourceEntitySet) parts.get(0)).getEntitySet();
+    }
+
+    private UriResourceEntitySet getEntityResource(UriInfo uriInfo) throws ODataApplicationException {
+        List<UriResource> parts = uriInfo.getUriResourceParts();
+        if (parts.size() != 1 || !(parts.get(0) instanceof UriResourceEntitySet) ||
+                ((UriResourceEntitySet) parts.get(0)).getKeyPredicates().isEmpty()) {
+            throw new ODataApplicationException("Only entities addressed by keys are supported",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+        }
+        return (UriResourceEntitySet) parts.get(0);
+    }
+
+    /**
+     * @return keys of the entity mapped to their values, converted to Java types
+     */
+    static Map<PropertyDescriptor, Object> parseKeys(UriResourceEntitySet resource,
+            Class<? extends JpaOlingoEntity> entityClass) throws ODataApplicationException {
+        KeyCodec codec = KeyCodec.of(entityClass);
+        Object[] values;
+        try {
+            values = codec.parseValues(resource.getKeyPredicates());
+        } catch (IllegalArgumentException e) {
+            throw new ODataApplicationException(e.getMessage(), HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                    Locale.ENGLISH, e);
+        }
+        Map<PropertyDescriptor, Object> result = new LinkedHashMap<>();
+        List<PropertyDescriptor> keys = codec.getKeys();
+        for (int i = 0; i < values.length; ++i) {
+            result.put(keys.get(i), values[i]);
+        }
+        return result;
+    }
+
+    private static List<Predicate> keyConditions(CriteriaBuilder cb, Root<?> root,
+            Map<PropertyDescriptor, Object> keys) {
+        List<Predicate> result = new ArrayList<>(keys.size() + 1);
+        for (Map.Entry<PropertyDescriptor, Object> key : keys.entrySet()) {
+            result.add(cb.equal(root.get(key.getKey().getJavaName()), key.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * @return rows of the entity (more than one for fetched collections), never empty
+     */
+    private static <T extends JpaOlingoEntity> List<T> find(EntityManager entityManager, Class<T> entityClass,
+            Map<PropertyDescriptor, Object> keys, ExpandPlan plan) throws ODataApplicationException {
+        if (plan.isEmpty()) {
+            // primary key lookup, may be served by the persistence context or the second-level cache
+            T result = entityManager.find(entityClass,
+                    KeyCodec.of(entityClass).toPrimaryKey(keys.values().toArray()));
+            if (result == null) {
+                throw notFound();
+            }
+            return Collections.singletonList(result);
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> query = cb.createQuery(entityClass);
+        Root<T> root = query.from(entityClass);
+        query.select(root);
+        plan.fetch(root);
+        List<Predicate> conditions = keyConditions(cb, root, keys);
+        query.where(conditions.toArray(new Predicate[conditions.size()]));
+
+        List<T> result = entityManager.createQuery(query).getResultList();
+        if (result.isEmpty()) {
+            throw notFound();
+        }
+        return result;
+    }
+
+    /**
+     * {@code $select} without {@code $expand}: just the columns of the projection and the version, if any.
+     *
+     * @return row of the projection, with the version as the last column
+     */
+    private static Object[] findRow(EntityManager entityManager, Class<? extends JpaOlingoEntity> entityClass,
+            Map<PropertyDescriptor, Object> keys, Projection projection) throws ODataApplicationException {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<? extends JpaOlingoEntity> root = query.from(entityClass);
+        List<Selection<?>> selections = projection.selections(root);
+        VersionDescriptor version = EntityMetadata.of(entityClass).getVersion();
+        if (version != null) {
+            selections.add(root.get(version.getJavaName()));
+        }
+        query.multiselect(selections);
+        List<Predicate> conditions = keyConditions(cb, root, keys);
+        query.where(conditions.toArray(new Predicate[conditions.size()]));
+
+        List<Object[]> result = entityManager.createQuery(query).getResultList();
+        if (result.isEmpty()) {
+            throw notFound();
+        }
+        return result.get(0);
+    }
+
+    /**
+     * Reads just the version, the entity is not loaded.
+     */
+    static String readETag(EntityManager entityManager, Class<? extends JpaOlingoEntity> entityClass,
+            Map<PropertyDescriptor, Object> keys) throws ODataApplicationException {
+        VersionDescriptor version = EntityMetadata.of(entityClass).getVersion();
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object> query = cb.createQuery(Object.class);
+        Root<? extends JpaOlingoEntity> root = query.from(entityClass);
+        query.select(root.get(version.getJavaName()));
+        List<Predicate> conditions = keyConditions(cb, root, keys);
+        query.where(conditions.toArray(new Predicate[conditions.size()]));
+
+        List<Object> result = entityManager.createQuery(query).getResultList();
+        if (result.isEmpty()) {
+            throw notFound();
+        }
+        return version.toETag(result.get(0));
+    }
+
+    private static boolean exists(EntityManager entityManager, Class<? extends JpaOlingoEntity> entityClass,
+            Map<PropertyDescriptor, Object> keys) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<? extends JpaOlingoEntity> root = query.from(entityClass);
+        query.select(cb.count(root));
+        List<Predicate> conditions = keyConditions(cb, root, keys);
+        query.where(conditions.toArray(new Predicate[conditions.size()]));
+        return entityManager.createQuery(query).getSingleResult() > 0;
+    }
+
+    private static ODataApplicationException notFound() {
+        return new ODataApplicationException("No such entity", HttpStatusCode.NOT_FOUND.getStatusCode(),
+                Locale.ENGLISH);
+    }
+
+    private static ODataApplicationException preconditionFailed() {
+        return new ODataApplicationException("Entity was modified in the meantime",
+                HttpStatusCode.PRECONDITION_FAILED.getStatusCode(), Locale.ENGLISH);
+    }
+
+    private static ODataApplicationException notImplemented() {
+        return new ODataApplicationException("Deleting entities is not supported",
+                HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+    }
+
+    @FunctionalInterface
+    private interface Work<R> {
+        R execute(EntityManager entityManager) throws ODataApplicationException;
+    }
+}
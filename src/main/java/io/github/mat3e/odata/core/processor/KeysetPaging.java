@@ -0,0 +1,170 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
+import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.entity.EntityView;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+/**
+ * Server-driven paging by seeking instead of offsets: rows are ordered by {@code $orderby} properties followed by
+ * the keys and the next page starts right after the values of the last row, encoded in {@link SkipToken}.
+ * With an index on the columns every page costs the same, no matter how deep.
+ * <p>
+ * Null values of {@code $orderby} properties go first in ascending order and last in descending one, on every
+ * database: nullable columns are preceded in {@code ORDER BY} by {@code CASE WHEN c IS NULL THEN 0 ELSE 1 END},
+ * in the same direction, which matches the seek predicate of {@link #after(CriteriaBuilder, Root, Object[])}.
+ */
+final class KeysetPaging {
+    private final List<PropertyDescriptor> columns = new ArrayList<>();
+    private final List<Boolean> descending = new ArrayList<>();
+    // declared Java types of the columns, for the token
+    private final List<Class<?>> types = new ArrayList<>();
+
+    /**
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @param orderBy
+     *         {@code $orderby} from the request or null
+     * @throws ODataApplicationException
+     *         if ordered by something else than properties of the entity
+     */
+    KeysetPaging(Class<? extends JpaOlingoEntity> entityClass, OrderByOption orderBy)
+            throws ODataApplicationException {
+        EntityMetadata metadata = EntityMetadata.of(entityClass);
+        if (orderBy != null) {
+            for (OrderByItem item : orderBy.getOrders()) {
+                PropertyDescriptor property = toProperty(metadata, item);
+                if (!columns.contains(property)) {
+                    columns.add(property);
+                    descending.add(item.isDescending());
+                }
+            }
+        }
+        for (PropertyDescriptor key : metadata.getKeys()) {
+            if (!columns.contains(key)) {
+                columns.add(key);
+                descending.add(false);
+            }
+        }
+        for (PropertyDescriptor column : columns) {
+            types.add(ReflectionUtil.wrap(column.getJavaType()));
+        }
+    }
+
+    /**
+     * @return properties the rows are ordered by, all of them are needed for the token
+     */
+    List<PropertyDescriptor> getColumns() {
+        return columns;
+    }
+
+    List<Order> orderBy(CriteriaBuilder cb, Root<?> root) {
+        List<Order> result = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); ++i) {
+            Expression<?> path = root.get(columns.get(i).getJavaName());
+            if (isNullable(columns.get(i))) {
+                Expression<Integer> nullsFirst = cb.<Integer>selectCase().when(cb.isNull(path), 0).otherwise(1);
+                result.add(descending.get(i) ? cb.desc(nullsFirst) : cb.asc(nullsFirst));
+            }
+            result.add(descending.get(i) ? cb.desc(path) : cb.asc(path));
+        }
+        return result;
+    }
+
+    /**
+     * Rows after the given one: {@code (c1 > v1) or (c1 = v1 and c2 > v2) or ...}, with {@code <} for descending
+     * columns.
+     *
+     * @param last
+     *         values of the last row of the previous page, decoded with {@link #parse(String)}
+     */
+    Predicate after(CriteriaBuilder cb, Root<?> root, Object[] last) {
+        List<Predicate> alternatives = new ArrayList<>(columns.size());
+        List<Predicate> equalSoFar = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); ++i) {
+            Expression<Comparable<Object>> path = root.<Comparable<Object>>get(columns.get(i).getJavaName());
+            Predicate next = following(cb, path, last[i], descending.get(i));
+            if (next != null) {
+                List<Predicate> alternative = new ArrayList<>(equalSoFar);
+                alternative.add(next);
+                alternatives.add(cb.and(alternative.toArray(new Predicate[alternative.size()])));
+            }
+            equalSoFar.add(last[i] == null ? cb.isNull(path) : cb.equal(path, last[i]));
+        }
+        return cb.or(alternatives.toArray(new Predicate[alternatives.size()]));
+    }
+
+    String tokenOf(JpaOlingoEntity lastEntity) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = columns.get(i).getAccessor().get(lastEntity);
+        }
+        return SkipToken.encode(values, types);
+    }
+
+    String tokenOf(EntityView lastView) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = lastView.getValue(columns.get(i).getName());
+        }
+        return SkipToken.encode(values, types);
+    }
+
+    Object[] parse(String token) throws ODataApplicationException {
+        return SkipToken.decode(token, types);
+    }
+
+    private static boolean isNullable(PropertyDescriptor column) {
+        return !column.isKey() && !column.getJavaType().isPrimitive();
+    }
+
+    /**
+     * @return predicate for values after the given one in the column or null when there are none
+     */
+    private static Predicate following(CriteriaBuilder cb, Expression<Comparable<Object>> path, Object value,
+            boolean descending) {
+        if (value == null) {
+            // nulls go first: in ascending order everything else follows, in descending nothing
+            return descending ? null : cb.isNotNull(path);
+        }
+        @SuppressWarnings("unchecked")
+        Comparable<Object> comparable = (Comparable<Object>) value;
+        return descending ?
+                cb.or(cb.lessThan(path, comparable), cb.isNull(path)) :
+                cb.greaterThan(path, comparable);
+    }
+
+    private static PropertyDescriptor toProperty(EntityMetadata metadata, OrderByItem item)
+            throws ODataApplicationException {
+        if (item.getExpression() instanceof Member) {
+            List<UriResource> parts = ((Member) item.getExpression()).getResourcePath().getUriResourceParts();
+            if (parts.size() == 1 && parts.get(0) instanceof UriResourcePrimitiveProperty) {
+                int index = metadata.indexOfProperty(parts.get(0).getSegmentValue());
+                if (index >= 0) {
+                    return metadata.getProperties().get(index);
+                }
+            }
+        }
+        throw new ODataApplicationException("Paged entity sets can be ordered only by their own properties",
+                HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), Locale.ENGLISH);
+    }
+}
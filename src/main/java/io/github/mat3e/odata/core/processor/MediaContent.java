@@ -0,0 +1,153 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataContent;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+
+import io.github.mat3e.odata.common.entity.JpaOlingoMediaEntity;
+
+/**
+ * Streaming of media entity content ({@code $value}) for media processors, without buffering it in memory.
+ * Uploads are {@link #read(ODataRequest, JpaOlingoMediaEntity) read} straight from the request body.
+ * <p>
+ * Downloads get {@code Content-Length} from {@link JpaOlingoMediaEntity#getContentLength()} and single byte ranges
+ * ({@code Range: bytes=...}) are served with {@code 206 Partial Content}. Other range requests get the whole
+ * content, as HTTP allows.
+ */
+public final class MediaContent implements ODataContent {
+    static final String ACCEPT_RANGES = "Accept-Ranges";
+    static final String CONTENT_RANGE = "Content-Range";
+
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    private final JpaOlingoMediaEntity entity;
+    private final long offset;
+    private final long length;
+    private final Runnable onComplete;
+
+    private MediaContent(JpaOlingoMediaEntity entity, long offset, long length, Runnable onComplete) {
+        this.entity = entity;
+        this.offset = offset;
+        this.length = length;
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * Sets status, headers and the streamed content of the response.
+     *
+     * @param request
+     *         request with optional {@code Range} header
+     * @param response
+     *         response to fill
+     * @param entity
+     *         media entity to be downloaded
+     * @param onComplete
+     *         called once the content is written or when there is nothing to write, e.g. closes the entity manager
+     *         the entity came from
+     */
+    public static void write(ODataRequest request, ODataResponse response, JpaOlingoMediaEntity entity,
+            Runnable onComplete) {
+        long total = entity.getContentLength();
+        response.setHeader(ACCEPT_RANGES, "bytes");
+        if (entity.getMediaContentType() != null) {
+            response.setHeader(HttpHeader.CONTENT_TYPE, entity.getMediaContentType());
+        }
+
+        long[] range = parseRange(request.getHeader(HttpHeader.RANGE), total);
+        if (range == null) {
+            response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+            range = new long[] { 0, total };
+        } else if (range[1] == 0) {
+            response.setStatusCode(HttpStatusCode.RANGE_NOT_SATISFIABLE.getStatusCode());
+            response.setHeader(CONTENT_RANGE, "bytes */" + total);
+            response.setHeader(HttpHeader.CONTENT_LENGTH, "0");
+            onComplete.run();
+            return;
+        } else {
+            response.setStatusCode(HttpStatusCode.PARTIAL_CONTENT.getStatusCode());
+            response.setHeader(CONTENT_RANGE,
+                    "bytes " + range[0] + "-" + (range[0] + range[1] - 1) + "/" + total);
+        }
+        response.setHeader(HttpHeader.CONTENT_LENGTH, Long.toString(range[1]));
+        response.setODataContent(new MediaContent(entity, range[0], range[1], onComplete));
+    }
+
+    /**
+     * Passes the uploaded content to the entity as a stream, with the length from {@code Content-Length}.
+     *
+     * @param request
+     *         request with the new content in the body
+     * @param entity
+     *         media entity to be updated
+     */
+    public static void read(ODataRequest request, JpaOlingoMediaEntity entity) {
+        String length = request.getHeader(HttpHeader.CONTENT_LENGTH);
+        String contentType = request.getHeader(HttpHeader.CONTENT_TYPE);
+        if (contentType != null) {
+            entity.setMediaContentType(contentType);
+        }
+        entity.setContent(request.getBody(), length == null ? -1 : Long.parseLong(length.trim()));
+    }
+
+    /**
+     * @param header
+     *         value of {@code Range} header
+     * @param total
+     *         length of the content
+     * @return offset and length of the range, length 0 for unsatisfiable ranges or null when the whole content
+     * should be returned
+     */
+    static long[] parseRange(String header, long total) {
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = BYTE_RANGE.matcher(header.trim());
+        if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+            // multiple ranges or other units
+            return null;
+        }
+
+        try {
+            if (matcher.group(1).isEmpty()) {
+                // suffix: last n bytes
+                long suffix = Math.min(Long.parseLong(matcher.group(2)), total);
+                return new long[] { total - suffix, suffix };
+            }
+            long first = Long.parseLong(matcher.group(1));
+            long last = matcher.group(2).isEmpty() ? Long.MAX_VALUE : Long.parseLong(matcher.group(2));
+            if (last < first) {
+                // invalid, ignored
+                return null;
+            }
+            if (first >= total) {
+                return new long[] { 0, 0 };
+            }
+            return new long[] { first, Math.min(last, total - 1) - first + 1 };
+        } catch (NumberFormatException e) {
+            // too big to be satisfiable
+            return new long[] { 0, 0 };
+        }
+    }
+
+    @Override
+    public void write(WritableByteChannel channel) {
+        try {
+            entity.writeContent(channel, offset, length);
+        } finally {
+            onComplete.run();
+        }
+    }
+
+    @Override
+    public void write(OutputStream stream) {
+        write(Channels.newChannel(stream));
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import org.apache.olingo.server.api.uri.UriInfo;
+
+import io.github.mat3e.odata.common.entity.EntityMetadata;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.entity.EntityView;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.entity.PropertySelection;
+
+/**
+ * {@code $select} pushed down to SQL: only the selected columns and the keys are fetched, as {@code Object[]} rows
+ * mapped to {@link EntityView EntityViews}. Nothing is hydrated or kept in the persistence context.
+ */
+final class Projection {
+    private final EntityMetadata metadata;
+    private final PropertySelection selection;
+
+    // indexes of fetched properties, in the order of columns in the row
+    private final int[] columns;
+
+    private Projection(EntityMetadata metadata, PropertySelection selection, int[] columns) {
+        this.metadata = metadata;
+        this.selection = selection;
+        this.columns = columns;
+    }
+
+    /**
+     * @param entityClass
+     *         JPA class backing the entity set
+     * @param uriInfo
+     *         parsed request
+     * @param required
+     *         properties needed apart from the selected ones, e.g. for {@link KeysetPaging}
+     * @return projection or null when whole entities are needed: nothing selected, expanded navigation properties
+     * or all the columns selected anyway
+     */
+    static Projection of(Class<? extends JpaOlingoEntity> entityClass, UriInfo uriInfo,
+            Collection<PropertyDescriptor> required) {
+        PropertySelection selection = PropertySelection.of(uriInfo.getSelectOption());
+        if (selection.isAll() || uriInfo.getExpandOption() != null) {
+            return null;
+        }
+
+        EntityMetadata metadata = EntityMetadata.of(entityClass);
+        List<PropertyDescriptor> properties = metadata.getProperties();
+        Set<Integer> fetched = new LinkedHashSet<>();
+        for (int i = 0; i < properties.size(); ++i) {
+            if (properties.get(i).isKey()) {
+                fetched.add(i);
+            }
+        }
+        for (int i = 0; i < properties.size(); ++i) {
+            if (selection.isSelected(properties.get(i).getName())) {
+                fetched.add(i);
+            }
+        }
+        for (PropertyDescriptor property : required) {
+            fetched.add(metadata.indexOfProperty(property.getName()));
+        }
+        if (fetched.size() == properties.size()) {
+            return null;
+        }
+
+        int[] columns = new int[fetched.size()];
+        int i = 0;
+        for (int index : fetched) {
+            columns[i++] = index;
+        }
+        return new Projection(metadata, selection, columns);
+    }
+
+    List<Selection<?>> selections(Root<?> root) {
+        List<Selection<?>> result = new ArrayList<>(columns.length);
+        for (int index : columns) {
+            result.add(root.get(metadata.getProperties().get(index).getJavaName()));
+        }
+        return result;
+    }
+
+    EntityView toView(Object[] row) {
+        Object[] values = new Object[metadata.getProperties().size()];
+        for (int i = 0; i < columns.length; ++i) {
+            values[columns[i]] = row[i];
+        }
+        return new EntityView(metadata, selection, values);
+    }
+}
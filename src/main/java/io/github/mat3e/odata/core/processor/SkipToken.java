@@ -0,0 +1,165 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+/**
+ * Opaque {@code $skiptoken}: values of the last row of the page, in URL-safe Base64.
+ * Values are written as text and parsed back, both by the declared Java types of the columns they come from, as
+ * JPA providers may load a subtype (e.g. Hibernate loads {@link Date} columns as {@link Timestamp}). Dates and
+ * timestamps are written as milliseconds, with nanoseconds of timestamps, so they don't depend on the time zone.
+ */
+final class SkipToken {
+    private static final Map<Class<?>, Function<String, Object>> PARSERS = new HashMap<>();
+    private static final char NANOS_SEPARATOR = ':';
+
+    static {
+        PARSERS.put(String.class, text -> text);
+        PARSERS.put(Boolean.class, Boolean::valueOf);
+        PARSERS.put(Character.class, text -> text.charAt(0));
+        PARSERS.put(Byte.class, Byte::valueOf);
+        PARSERS.put(Short.class, Short::valueOf);
+        PARSERS.put(Integer.class, Integer::valueOf);
+        PARSERS.put(Long.class, Long::valueOf);
+        PARSERS.put(Float.class, Float::valueOf);
+        PARSERS.put(Double.class, Double::valueOf);
+        PARSERS.put(BigDecimal.class, BigDecimal::new);
+        PARSERS.put(BigInteger.class, BigInteger::new);
+        PARSERS.put(UUID.class, UUID::fromString);
+        PARSERS.put(LocalDate.class, LocalDate::parse);
+        PARSERS.put(LocalTime.class, LocalTime::parse);
+        PARSERS.put(LocalDateTime.class, LocalDateTime::parse);
+        PARSERS.put(Timestamp.class, SkipToken::parseTimestamp);
+        PARSERS.put(java.sql.Date.class, java.sql.Date::valueOf);
+        PARSERS.put(Time.class, Time::valueOf);
+        // timestamps for columns loaded as such
+        PARSERS.put(Date.class, text -> text.indexOf(NANOS_SEPARATOR) < 0 ?
+                new Date(Long.parseLong(text)) :
+                parseTimestamp(text));
+        PARSERS.put(Calendar.class, text -> {
+            Calendar result = Calendar.getInstance();
+            result.setTimeInMillis(Long.parseLong(text));
+            return result;
+        });
+    }
+
+    private SkipToken() {
+    }
+
+    /**
+     * @param values
+     *         values of the last row
+     * @param types
+     *         declared Java types of the values, wrappers for primitives, the same as for
+     *         {@link #decode(String, List)}
+     * @return token
+     */
+    static String encode(Object[] values, List<Class<?>> types) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(values.length);
+            for (int i = 0; i < values.length; ++i) {
+                out.writeBoolean(values[i] != null);
+                if (values[i] != null) {
+                    out.writeUTF(toText(values[i], types.get(i)));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write skip token", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param token
+     *         token from the request
+     * @param types
+     *         Java types of the encoded values, wrappers for primitives
+     * @return decoded values
+     * @throws ODataApplicationException
+     *         if the token was not created for the given types
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Object[] decode(String token, List<Class<?>> types) throws ODataApplicationException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readByte() != types.size()) {
+                throw invalid(token, null);
+            }
+            Object[] result = new Object[types.size()];
+            for (int i = 0; i < result.length; ++i) {
+                if (in.readBoolean()) {
+                    String text = in.readUTF();
+                    Class<?> type = types.get(i);
+                    result[i] = type.isEnum() ? Enum.valueOf((Class<Enum>) type, text) : parser(type).apply(text);
+                }
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            throw invalid(token, e);
+        }
+    }
+
+    private static String toText(Object value, Class<?> type) {
+        if (type.isEnum()) {
+            return ((Enum<?>) value).name();
+        }
+        if (type == Date.class || type == Timestamp.class) {
+            Date date = (Date) value;
+            return value instanceof Timestamp ?
+                    Long.toString(date.getTime()) + NANOS_SEPARATOR + ((Timestamp) value).getNanos() :
+                    Long.toString(date.getTime());
+        }
+        if (type == Calendar.class) {
+            return Long.toString(((Calendar) value).getTimeInMillis());
+        }
+        return value.toString();
+    }
+
+    /**
+     * @param text
+     *         milliseconds, optionally followed by nanoseconds
+     */
+    private static Timestamp parseTimestamp(String text) {
+        int separator = text.indexOf(NANOS_SEPARATOR);
+        Timestamp result = new Timestamp(Long.parseLong(separator < 0 ? text : text.substring(0, separator)));
+        if (separator >= 0) {
+            result.setNanos(Integer.parseInt(text.substring(separator + 1)));
+        }
+        return result;
+    }
+
+    private static Function<String, Object> parser(Class<?> type) {
+        Function<String, Object> result = PARSERS.get(type);
+        if (result == null) {
+            throw new IllegalStateException("Type " + type.getName() + " cannot be a part of skip token");
+        }
+        return result;
+    }
+
+    private static ODataApplicationException invalid(String token, Exception cause) {
+        return new ODataApplicationException("Invalid $skiptoken " + token, HttpStatusCode.BAD_REQUEST.getStatusCode(),
+                Locale.ENGLISH, cause);
+    }
+}
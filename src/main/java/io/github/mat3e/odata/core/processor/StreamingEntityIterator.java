@@ -0,0 +1,154 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityIterator;
+import org.hibernate.ScrollableResults;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entities read from a forward-only cursor, for Olingo streaming serializers.
+ * <p>
+ * Rows are read in chunks of {@code chunkSize}, each chunk is completed at once (e.g. with expanded navigation
+ * properties) and handed out one by one. Serializer writes each entity before asking for the next one, so the
+ * persistence context is cleared before reading the next chunk and never holds more than a single one.
+ * Iterator owns the {@link EntityManager}: cursor, transaction and manager are closed once the last entity is
+ * returned or on {@link #close()}.
+ */
+class StreamingEntityIterator extends EntityIterator implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingEntityIterator.class);
+
+    private final EntityManager entityManager;
+    private final ScrollableResults results;
+    private final int chunkSize;
+    private final Function<Object[], Entity> rowMapper;
+    private final Consumer<List<Entity>> chunkLoader;
+
+    // entities of the current chunk, not returned yet
+    private final Deque<Entity> chunk = new ArrayDeque<>();
+
+    private Integer count;
+    private int returned;
+    private boolean exhausted;
+    private boolean closed;
+
+    /**
+     * @param rowMapper
+     *         creates an entity from the current row of the cursor, e.g. from a projection
+     * @param chunkLoader
+     *         completes the entities of each chunk before they are returned, e.g. loads expanded navigation
+     *         properties with a single query
+     */
+    StreamingEntityIterator(EntityManager entityManager, ScrollableResults results, int chunkSize,
+            Function<Object[], Entity> rowMapper, Consumer<List<Entity>> chunkLoader) {
+        this.entityManager = entityManager;
+        this.results = results;
+        this.chunkSize = chunkSize;
+        this.rowMapper = rowMapper;
+        this.chunkLoader = chunkLoader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!chunk.isEmpty()) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        if (!exhausted) {
+            readChunk();
+        }
+        if (chunk.isEmpty()) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Entity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ++returned;
+        return chunk.poll();
+    }
+
+    /**
+     * @return {@code $count} of the whole set, null when not requested
+     */
+    @Override
+    public Integer getCount() {
+        return count;
+    }
+
+    void setCount(Integer count) {
+        this.count = count;
+    }
+
+    /**
+     * @return number of entities returned so far
+     */
+    int getReturned() {
+        return returned;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void readChunk() {
+        if (returned > 0) {
+            // all the entities of the previous chunk are already written
+            entityManager.clear();
+        }
+        List<Entity> entities = new ArrayList<>(chunkSize);
+        while (entities.size() < chunkSize) {
+            if (!results.next()) {
+                exhausted = true;
+                break;
+            }
+            entities.add(rowMapper.apply(results.get()));
+        }
+        if (!entities.isEmpty()) {
+            chunkLoader.accept(entities);
+            chunk.addAll(entities);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        chunk.clear();
+        try {
+            results.close();
+        } finally {
+            try {
+                EntityTransaction transaction = entityManager.getTransaction();
+                if (transaction.isActive()) {
+                    // nothing to commit, cursor was read-only
+                    transaction.rollback();
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Cannot end cursor transaction", e);
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.Joinable;
+
+/**
+ * Reads the number of rows from database statistics, kept up to date by the database itself (e.g. by
+ * {@code ANALYZE}). Free in comparison to {@code COUNT(*)} on a huge table, but just an estimate.
+ */
+public class TableStatisticsCounter implements ApproximateCounter {
+    /**
+     * PostgreSQL planner statistics. Query for tables which were never analyzed gives -1, which means no estimate.
+     */
+    public static final String POSTGRESQL =
+            "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = to_regclass(?1)";
+
+    /**
+     * MySQL (InnoDB) table statistics from the current schema.
+     */
+    public static final String MYSQL =
+            "SELECT table_rows FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name = ?1";
+
+    private final String sql;
+
+    /**
+     * @param sql
+     *         native query returning a single number of rows for the table name passed as the first parameter,
+     *         e.g. {@link #POSTGRESQL}
+     */
+    public TableStatisticsCounter(String sql) {
+        this.sql = sql;
+    }
+
+    @Override
+    public Long estimate(EntityManager entityManager, Class<?> entityClass) {
+        ClassMetadata metadata = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class)
+                                              .getClassMetadata(entityClass);
+        if (!(metadata instanceof Joinable)) {
+            return null;
+        }
+
+        List<?> result = entityManager.createNativeQuery(sql)
+                                      .setParameter(1, ((Joinable) metadata).getTableName())
+                                      .getResultList();
+        if (result.isEmpty() || !(result.get(0) instanceof Number)) {
+            return null;
+        }
+        long estimate = ((Number) result.get(0)).longValue();
+        return estimate < 0 ? null : estimate;
+    }
+}
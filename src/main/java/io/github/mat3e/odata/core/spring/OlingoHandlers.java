@@ -0,0 +1,103 @@
+package io.github.mat3e.odata.core.spring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.olingo.commons.api.edm.provider.CsdlEdmProvider;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataHandler;
+import org.apache.olingo.server.api.ODataHttpHandler;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.Processor;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.stereotype.Component;
+
+import io.github.mat3e.odata.core.spring.annotation.OlingoProcessor;
+
+/**
+ * Request wiring for Spring apps: {@link OData} and {@link ServiceMetadata} created once from the EDM provider bean
+ * and shared by all the requests, with all the {@link OlingoProcessor} beans registered in every handler.
+ * <p>
+ * Olingo handlers keep the state of the processed request, so each request should get its own one from
+ * {@link #newHandler()} (e.g. {@code handlers.newHandler().process(request, response)} in a servlet or controller).
+ * That costs just a few objects, EDM is built only once and its caches are shared. {@link #newRawHandler()} fits
+ * {@link io.github.mat3e.odata.core.processor.JpaBatchProcessor} ({@code handlers::newRawHandler}).
+ * <p>
+ * Processors are ordered with {@link org.springframework.core.annotation.Order}, the first supporting a request
+ * wins. They are collected once all the singletons exist, so processors may depend on this component.
+ */
+@Component
+public class OlingoHandlers implements SmartInitializingSingleton {
+    private final OData odata;
+    private final ServiceMetadata serviceMetadata;
+    private final ApplicationContext context;
+
+    private volatile List<Processor> processors = Collections.emptyList();
+
+    @Autowired
+    public OlingoHandlers(CsdlEdmProvider edmProvider, ApplicationContext context) {
+        this.odata = OData.newInstance();
+        this.serviceMetadata = odata.createServiceMetadata(edmProvider, Collections.emptyList());
+        this.context = context;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<Processor> result = new ArrayList<>();
+        for (Object bean : context.getBeansWithAnnotation(OlingoProcessor.class).values()) {
+            if (!(bean instanceof Processor)) {
+                throw new IllegalStateException(bean.getClass().getName() + " is annotated with OlingoProcessor " +
+                        "but doesn't implement " + Processor.class.getName());
+            }
+            result.add((Processor) bean);
+        }
+        AnnotationAwareOrderComparator.sort(result);
+        processors = Collections.unmodifiableList(result);
+    }
+
+    public OData getOData() {
+        return odata;
+    }
+
+    public ServiceMetadata getServiceMetadata() {
+        return serviceMetadata;
+    }
+
+    /**
+     * @return processors registered in every handler
+     */
+    public List<Processor> getProcessors() {
+        return processors;
+    }
+
+    /**
+     * @return servlet handler for a single request
+     */
+    public ODataHttpHandler newHandler() {
+        ODataHttpHandler result = odata.createHandler(serviceMetadata);
+        processors.forEach(result::register);
+        return result;
+    }
+
+    /**
+     * @return handler for a single {@link ODataRequest}, without the servlet API
+     */
+    public ODataHandler newRawHandler() {
+        ODataHandler result = odata.createRawHandler(serviceMetadata);
+        processors.forEach(result::register);
+        return result;
+    }
+
+    /**
+     * Processes the request with a new raw handler.
+     */
+    public ODataResponse process(ODataRequest request) {
+        return newRawHandler().process(request);
+    }
+}
@@ -1,10 +1,17 @@
 package io.github.mat3e.odata.core.spring.annotation;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 import org.springframework.stereotype.Service;
 
 /**
  * Annotation for components building EDM.
  */
 @Service
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
 public @interface CsdlProvider {
 }
@@ -1,10 +1,17 @@
 package io.github.mat3e.odata.core.spring.annotation;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 import org.springframework.stereotype.Service;
 
 /**
  * Apache Olingo uses processors for building the response.
  */
 @Service
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
 public @interface OlingoProcessor {
 }
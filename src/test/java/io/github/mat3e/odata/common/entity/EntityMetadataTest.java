@@ -0,0 +1,170 @@
+package io.github.mat3e.odata.common.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.EntityMetadata.PropertyDescriptor;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
+
+public class EntityMetadataTest {
+
+    private final static String SET = "TestEntities";
+    private final static String ID_FIELD = "ID";
+    private final static String NAME_FIELD = "Name";
+    private final static String NESTED_FIELD = "Nested";
+
+    @ODataEntity(name = "TestEntity", entitySetName = SET)
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = ID_FIELD, type = EdmPrimitiveTypeKind.Int32)
+        private int ID = 1;
+
+        @ODataProperty(name = NAME_FIELD, type = EdmPrimitiveTypeKind.String)
+        private String name = "dummy";
+
+        @ODataNavigationProperty(name = NESTED_FIELD)
+        private TestEntity nested;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public TestEntity getNested() {
+            return this.nested;
+        }
+
+        public void setNested(TestEntity nested) {
+            this.nested = nested;
+        }
+    }
+
+    @ODataEntity(name = "PublicEntity")
+    public static class PublicEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = ID_FIELD, type = EdmPrimitiveTypeKind.Int64)
+        private long ID = 7L;
+
+        @ODataProperty(name = NAME_FIELD, type = EdmPrimitiveTypeKind.String)
+        private String notFollowingConvention = "field";
+
+        public long getID() {
+            return this.ID;
+        }
+
+        public void setID(long ID) {
+            this.ID = ID;
+        }
+    }
+
+    @Test
+    public void test_EntityMetadata_of_returnsSharedInstance() {
+
+        // GIVEN + WHEN
+        EntityMetadata first = EntityMetadata.of(new TestEntity().getClass());
+        EntityMetadata second = EntityMetadata.of(new TestEntity().getClass());
+
+        // THEN
+        assertThat(first).isSameAs(second);
+    }
+
+    @Test
+    public void test_EntityMetadata_describesPropertiesKeysAndNavigations() {
+
+        // GIVEN + WHEN
+        EntityMetadata result = EntityMetadata.of(TestEntity.class);
+        List<PropertyDescriptor> properties = result.getProperties();
+
+        // THEN
+        assertThat(result.getEntitySetName()).isEqualTo(SET);
+        assertThat(properties).extracting(PropertyDescriptor::getName).containsExactly(ID_FIELD, NAME_FIELD);
+        assertThat(result.getKeys()).extracting(PropertyDescriptor::getName).containsExactly(ID_FIELD);
+        assertThat(result.getNavigations()).hasSize(1);
+        assertThat(result.getNavigations().get(0).getName()).isEqualTo(NESTED_FIELD);
+        assertThat(result.getNavigations().get(0).isCollection()).isFalse();
+    }
+
+    @Test
+    public void test_EntityMetadata_accessorReadsAndWritesValues() {
+
+        // GIVEN
+        TestEntity entity = new TestEntity();
+        PropertyAccessor accessor = EntityMetadata.of(TestEntity.class).getProperties().get(1).getAccessor();
+
+        // WHEN
+        accessor.set(entity, "changed");
+
+        // THEN
+        assertThat(accessor.get(entity)).isEqualTo("changed");
+        assertThat(entity.getName()).isEqualTo("changed");
+    }
+
+    @Test
+    public void test_PropertyAccessor_readsPrimitivesWithoutBoxingAndFallsBackToFields() {
+
+        // GIVEN
+        PublicEntity entity = new PublicEntity();
+        List<PropertyDescriptor> properties = EntityMetadata.of(PublicEntity.class).getProperties();
+        PropertyAccessor idAccessor = properties.get(0).getAccessor();
+        PropertyAccessor fieldAccessor = properties.get(1).getAccessor();
+
+        // WHEN
+        idAccessor.set(entity, 8L);
+        idAccessor.set(entity, null);
+        fieldAccessor.set(entity, "changed");
+
+        // THEN
+        assertThat(idAccessor.getLong(entity)).isEqualTo(8L);
+        assertThat(idAccessor.get(entity)).isEqualTo(8L);
+        assertThat(fieldAccessor.get(entity)).isEqualTo("changed");
+    }
+
+    @Test
+    public void test_EntityMetadata_generatedOnlyWhenAccessorsAvailable() {
+
+        // GIVEN + WHEN
+        GeneratedEntityMetadata generated = ReflectionUtil
+                .instantiateGenerated(TestEntity.class, GeneratedEntityMetadata.SUFFIX, GeneratedEntityMetadata.class);
+        GeneratedEntityMetadata notGenerated = ReflectionUtil
+                .instantiateGenerated(PublicEntity.class, GeneratedEntityMetadata.SUFFIX,
+                        GeneratedEntityMetadata.class);
+
+        // THEN
+        assertThat(generated).isNotNull();
+        assertThat(generated.getProperties()).extracting(PropertyDescriptor::getName)
+                                             .containsExactly(ID_FIELD, NAME_FIELD);
+        assertThat(notGenerated).isNull();
+    }
+
+    @Test
+    public void test_EntityMetadata_indexesNames() {
+
+        // GIVEN + WHEN
+        EntityMetadata result = EntityMetadata.of(TestEntity.class);
+
+        // THEN
+        assertThat(result.indexOfProperty(NAME_FIELD)).isEqualTo(1);
+        assertThat(result.indexOfProperty(NESTED_FIELD)).isEqualTo(-1);
+        assertThat(result.indexOfNavigation(NESTED_FIELD)).isEqualTo(0);
+        assertThat(new TestEntity().getProperty("Unknown")).isNull();
+    }
+}
@@ -2,7 +2,10 @@ package io.github.mat3e.odata.common.entity;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.apache.olingo.commons.api.data.Entity;
@@ -10,6 +13,7 @@ import org.apache.olingo.commons.api.data.Link;
 import org.apache.olingo.commons.api.data.Property;
 import org.apache.olingo.commons.api.data.ValueType;
 import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
 import io.github.mat3e.odata.common.annotation.ODataEntity;
@@ -113,6 +117,44 @@ public class JpaOlingoEntityTest {
         }
     }
 
+    @ODataEntity(name = "CountingEntity")
+    class CountingEntity extends JpaOlingoEntity {
+        int nameReads;
+
+        @ODataKey
+        @ODataProperty(name = ID_FIELD, type = EdmPrimitiveTypeKind.String)
+        private String ID = ID_VALUE;
+
+        @ODataProperty(name = NAME_FIELD, type = EdmPrimitiveTypeKind.String)
+        private String name = NAME_VALUE;
+
+        public String getID() {
+            return this.ID;
+        }
+
+        public void setID(String ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            ++nameReads;
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The same data as {@link CountingEntity}, but without OData state.
+     */
+    class PlainEntity extends Entity {
+        int nameReads;
+        private String ID = ID_VALUE;
+        private String name = NAME_VALUE;
+    }
+
     @Test
     public void test_JpaOlingoEntity_getId_returnsProperUri() {
 
@@ -157,11 +199,25 @@ public class JpaOlingoEntityTest {
     }
 
     @Test
-    public void test_JpaOlingoEntity_getNavigationLink_returnsProperEntity() {
+    public void test_JpaOlingoEntity_getNavigationLink_returnsDeferredLinkByDefault() {
 
         // GIVEN + WHEN
         Link result = basic.getNavigationLink(NESTED_FIELD);
 
+        // THEN
+        assertThat(result.getHref()).isEqualTo(SET_1 + "('" + ID_VALUE + "')/" + NESTED_FIELD);
+        assertThat(result.getInlineEntity()).isNull();
+        assertThat(result.getInlineEntitySet()).isNull();
+        assertThat(basic.isNavigationLoaded(NESTED_FIELD)).isTrue();
+    }
+
+    @Test
+    public void test_JpaOlingoEntity_getNavigationLink_returnsProperEntity() {
+
+        // GIVEN + WHEN
+        Link result = basic.expand(NavigationExpansion.of(Collections.singleton(NESTED_FIELD)))
+                           .getNavigationLink(NESTED_FIELD);
+
         // THEN
         assertThat(result.getInlineEntitySet()).isNull();
         assertThat(result.getInlineEntity()).isEqualTo(nested);
@@ -171,7 +227,7 @@ public class JpaOlingoEntityTest {
     public void test_JpaOlingoEntity_getNavigationLink_returnsProperEntitySet() {
 
         // GIVEN + WHEN
-        Link result = extended.getNavigationLink(SET_3);
+        Link result = extended.expand(NavigationExpansion.ALL).getNavigationLink(SET_3);
 
         // THEN
         assertThat(result.getInlineEntity()).isNull();
@@ -211,4 +267,84 @@ public class JpaOlingoEntityTest {
         assertThat(SUT.getName()).isNull();
         assertThat(SUT.getID()).isEqualTo(ID_VALUE);
     }
+
+    @Test
+    public void test_JpaOlingoEntity_select_readsOnlySelectedProperties() {
+
+        // GIVEN
+        CountingEntity SUT = new CountingEntity();
+
+        // WHEN
+        List<Property> result = SUT.select(PropertySelection.of(Collections.singleton(ID_FIELD))).getProperties();
+
+        // THEN
+        assertThat(result).extracting(Property::getName).containsExactly(ID_FIELD);
+        assertThat(SUT.nameReads).isZero();
+        assertThat(SUT.getProperty(NAME_FIELD).getValue()).isEqualTo(NAME_VALUE);
+        assertThat(SUT.nameReads).isEqualTo(1);
+    }
+
+    @Test
+    public void test_JpaOlingoEntity_footprint_meetsDocumentedTarget() {
+
+        // GIVEN
+        // the target counts references as 4 bytes
+        skipUnlessCompressedOops();
+        final int count = 10_000;
+        // 2 properties, no navigation properties
+        final long slotsTarget = align(16 + 4 * (JpaOlingoEntity.FIXED_SLOTS + 2));
+        final long propertyCost = allocatedPerObject(count, () -> new Property(null, NAME_FIELD, ValueType.PRIMITIVE,
+                NAME_VALUE));
+        final long plainCost = allocatedPerObject(count, PlainEntity::new);
+        new CountingEntity().getProperties(); // metadata of the class computed up front
+
+        // WHEN
+        long entityCost = allocatedPerObject(count, CountingEntity::new);
+        CountingEntity[] entities = Stream.generate(CountingEntity::new).limit(count).toArray(CountingEntity[]::new);
+        long readCost = allocatedPerObject(count, new Supplier<Object>() {
+            int i;
+
+            @Override
+            public Object get() {
+                return entities[i++].getProperties();
+            }
+        });
+
+        // THEN
+        assertThat(entityCost - plainCost).isLessThanOrEqualTo(8); // single reference
+        // slots, Olingo properties and the first growth of the list from Olingo Entity
+        assertThat(readCost - 2 * propertyCost).isLessThanOrEqualTo(slotsTarget + align(16 + 4 * 10));
+    }
+
+    private static void skipUnlessCompressedOops() {
+        final com.sun.management.HotSpotDiagnosticMXBean bean =
+                ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+        try {
+            if (bean == null || !Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue())) {
+                throw new SkipException("Compressed oops are disabled");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new SkipException("Not a HotSpot JVM with compressed oops");
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+
+    private static long allocatedPerObject(int count, Supplier<?> factory) {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            throw new SkipException("No allocation counter in this JVM");
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        Object[] keep = new Object[count];
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < count; ++i) {
+            keep[i] = factory.get();
+        }
+        long after = bean.getThreadAllocatedBytes(threadId);
+        return (after - before) / count;
+    }
 }
@@ -0,0 +1,188 @@
+package io.github.mat3e.odata.common.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import javax.persistence.IdClass;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.core.uri.UriParameterImpl;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+
+public class KeyCodecTest {
+    private static final UUID UID = UUID.fromString("01234567-89ab-cdef-0123-456789abcdef");
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.String)
+        private String ID;
+
+        public String getID() {
+            return this.ID;
+        }
+
+        public void setID(String ID) {
+            this.ID = ID;
+        }
+    }
+
+    @ODataEntity(name = "Parcel", entitySetName = "Parcels")
+    class Parcel extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int16)
+        private int ID;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+    }
+
+    @ODataEntity(name = "Shipment", entitySetName = "Shipments")
+    @IdClass(ShipmentId.class)
+    class Shipment extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "Number", type = EdmPrimitiveTypeKind.Int64)
+        private long number;
+
+        @ODataKey
+        @ODataProperty(name = "Uid", type = EdmPrimitiveTypeKind.Guid)
+        private UUID uid;
+
+        public long getNumber() {
+            return this.number;
+        }
+
+        public void setNumber(long number) {
+            this.number = number;
+        }
+
+        public UUID getUid() {
+            return this.uid;
+        }
+
+        public void setUid(UUID uid) {
+            this.uid = uid;
+        }
+    }
+
+    static class ShipmentId implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long number;
+        private UUID uid;
+    }
+
+    @Test
+    public void test_KeyCodec_appendId_escapesQuotes() {
+
+        // GIVEN
+        final TestEntity entity = new TestEntity();
+        entity.setID("O'Neil");
+
+        // WHEN
+        final StringBuilder result = KeyCodec.of(TestEntity.class).appendId(new StringBuilder(), entity);
+
+        // THEN
+        assertThat(result.toString()).isEqualTo("TestEntities('O''Neil')");
+        assertThat(KeyCodec.of(TestEntity.class).parseValues(
+                Collections.singletonList(predicate(null, "'O''Neil'")))).containsExactly("O'Neil");
+    }
+
+    @Test
+    public void test_KeyCodec_appendId_percentEncodesReservedCharacters() {
+
+        // GIVEN
+        final TestEntity entity = new TestEntity();
+        entity.setID("a/b c\u00e4");
+
+        // WHEN
+        final StringBuilder result = KeyCodec.of(TestEntity.class).appendId(new StringBuilder(), entity);
+
+        // THEN
+        assertThat(result.toString()).isEqualTo("TestEntities('a%2Fb%20c%C3%A4')");
+        assertThat(entity.getId()).isEqualTo(URI.create("TestEntities('a%2Fb%20c%C3%A4')"));
+    }
+
+    @Test
+    public void test_KeyCodec_appendKey_writesCompositeKey() {
+
+        // GIVEN
+        final Shipment entity = new Shipment();
+        entity.setNumber(5000000000L);
+        entity.setUid(UID);
+
+        // WHEN
+        final StringBuilder result = KeyCodec.of(Shipment.class).appendKey(new StringBuilder("x:"), entity);
+
+        // THEN
+        assertThat(result.toString()).isEqualTo("x:Number=5000000000,Uid=" + UID);
+    }
+
+    @Test
+    public void test_KeyCodec_parsePrimaryKey_fillsIdClassInAnyOrder() {
+
+        // GIVEN
+        final KeyCodec sut = KeyCodec.of(Shipment.class);
+
+        // WHEN
+        final Object result = sut.parsePrimaryKey(Arrays.asList(
+                predicate("Uid", UID.toString()), predicate("Number", "5000000000")));
+
+        // THEN
+        assertThat(result).isInstanceOf(ShipmentId.class);
+        assertThat(((ShipmentId) result).number).isEqualTo(5000000000L);
+        assertThat(((ShipmentId) result).uid).isEqualTo(UID);
+    }
+
+    @Test
+    public void test_KeyCodec_parseValues_rejectsInvalidLiterals() {
+
+        // GIVEN
+        final KeyCodec sut = KeyCodec.of(Shipment.class);
+
+        // WHEN
+        final Throwable unknown = catchThrowable(() -> sut.parseValues(Arrays.asList(
+                predicate("Uid", UID.toString()), predicate("Other", "1"))));
+        final Throwable invalid = catchThrowable(() -> sut.parseValues(Arrays.asList(
+                predicate("Uid", UID.toString()), predicate("Number", "'1'"))));
+
+        // THEN
+        assertThat(unknown).isInstanceOf(IllegalArgumentException.class);
+        assertThat(invalid).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void test_KeyCodec_parseValues_checksRangeOfEdmType() {
+
+        // GIVEN
+        final KeyCodec sut = KeyCodec.of(Parcel.class);
+
+        // WHEN
+        final Throwable outOfRange = catchThrowable(() -> sut.parseValues(
+                Collections.singletonList(predicate(null, "40000"))));
+
+        // THEN
+        assertThat(sut.parseValues(Collections.singletonList(predicate(null, "-32768")))).containsExactly(-32768);
+        assertThat(outOfRange).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static UriParameter predicate(String name, String text) {
+        return new UriParameterImpl().setName(name).setText(text);
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.mat3e.odata.common.media;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FileSystemMediaStoreTest {
+    private Path root;
+
+    @BeforeMethod
+    public void createRoot() throws IOException {
+        root = Files.createTempDirectory("media");
+    }
+
+    @AfterMethod
+    public void deleteRoot() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void test_FileSystemMediaStore_put_storesSameContentOnce() throws IOException {
+
+        // GIVEN
+        final FileSystemMediaStore sut = new FileSystemMediaStore(root);
+
+        // WHEN
+        final String first = sut.put(stream("same content"));
+        final String second = sut.put(stream("same content"));
+        final String other = sut.put(stream("other content"));
+
+        // THEN
+        assertThat(first).isEqualTo(second).isNotEqualTo(other).hasSize(64);
+        assertThat(sut.size(first)).isEqualTo(12);
+        try (Stream<Path> files = Files.walk(root)) {
+            assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void test_FileSystemMediaStore_readsRanges() throws IOException {
+
+        // GIVEN
+        final FileSystemMediaStore sut = new FileSystemMediaStore(root);
+        final String key = sut.put(stream("0123456789"));
+
+        // WHEN
+        final ByteArrayOutputStream transferred = new ByteArrayOutputStream();
+        final long written = sut.transferTo(key, 2, 3, Channels.newChannel(transferred));
+        final ByteArrayOutputStream opened = new ByteArrayOutputStream();
+        try (InputStream in = sut.open(key, 7, 100)) {
+            for (int b = in.read(); b >= 0; b = in.read()) {
+                opened.write(b);
+            }
+        }
+
+        // THEN
+        assertThat(written).isEqualTo(3);
+        assertThat(new String(transferred.toByteArray(), StandardCharsets.US_ASCII)).isEqualTo("234");
+        assertThat(new String(opened.toByteArray(), StandardCharsets.US_ASCII)).isEqualTo("789");
+    }
+
+    @Test
+    public void test_FileSystemMediaStore_rejectsKeysOutsideOfStore() throws IOException {
+
+        // GIVEN
+        final FileSystemMediaStore sut = new FileSystemMediaStore(root);
+
+        // WHEN
+        final Throwable result = catchThrowable(() -> sut.open("../../etc/passwd", 0, 1));
+
+        // THEN
+        assertThat(result).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -1,15 +1,21 @@
 package io.github.mat3e.odata.common.provider;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
 import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
 import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.core.uri.parser.Parser;
 import org.testng.annotations.Test;
 
 import io.github.mat3e.odata.common.annotation.ODataEntity;
@@ -17,7 +23,10 @@ import io.github.mat3e.odata.common.annotation.ODataKey;
 import io.github.mat3e.odata.common.annotation.ODataProperty;
 import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
 import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.csdl.CsdlProvider;
 import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+import io.github.mat3e.odata.common.provider.csdl.LazyCsdlProvider;
+import io.github.mat3e.odata.common.util.FullQualifiedNamesUtil;
 
 public class AbstractEdmProviderTest {
 
@@ -40,6 +49,40 @@ public class AbstractEdmProviderTest {
         }
     }
 
+    class ImportingEdmProvider extends AbstractEdmProvider {
+
+        ImportingEdmProvider() throws CsdlExtractException {
+            super(Stream.of(new TestCsdlEntityProvider()).collect(Collectors.toList()));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Arrays.asList(new CsdlActionImport().setName("Reset"), new CsdlActionImport().setName("Clear"));
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.singletonList(new CsdlFunctionImport().setName("Top"));
+        }
+    }
+
+    class LazyEdmProvider extends AbstractEdmProvider {
+
+        LazyEdmProvider(List<CsdlProvider> providers) {
+            super(providers, true);
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
     @ODataEntity(name = "TestEntity", entitySetName = SET)
     class TestEntity extends JpaOlingoEntity {
         @ODataKey
@@ -66,6 +109,21 @@ public class AbstractEdmProviderTest {
         }
     }
 
+    @ODataEntity(name = "OtherEntity", entitySetName = "OtherEntities")
+    class OtherEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+    }
+
     class TestCsdlEntityProvider extends JpaEntityCsdlProvider<TestEntity> {
         TestCsdlEntityProvider() throws CsdlExtractException {
             super(TestEntity.class);
@@ -85,4 +143,72 @@ public class AbstractEdmProviderTest {
         assertThat(sut.getActionImports()).hasSize(0);
         assertThat(sut.getFunctionImports()).hasSize(0);
     }
+
+    @Test
+    public void test_AbstractEdmProvider_extract_keepsOrderOfFactories() throws CsdlExtractException {
+
+        // GIVEN
+        final List<CsdlProvider.Factory> factories = Arrays.asList(
+                () -> new JpaEntityCsdlProvider<>(OtherEntity.class),
+                TestCsdlEntityProvider::new);
+
+        // WHEN
+        final List<CsdlProvider> result = AbstractEdmProvider.extract(factories);
+
+        // THEN
+        assertThat(result).extracting(provider -> provider.getCsdlEntitySet().getName())
+                          .containsExactly("OtherEntities", SET);
+    }
+
+    @Test
+    public void test_AbstractEdmProvider_extract_rethrowsCsdlExtractException() {
+
+        // GIVEN
+        final List<CsdlProvider.Factory> factories = Arrays.asList(
+                TestCsdlEntityProvider::new,
+                () -> new JpaEntityCsdlProvider<>(JpaOlingoEntity.class));
+
+        // WHEN
+        final Throwable result = catchThrowable(() -> AbstractEdmProvider.extract(factories));
+
+        // THEN
+        assertThat(result).isInstanceOf(CsdlExtractException.class);
+    }
+
+    @Test
+    public void test_AbstractEdmProvider_lazy_extractsOnlyRequestedTypesUntilMetadata() throws Exception {
+
+        // GIVEN
+        final LazyCsdlProvider test = LazyCsdlProvider.of(TestEntity.class);
+        final LazyCsdlProvider other = LazyCsdlProvider.of(OtherEntity.class);
+        final LazyEdmProvider sut = new LazyEdmProvider(Arrays.asList(test, other));
+        final OData odata = OData.newInstance();
+        final ServiceMetadata serviceMetadata = odata.createServiceMetadata(sut, Collections.emptyList());
+
+        // WHEN
+        new Parser(serviceMetadata.getEdm(), odata).parseUri(SET + "('1')", null, null);
+
+        // THEN
+        assertThat(test.isExtracted()).isTrue();
+        assertThat(other.isExtracted()).isFalse();
+        assertThat(sut.getSchemas().get(0).getEntityTypes()).extracting("name")
+                                                            .containsExactly("TestEntity", "OtherEntity");
+        assertThat(other.isExtracted()).isTrue();
+    }
+
+    @Test
+    public void test_AbstractEdmProvider_getImports_findsContainerItemsByName() throws CsdlExtractException {
+
+        // GIVEN
+        final ImportingEdmProvider sut = new ImportingEdmProvider();
+        final FullQualifiedName container = FullQualifiedNamesUtil.CONTAINER_FQN;
+
+        // WHEN + THEN
+        assertThat(sut.getEntitySet(container, SET)).isSameAs(sut.getEntityContainer().getEntitySets().get(0));
+        assertThat(sut.getActionImport(container, "Clear")).isSameAs(
+                sut.getEntityContainer().getActionImports().get(1));
+        assertThat(sut.getFunctionImport(container, "Top").getName()).isEqualTo("Top");
+        assertThat(sut.getActionImport(container, "Top")).isNull();
+        assertThat(sut.getEntitySet(new FullQualifiedName("Other", "Container"), SET)).isNull();
+    }
 }
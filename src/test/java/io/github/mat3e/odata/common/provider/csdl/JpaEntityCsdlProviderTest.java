@@ -2,14 +2,24 @@ package io.github.mat3e.odata.common.provider.csdl;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
 import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
 import org.apache.olingo.commons.api.edm.provider.CsdlEntitySet;
 import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
 import org.apache.olingo.commons.api.edm.provider.CsdlNavigationPropertyBinding;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.server.api.OData;
 import org.testng.annotations.Test;
 
 import io.github.mat3e.odata.common.annotation.ODataEntity;
@@ -21,7 +31,9 @@ import io.github.mat3e.odata.common.annotation.ODataProperty;
 import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
 import io.github.mat3e.odata.common.entity.JpaOlingoMediaEntity;
 import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
 import io.github.mat3e.odata.common.util.FullQualifiedNamesUtil;
+import io.github.mat3e.odata.common.util.ReflectionUtil;
 
 public class JpaEntityCsdlProviderTest {
 
@@ -146,6 +158,42 @@ public class JpaEntityCsdlProviderTest {
         }
     }
 
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider(List<CsdlProvider> providers) {
+            super(providers);
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void test_JpaEntityCsdlProvider_generatedCsdl_matchesReflection() throws Exception {
+
+        // GIVEN
+        final List<Class<? extends JpaOlingoEntity>> entities =
+                Arrays.asList(TestEntity.class, NestedEntity.class, MediaEntity.class);
+
+        // WHEN
+        final String generated = metadataOf(entities, true);
+        final String reflective = metadataOf(entities, false);
+
+        // THEN
+        for (Class<?> entity : entities) {
+            assertThat(ReflectionUtil.instantiateGenerated(entity, GeneratedCsdlProvider.SUFFIX,
+                    GeneratedCsdlProvider.class)).isNotNull();
+        }
+        assertThat(generated).isEqualTo(reflective);
+    }
+
     @Test
     public void test_JpaEntityCsdlProvider_getCsdlEntitySet_returnsWhatDefined() throws CsdlExtractException {
 
@@ -233,9 +281,33 @@ public class JpaEntityCsdlProviderTest {
         assertThat(sut.getCsdlActions().get(0).getParameters()).hasSize(3);
         assertThat(sut.getCsdlActions().get(0).getParameters().get(0).getName())
                 .isEqualTo(CsdlProvider.BINDING_PARAM_NAME);
+        assertThat(sut.getCsdlActions().get(0).getParameters().get(1).getName()).isEqualTo("Param1");
         assertThat(sut.getCsdlActions().get(0).getParameters().get(1).getTypeFQN())
                 .isEqualTo(EdmPrimitiveTypeKind.Int32.getFullQualifiedName());
         assertThat(sut.getCsdlActions().get(0).getParameters().get(2).getTypeFQN())
                 .isEqualTo(EdmPrimitiveTypeKind.String.getFullQualifiedName());
     }
+
+    private String metadataOf(List<Class<? extends JpaOlingoEntity>> entities, boolean useGenerated)
+            throws Exception {
+        final List<CsdlProvider> providers = new ArrayList<>();
+        for (Class<? extends JpaOlingoEntity> entity : entities) {
+            providers.add(new JpaEntityCsdlProvider<>(entity, useGenerated));
+        }
+        final OData odata = OData.newInstance();
+        return read(odata.createSerializer(ContentType.APPLICATION_XML)
+                         .metadataDocument(odata.createServiceMetadata(
+                                 new TestEdmProvider(providers),
+                                 Collections.emptyList()))
+                         .getContent());
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            result.write(buffer, 0, read);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
 }
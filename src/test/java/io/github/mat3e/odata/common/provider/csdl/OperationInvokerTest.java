@@ -0,0 +1,166 @@
+package io.github.mat3e.odata.common.provider.csdl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.olingo.commons.api.data.Parameter;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriParameter;
+import org.apache.olingo.server.core.uri.UriParameterImpl;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataOperation;
+import io.github.mat3e.odata.common.annotation.ODataOperationParameter;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+
+public class OperationInvokerTest {
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID = 2;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        @ODataOperation(name = "Scale")
+        public long scale(@ODataOperationParameter(name = "Factor") int factor) {
+            return (long) ID * factor;
+        }
+
+        @ODataOperation(name = "Scale")
+        public long scale(@ODataOperationParameter(name = "Factor") int factor,
+                @ODataOperationParameter(name = "Offset") long offset) {
+            return (long) ID * factor + offset;
+        }
+
+        @ODataOperation(name = "Rename", action = true)
+        public String rename(@ODataOperationParameter(name = "Prefix") String prefix,
+                @ODataOperationParameter(name = "Times") short times) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < times; ++i) {
+                result.append(prefix);
+            }
+            return result.append(ID).toString();
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider(CsdlProvider provider) {
+            super(Collections.singletonList(provider));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void test_OperationInvoker_invoke_resolvesOverloadAndParsesLiterals() throws Exception {
+
+        // GIVEN
+        final JpaEntityCsdlProvider<TestEntity> provider = new JpaEntityCsdlProvider<>(TestEntity.class);
+        final OperationInvoker sut = provider.getOperationInvoker("Scale", Arrays.asList("Offset", "Factor"));
+
+        // WHEN
+        final Object result = sut.invoke(new TestEntity(),
+                Arrays.asList(parameter("Offset", "5000000000"), parameter("Factor", "3")));
+
+        // THEN
+        assertThat(sut.getParameterNames()).containsExactly("Factor", "Offset");
+        assertThat(result).isEqualTo(5000000006L);
+        assertThat(provider.getOperationInvoker("Scale", Collections.singletonList("Factor"))
+                           .invoke(new TestEntity(), Collections.singletonList(parameter("Factor", "4"))))
+                .isEqualTo(8L);
+    }
+
+    @Test
+    public void test_OperationInvoker_invoke_convertsActionParameters() throws Exception {
+
+        // GIVEN
+        final OperationInvoker sut = new JpaEntityCsdlProvider<>(TestEntity.class).getOperationInvoker("Rename");
+        final Map<String, Parameter> parameters = new HashMap<>();
+        parameters.put("Prefix", actionParameter("Prefix", "x"));
+        // deserialized as Int32 default type, the method takes short
+        parameters.put("Times", actionParameter("Times", 2));
+
+        // WHEN
+        final Object result = sut.invoke(new TestEntity(), parameters);
+        final Throwable missing = catchThrowable(() -> sut.invoke(new TestEntity(), Collections.emptyMap()));
+
+        // THEN
+        assertThat(sut.isAction()).isTrue();
+        assertThat(result).isEqualTo("xx2");
+        assertThat(missing).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void test_OperationInvoker_serialize_writesPrimitiveOfReturnType() throws Exception {
+
+        // GIVEN
+        final JpaEntityCsdlProvider<TestEntity> provider = new JpaEntityCsdlProvider<>(TestEntity.class);
+        final OData odata = OData.newInstance();
+        final OperationInvoker sut = provider.getOperationInvoker("Scale");
+
+        // WHEN
+        final InputStream result = sut.serialize(odata,
+                odata.createServiceMetadata(new TestEdmProvider(provider), Collections.emptyList()),
+                ContentType.JSON_NO_METADATA, 6L).getContent();
+
+        // THEN
+        assertThat(read(result)).isEqualTo("{\"value\":6}");
+    }
+
+    private static UriParameter parameter(String name, String text) {
+        return new UriParameterImpl().setName(name).setText(text);
+    }
+
+    private static Parameter actionParameter(String name, Object value) {
+        final Parameter result = new Parameter();
+        result.setName(name);
+        result.setValue(ValueType.PRIMITIVE, value);
+        return result;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            result.write(buffer, 0, read);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OneToMany;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityCollection;
+import org.apache.olingo.commons.api.data.Link;
+import org.apache.olingo.commons.api.data.Property;
+import org.apache.olingo.commons.api.data.ValueType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.core.edm.primitivetype.EdmPrimitiveTypeFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+
+public class BulkInsertTest {
+    // persisted entities, flushes and clears
+    private final List<String> calls = new ArrayList<>();
+
+    // created from the payload, so it can't be an inner class
+    @ODataEntity(name = "Order", entitySetName = "Orders")
+    static class Order extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @OneToMany(mappedBy = "order")
+        @ODataNavigationProperty(name = "Items")
+        private List<Item> items;
+
+        @ODataProperty(name = "Placed", type = EdmPrimitiveTypeKind.Date)
+        private LocalDate placed;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public List<Item> getItems() {
+            return this.items;
+        }
+
+        public void setItems(List<Item> items) {
+            this.items = items;
+        }
+
+        public LocalDate getPlaced() {
+            return this.placed;
+        }
+
+        public void setPlaced(LocalDate placed) {
+            this.placed = placed;
+        }
+
+        @Override
+        public String toString() {
+            return "Order(" + ID + ")";
+        }
+    }
+
+    @ODataEntity(name = "Item", entitySetName = "Items")
+    static class Item extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        // owning side, not exposed
+        private Order order;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        @Override
+        public String toString() {
+            return "Item(" + ID + ") of " + order;
+        }
+    }
+
+    @BeforeMethod
+    public void clearCalls() {
+        calls.clear();
+    }
+
+    @Test
+    public void test_BulkInsert_insert_persistsOwnerBeforeNestedCollection() throws Exception {
+
+        // GIVEN
+        final BulkInsert sut = new BulkInsert(entityManager(), 10);
+        final Entity payload = entity(1);
+        final Link items = new Link();
+        items.setTitle("Items");
+        items.setInlineEntitySet(new EntityCollection());
+        items.getInlineEntitySet().getEntities().add(entity(11));
+        items.getInlineEntitySet().getEntities().add(entity(12));
+        payload.getNavigationLinks().add(items);
+
+        // WHEN
+        final Order result = sut.insert(Order.class, payload);
+
+        // THEN
+        assertThat(calls).containsExactly(
+                "persist Order(1)", "persist Item(11) of Order(1)", "persist Item(12) of Order(1)");
+        assertThat(result.getItems()).extracting(Item::getID).containsExactly(11, 12);
+        assertThat(sut.getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_BulkInsert_insert_flushesAndClearsEveryInterval() throws Exception {
+
+        // GIVEN
+        final BulkInsert sut = new BulkInsert(entityManager(), 2);
+
+        // WHEN
+        for (int i = 1; i <= 3; ++i) {
+            sut.insert(Order.class, entity(i));
+        }
+
+        // THEN
+        assertThat(calls).containsExactly(
+                "persist Order(1)", "persist Order(2)", "flush", "clear", "persist Order(3)");
+    }
+
+    @Test
+    public void test_BulkInsert_insert_convertsDeserializedDateToFieldType() throws Exception {
+
+        // GIVEN
+        final BulkInsert sut = new BulkInsert(entityManager(), 10);
+        final Entity payload = entity(1);
+        // what the deserializer gives for Edm.Date
+        final Calendar placed = EdmPrimitiveTypeFactory.getInstance(EdmPrimitiveTypeKind.Date)
+                                                       .valueOfString("2017-07-14", null, null, null, null, null,
+                                                               Calendar.class);
+        payload.addProperty(new Property(null, "Placed", ValueType.PRIMITIVE, placed));
+
+        // WHEN
+        final Order result = sut.insert(Order.class, payload);
+
+        // THEN
+        assertThat(result.getPlaced()).isEqualTo(LocalDate.of(2017, 7, 14));
+    }
+
+    private static Entity entity(int id) {
+        return new Entity().addProperty(new Property(null, "ID", ValueType.PRIMITIVE, id));
+    }
+
+    private EntityManager entityManager() {
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                new Class<?>[] { EntityManager.class }, (proxy, method, args) -> {
+                    calls.add(args == null ? method.getName() : method.getName() + " " + args[0]);
+                    return null;
+                });
+    }
+}
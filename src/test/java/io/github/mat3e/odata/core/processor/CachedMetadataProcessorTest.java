@@ -0,0 +1,188 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class CachedMetadataProcessorTest {
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Collections.singletonList(new JpaEntityCsdlProvider<>(TestEntity.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    class CountingProcessor extends CachedMetadataProcessor {
+        int renders;
+
+        @Override
+        protected InputStream render(ContentType format, String serviceRoot) throws SerializerException {
+            ++renders;
+            return super.render(format, serviceRoot);
+        }
+    }
+
+    @Test
+    public void test_CachedMetadataProcessor_readMetadata_rendersOnceAndAnswersNotModified() throws Exception {
+
+        // GIVEN
+        final OData odata = OData.newInstance();
+        final ServiceMetadata serviceMetadata =
+                odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList());
+        final CountingProcessor sut = new CountingProcessor();
+        sut.init(odata, serviceMetadata);
+        final ODataResponse first = new ODataResponse();
+        final ODataResponse second = new ODataResponse();
+
+        // WHEN
+        sut.readMetadata(new ODataRequest(), first, null, ContentType.APPLICATION_XML);
+        // handlers of next requests register the same processor again
+        sut.init(odata, serviceMetadata);
+        final ODataRequest conditional = new ODataRequest();
+        conditional.addHeader(HttpHeader.IF_NONE_MATCH, first.getHeader(HttpHeader.ETAG));
+        sut.readMetadata(conditional, second, null, ContentType.APPLICATION_XML);
+
+        // THEN
+        assertThat(sut.renders).isEqualTo(1);
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatusCode.OK.getStatusCode());
+        assertThat(first.getHeader(HttpHeader.ETAG)).matches("\"[0-9a-f]{32}\"");
+        assertThat(read(first.getContent())).contains("EntitySet Name=\"TestEntities\"");
+        assertThat(second.getStatusCode()).isEqualTo(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+        assertThat(second.getContent()).isNull();
+    }
+
+    @Test
+    public void test_CachedMetadataProcessor_readServiceDocument_servesPrecompressedContent() throws Exception {
+
+        // GIVEN
+        final OData odata = OData.newInstance();
+        final CachedMetadataProcessor sut = new CachedMetadataProcessor();
+        sut.init(odata, odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()));
+        final ODataRequest request = new ODataRequest();
+        request.setRawBaseUri("http://localhost/odata");
+        request.addHeader(HttpHeader.ACCEPT_ENCODING, "deflate, gzip;q=0.8");
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.readServiceDocument(request, response, null, ContentType.JSON);
+
+        // THEN
+        assertThat(response.getHeader(HttpHeader.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(read(new GZIPInputStream(response.getContent())))
+                .contains("http://localhost/odata/$metadata", "TestEntities");
+        assertThat(CachedMetadataProcessor.acceptsGzip("gzip;q=0")).isFalse();
+    }
+
+    @Test
+    public void test_CachedMetadataProcessor_readMetadata_tagsGzippedVariantSeparately() throws Exception {
+
+        // GIVEN
+        final OData odata = OData.newInstance();
+        final CachedMetadataProcessor sut = new CachedMetadataProcessor();
+        sut.init(odata, odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()));
+        final ODataRequest gzipRequest = new ODataRequest();
+        gzipRequest.addHeader(HttpHeader.ACCEPT_ENCODING, "gzip");
+        final ODataResponse plain = new ODataResponse();
+        final ODataResponse gzipped = new ODataResponse();
+        final ODataResponse revalidated = new ODataResponse();
+
+        // WHEN
+        sut.readMetadata(new ODataRequest(), plain, null, ContentType.APPLICATION_XML);
+        sut.readMetadata(gzipRequest, gzipped, null, ContentType.APPLICATION_XML);
+        // plain client revalidating with the tag of the gzipped variant
+        final ODataRequest conditional = new ODataRequest();
+        conditional.addHeader(HttpHeader.IF_NONE_MATCH, gzipped.getHeader(HttpHeader.ETAG));
+        sut.readMetadata(conditional, revalidated, null, ContentType.APPLICATION_XML);
+
+        // THEN
+        assertThat(gzipped.getHeader(HttpHeader.ETAG))
+                .isEqualTo(plain.getHeader(HttpHeader.ETAG).replaceFirst("\"$", "-gzip\""));
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatusCode.OK.getStatusCode());
+        assertThat(revalidated.getHeader(HttpHeader.CONTENT_ENCODING)).isNull();
+    }
+
+    @Test
+    public void test_CachedMetadataProcessor_readServiceDocument_cachesLimitedNumberOfRoots() throws Exception {
+
+        // GIVEN
+        final OData odata = OData.newInstance();
+        final CountingProcessor sut = new CountingProcessor();
+        sut.init(odata, odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()));
+        final int roots = CachedMetadataProcessor.MAX_SERVICE_ROOTS + 2;
+
+        // WHEN
+        for (int round = 0; round < 2; ++round) {
+            for (int i = 0; i < roots; ++i) {
+                final ODataRequest request = new ODataRequest();
+                request.setRawBaseUri("http://host" + i + "/odata");
+                sut.readServiceDocument(request, new ODataResponse(), null, ContentType.JSON);
+            }
+        }
+
+        // THEN
+        // $metadata from init, every root in the first round and the roots above the limit again
+        assertThat(sut.renders).isEqualTo(1 + roots + 2);
+    }
+
+    private static String read(InputStream content) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = content.read(buffer); read >= 0; read = content.read(buffer)) {
+            result.write(buffer, 0, read);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.persistence.criteria.CriteriaBuilder;
+
+/**
+ * Criteria API without JPA provider: every object created records its calls and prints them with toString,
+ * e.g. {@code and(equal(root.get(name), literal(x)), ...)}.
+ * Calls changing the query (e.g. {@code where}) are appended to the object description.
+ */
+class CriteriaRecorder {
+    private static final Set<String> MUTATORS = new HashSet<>(
+            Arrays.asList("select", "multiselect", "where", "distinct", "orderBy", "groupBy", "having", "set"));
+
+    static CriteriaBuilder builder() {
+        return create(CriteriaBuilder.class, new StringBuilder("cb"), true);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T create(Class<T> type, String description) {
+        return create(type, new StringBuilder(description), false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T create(Class<T> type, StringBuilder description, boolean isBuilder) {
+        return (T) Proxy.newProxyInstance(CriteriaRecorder.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "toString":
+                            return description.toString();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                    }
+
+                    String call = method.getName() + "(" + (args == null ? "" : Arrays.stream(args)
+                            .map(CriteriaRecorder::describe).collect(Collectors.joining(", "))) + ")";
+                    Class<?> returnType = method.getReturnType();
+                    if (MUTATORS.contains(method.getName())) {
+                        description.append('.').append(call);
+                        return proxy;
+                    }
+                    if (returnType.isInterface()) {
+                        return create(returnType, new StringBuilder(isBuilder ? call : description + "." + call),
+                                false);
+                    }
+                    return returnType == boolean.class ? false : null;
+                });
+    }
+
+    private static String describe(Object arg) {
+        if (arg instanceof Object[]) {
+            return Arrays.stream((Object[]) arg).map(CriteriaRecorder::describe).collect(Collectors.joining(", "));
+        }
+        if (arg instanceof Class) {
+            return ((Class<?>) arg).getSimpleName();
+        }
+        return String.valueOf(arg);
+    }
+}
@@ -0,0 +1,269 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.FetchParent;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class ExpandPlanTest {
+    // fetch joins and queries made
+    private final List<String> calls = new ArrayList<>();
+
+    @ODataEntity(name = "Order", entitySetName = "Orders")
+    class Order extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataNavigationProperty(name = "Customer")
+        private Customer customer;
+
+        @ODataNavigationProperty(name = "Items")
+        private List<Item> items;
+
+        Order(int ID) {
+            this.ID = ID;
+        }
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public Customer getCustomer() {
+            return this.customer;
+        }
+
+        public void setCustomer(Customer customer) {
+            this.customer = customer;
+        }
+
+        public List<Item> getItems() {
+            return this.items;
+        }
+
+        public void setItems(List<Item> items) {
+            this.items = items;
+        }
+    }
+
+    @ODataEntity(name = "Customer", entitySetName = "Customers")
+    class Customer extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+    }
+
+    @ODataEntity(name = "Item", entitySetName = "Items")
+    class Item extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataProperty(name = "Quantity", type = EdmPrimitiveTypeKind.Int32)
+        private int quantity;
+
+        Item(int ID) {
+            this.ID = ID;
+        }
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public int getQuantity() {
+            return this.quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Arrays.asList(new JpaEntityCsdlProvider<>(Order.class), new JpaEntityCsdlProvider<>(Customer.class),
+                    new JpaEntityCsdlProvider<>(Item.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @BeforeMethod
+    public void clearCalls() {
+        calls.clear();
+    }
+
+    @Test
+    public void test_ExpandPlan_fetchJoinsCollectionsOnlyForUnlimitedQueries() throws Exception {
+
+        // GIVEN
+        final ExpandPlan limited = ExpandPlan.of(Order.class, parse("Customer,Items"), true);
+        final ExpandPlan unlimited = ExpandPlan.of(Order.class, parse("Customer,Items"), false);
+        final ExpandPlan restricted = ExpandPlan.of(Order.class, parse("Items($top=2)"), false);
+
+        // WHEN
+        limited.fetch(fetchParent("limited"));
+        unlimited.fetch(fetchParent("unlimited"));
+        restricted.fetch(fetchParent("restricted"));
+
+        // THEN
+        assertThat(calls).containsExactly("limited.fetch(customer)", "unlimited.fetch(customer)",
+                "unlimited.fetch(items)");
+        assertThat(limited.getExpansion().getNames()).containsExactly("Customer", "Items");
+    }
+
+    @Test
+    public void test_ExpandPlan_load_batchesFilteredCollectionInSingleQuery() throws Exception {
+
+        // GIVEN
+        final Order first = new Order(1);
+        final Order second = new Order(2);
+        final Item[] items = { new Item(10), new Item(11), new Item(20) };
+        final ExpandPlan sut = ExpandPlan.of(Order.class, parse("Items($filter=Quantity gt 1)"), true);
+        first.expand(sut.getExpansion());
+        second.expand(sut.getExpansion());
+
+        // WHEN
+        sut.load(entityManager(new Object[][] { { first, items[0] }, { first, items[1] }, { second, items[2] } }),
+                Arrays.asList(first, second));
+
+        // THEN
+        assertThat(calls).containsExactly("createQuery(Object[]).multiselect(createQuery(Object[]).from(Order), " +
+                "createQuery(Object[]).from(Order).join(items))" +
+                ".where(createQuery(Object[]).from(Order).get(ID).in([1, 2]), " +
+                "greaterThan(createQuery(Object[]).from(Order).join(items).get(quantity), literal(1)))");
+        assertThat(first.getNavigationLink("Items").getInlineEntitySet().getEntities())
+                .containsExactly(items[0], items[1]);
+        assertThat(second.getNavigationLink("Items").getInlineEntitySet().getEntities()).containsExactly(items[2]);
+    }
+
+    @Test
+    public void test_ExpandPlan_load_limitsNestedTopAndSkipPerOwnerInQuery() throws Exception {
+
+        // GIVEN
+        final Order first = new Order(1);
+        final Order second = new Order(2);
+        final Item[] items = { new Item(11), new Item(21) };
+        final ExpandPlan sut = ExpandPlan.of(Order.class, parse("Items($skip=1;$top=1)"), true);
+        first.expand(sut.getExpansion());
+        second.expand(sut.getExpansion());
+
+        // WHEN
+        sut.load(entityManager(new Object[][] { { first, items[0] } }, new Object[][] { { second, items[1] } }),
+                Arrays.asList(first, second));
+
+        // THEN
+        final String select = "createQuery(Object[]).multiselect(createQuery(Object[]).from(Order), " +
+                "createQuery(Object[]).from(Order).join(items))";
+        final String orderBy = ".orderBy([asc(createQuery(Object[]).from(Order).join(items).get(ID))])";
+        assertThat(calls).containsExactly(
+                select + orderBy + ".where(createQuery(Object[]).from(Order).get(ID).in([1]))",
+                "setFirstResult(1)", "setMaxResults(1)",
+                select + orderBy + ".where(createQuery(Object[]).from(Order).get(ID).in([2]))",
+                "setFirstResult(1)", "setMaxResults(1)");
+        assertThat(first.getNavigationLink("Items").getInlineEntitySet().getEntities()).containsExactly(items[0]);
+        assertThat(second.getNavigationLink("Items").getInlineEntitySet().getEntities()).containsExactly(items[1]);
+    }
+
+    private ExpandOption parse(String expand) throws Exception {
+        final OData odata = OData.newInstance();
+        return new Parser(odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()).getEdm(), odata)
+                .parseUri("Orders", "$expand=" + expand, null).getExpandOption();
+    }
+
+    private FetchParent<?, ?> fetchParent(String description) {
+        return (FetchParent<?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Fetch.class }, (proxy, method, args) -> {
+                    if ("fetch".equals(method.getName())) {
+                        final String fetch = description + ".fetch(" + args[0] + ")";
+                        calls.add(fetch);
+                        return fetchParent(fetch);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * @param results
+     *         rows of the subsequent queries
+     */
+    private EntityManager entityManager(Object[][]... results) {
+        final Deque<Object[][]> pending = new ArrayDeque<>(Arrays.asList(results));
+        return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { EntityManager.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getCriteriaBuilder":
+                            return CriteriaRecorder.builder();
+                        case "createQuery":
+                            calls.add(args[0].toString());
+                            return query(Arrays.asList(pending.remove()));
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private TypedQuery<?> query(List<Object[]> rows) {
+        return (TypedQuery<?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { TypedQuery.class }, (proxy, method, args) -> {
+                    if ("getResultList".equals(method.getName())) {
+                        return rows;
+                    }
+                    calls.add(method.getName() + "(" + args[0] + ")");
+                    return proxy;
+                });
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataNavigationProperty;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class FilterExpressionVisitorTest {
+
+    @ODataEntity(name = "Order", entitySetName = "Orders")
+    class Order extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int64)
+        private long ID;
+
+        @ODataProperty(name = "Name", type = EdmPrimitiveTypeKind.String)
+        private String name;
+
+        @ODataNavigationProperty(name = "Items")
+        private List<Item> items;
+
+        public long getID() {
+            return this.ID;
+        }
+
+        public void setID(long ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<Item> getItems() {
+            return this.items;
+        }
+
+        public void setItems(List<Item> items) {
+            this.items = items;
+        }
+    }
+
+    @ODataEntity(name = "Item", entitySetName = "Items")
+    class Item extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataProperty(name = "Quantity", type = EdmPrimitiveTypeKind.Int32)
+        private int quantity;
+
+        @ODataProperty(name = "Note", type = EdmPrimitiveTypeKind.String)
+        private String note;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public int getQuantity() {
+            return this.quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        public String getNote() {
+            return this.note;
+        }
+
+        public void setNote(String note) {
+            this.note = note;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Arrays.asList(new JpaEntityCsdlProvider<>(Order.class), new JpaEntityCsdlProvider<>(Item.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void test_FilterExpressionVisitor_translatesComparisonsToJavaFields() throws Exception {
+
+        // GIVEN + WHEN
+        final Predicate result = translate("ID gt 10 and not (Name eq null)");
+
+        // THEN
+        assertThat(result).hasToString(
+                "and(greaterThan(root.get(ID), literal(10)), not(isNull(root.get(name))))");
+    }
+
+    @Test
+    public void test_FilterExpressionVisitor_collapsesOrChainIntoIn() throws Exception {
+
+        // GIVEN + WHEN
+        final Predicate result = translate("ID eq 1 or ID eq 2 or ID eq 3");
+
+        // THEN
+        assertThat(result).hasToString("root.get(ID).in([1, 2, 3])");
+    }
+
+    @Test
+    public void test_FilterExpressionVisitor_escapesLikePatterns() throws Exception {
+
+        // GIVEN + WHEN
+        final Predicate result = translate("contains(Name,'10%25_off') and length(Name) lt 20");
+
+        // THEN
+        assertThat(result).hasToString(
+                "and(like(root.get(name), %10\\%\\_off%, \\), lessThan(length(root.get(name)), literal(20)))");
+    }
+
+    @Test
+    public void test_FilterExpressionVisitor_translatesLambdasIntoSubqueries() throws Exception {
+
+        // GIVEN + WHEN
+        final Predicate any = translate("Items/any(i:i/Quantity gt 5)");
+        final Predicate all = translate("Items/all(i:i/Quantity gt 5)");
+
+        // THEN
+        assertThat(any).hasToString("exists(query.subquery(Integer).select(literal(1))" +
+                ".where(greaterThan(query.subquery(Integer).correlate(root).join(items).get(quantity), literal(5))))");
+        assertThat(all).hasToString("not(exists(query.subquery(Integer).select(literal(1))" +
+                ".where(equal(selectCase().when(greaterThan(query.subquery(Integer).correlate(root).join(items)" +
+                ".get(quantity), literal(5)), true).otherwise(false), false))))");
+    }
+
+    @Test
+    public void test_FilterExpressionVisitor_lambdaAll_failsForMembersWithNullValues() throws Exception {
+
+        // GIVEN + WHEN
+        final Predicate result = translate("Items/all(i:i/Note eq 'x')");
+
+        // THEN
+        // an item without note makes the comparison unknown, which must be found by NOT EXISTS as well
+        assertThat(result).hasToString("not(exists(query.subquery(Integer).select(literal(1))" +
+                ".where(equal(selectCase().when(equal(query.subquery(Integer).correlate(root).join(items).get(note)," +
+                " literal(x)), true).otherwise(false), false))))");
+    }
+
+    @Test
+    public void test_FilterExpressionVisitor_rejectsUnsupportedMethods() throws Exception {
+
+        // GIVEN + WHEN
+        final Throwable result = catchThrowable(() -> translate("fractionalseconds(now()) gt 0"));
+
+        // THEN
+        assertThat(result).isInstanceOf(ODataApplicationException.class);
+        assertThat(((ODataApplicationException) result).getStatusCode()).isEqualTo(501);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate translate(String filter) throws Exception {
+        final OData odata = OData.newInstance();
+        final UriInfo uriInfo = new Parser(odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList())
+                                                .getEdm(), odata).parseUri("Orders", "$filter=" + filter, null);
+        return new FilterExpressionVisitor(CriteriaRecorder.builder(),
+                CriteriaRecorder.create(CriteriaQuery.class, "query"), CriteriaRecorder.create(Root.class, "root"),
+                Order.class).toPredicate(uriInfo.getFilterOption());
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.mat3e.odata.core.processor;
+
+import static io.github.mat3e.odata.core.processor.Stubs.proxy;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataHandler;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.batch.BatchFacade;
+import org.apache.olingo.server.api.deserializer.batch.BatchRequestPart;
+import org.apache.olingo.server.api.deserializer.batch.ODataResponsePart;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class JpaBatchProcessorTest {
+    private static final String CRLF = "\r\n";
+
+    private final List<String> calls = new ArrayList<>();
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void createExecutor() {
+        calls.clear();
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterMethod
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void test_JpaBatchProcessor_processBatch_runsReadsConcurrentlyInRequestOrder() throws Exception {
+
+        // GIVEN
+        final CountDownLatch allStarted = new CountDownLatch(3);
+        final JpaBatchProcessor sut = new JpaBatchProcessor(entityManagerFactory(), () -> handler(request -> {
+            allStarted.countDown();
+            // sequential processing would never get here before the timeout
+            final boolean concurrent = allStarted.await(5, TimeUnit.SECONDS);
+            // the first request finishes last
+            if (request.getRawODataPath().endsWith("(1)")) {
+                Thread.sleep(100);
+            }
+            return request.getRawODataPath() + (concurrent ? " concurrent" : " sequential");
+        }), executor, 3);
+        sut.init(OData.newInstance(), null);
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.processBatch(facade(), batchRequest("TestEntities(1)", "TestEntities(2)", "TestEntities(3)"), response);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.ACCEPTED.getStatusCode());
+        final String content = read(response.getContent());
+        assertThat(content)
+                .contains("/TestEntities(1) concurrent", "/TestEntities(2) concurrent", "/TestEntities(3) concurrent");
+        assertThat(content.indexOf("(1) concurrent"))
+                .isLessThan(content.indexOf("(2) concurrent"))
+                .isLessThan(content.indexOf("(3) concurrent"));
+    }
+
+    @Test
+    public void test_JpaBatchProcessor_processChangeSet_rollsBackOnFirstError() throws Exception {
+
+        // GIVEN
+        final EntityManagerFactory entityManagerFactory = entityManagerFactory();
+        final JpaBatchProcessor sut = new JpaBatchProcessor(entityManagerFactory, () -> null, executor, 1);
+        final BatchFacade facade = proxy(BatchFacade.class, (method, args) -> {
+            final ODataRequest request = (ODataRequest) args[0];
+            calls.add(request.getRawODataPath() + " in changeset " + (ChangeSetContext.getEntityManager() != null));
+            final ODataResponse response = new ODataResponse();
+            response.setStatusCode(request.getRawODataPath().equals("fail")
+                    ? HttpStatusCode.BAD_REQUEST.getStatusCode()
+                    : HttpStatusCode.CREATED.getStatusCode());
+            return response;
+        });
+
+        // WHEN
+        final ODataResponsePart result = sut.processChangeSet(facade,
+                Arrays.asList(request("first"), request("fail"), request("skipped")));
+
+        // THEN
+        assertThat(result.isChangeSet()).isFalse();
+        assertThat(result.getResponses()).hasSize(1);
+        assertThat(result.getResponses().get(0).getStatusCode())
+                .isEqualTo(HttpStatusCode.BAD_REQUEST.getStatusCode());
+        assertThat(calls).containsExactly(
+                "setFlushMode", "begin", "first in changeset true", "fail in changeset true", "rollback",
+                "close");
+        assertThat(ChangeSetContext.getEntityManager()).isNull();
+    }
+
+    private ODataRequest batchRequest(String... paths) {
+        final StringBuilder body = new StringBuilder();
+        for (String path : paths) {
+            body.append("--batch_1").append(CRLF)
+                    .append("Content-Type: application/http").append(CRLF)
+                    .append("Content-Transfer-Encoding: binary").append(CRLF)
+                    .append(CRLF)
+                    .append("GET ").append(path).append(" HTTP/1.1").append(CRLF)
+                    .append(CRLF)
+                    .append(CRLF);
+        }
+        body.append("--batch_1--").append(CRLF);
+        final ODataRequest result = new ODataRequest();
+        result.setMethod(HttpMethod.POST);
+        result.setRawBaseUri("http://localhost/odata");
+        result.setRawServiceResolutionUri("");
+        result.addHeader(HttpHeader.CONTENT_TYPE, "multipart/mixed;boundary=batch_1");
+        result.setBody(new ByteArrayInputStream(body.toString().getBytes(StandardCharsets.UTF_8)));
+        return result;
+    }
+
+    private static ODataRequest request(String path) {
+        final ODataRequest result = new ODataRequest();
+        result.setMethod(HttpMethod.POST);
+        result.setRawODataPath(path);
+        return result;
+    }
+
+    private static BatchFacade facade() {
+        return proxy(BatchFacade.class, (method, args) -> {
+            if ("extractBoundaryFromContentType".equals(method)) {
+                return "batch_1";
+            }
+            throw new AssertionError("Only reads expected, got " + ((BatchRequestPart) args[0]).getRequests());
+        });
+    }
+
+    private static ODataHandler handler(Body body) {
+        return proxy(ODataHandler.class, (method, args) -> {
+            final ODataResponse response = new ODataResponse();
+            response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+            response.setContent(new ByteArrayInputStream(
+                    body.of((ODataRequest) args[0]).getBytes(StandardCharsets.UTF_8)));
+            return response;
+        });
+    }
+
+    private EntityManagerFactory entityManagerFactory() {
+        final EntityTransaction transaction = proxy(EntityTransaction.class, (method, args) -> {
+            calls.add(method);
+            return "isActive".equals(method) ? false : null;
+        });
+        final EntityManager entityManager = proxy(EntityManager.class, (method, args) -> {
+            if ("getTransaction".equals(method)) {
+                return transaction;
+            }
+            calls.add(method);
+            return null;
+        });
+        return proxy(EntityManagerFactory.class, (method, args) -> entityManager);
+    }
+
+    private static String read(InputStream content) throws Exception {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = content.read(buffer); read >= 0; read = content.read(buffer)) {
+            result.write(buffer, 0, read);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        String of(ODataRequest request) throws Exception;
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.mat3e.odata.core.processor;
+
+import static io.github.mat3e.odata.core.processor.Stubs.proxy;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.Metamodel;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class JpaEntityCollectionProcessorTest {
+    private final List<String> queries = new ArrayList<>();
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities", approximateCount = true)
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Collections.singletonList(new JpaEntityCsdlProvider<>(TestEntity.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @BeforeMethod
+    public void clearQueries() {
+        queries.clear();
+    }
+
+    @Test
+    public void test_JpaEntityCollectionProcessor_count_selectsCountWithFilter() throws Exception {
+
+        // GIVEN
+        final JpaEntityCollectionProcessor sut = new JpaEntityCollectionProcessor(entityManagerFactory());
+        sut.setApproximateCounter((entityManager, entityClass) -> 1000L);
+
+        // WHEN
+        final long result = sut.count(entityManager(), TestEntity.class, parse("$filter=ID gt 3&$count=true"));
+
+        // THEN
+        assertThat(result).isEqualTo(42L);
+        assertThat(queries).containsExactly(
+                "createQuery(Long).select(count(createQuery(Long).from(TestEntity)))" +
+                        ".where(greaterThan(createQuery(Long).from(TestEntity).get(ID), literal(3)))");
+    }
+
+    @Test
+    public void test_JpaEntityCollectionProcessor_count_usesApproximateCounterWithoutFilter() throws Exception {
+
+        // GIVEN
+        final JpaEntityCollectionProcessor sut = new JpaEntityCollectionProcessor(entityManagerFactory());
+        sut.setApproximateCounter((entityManager, entityClass) -> 1000L);
+
+        // WHEN
+        final long result = sut.count(entityManager(), TestEntity.class, parse("$count=true"));
+
+        // THEN
+        assertThat(result).isEqualTo(1000L);
+        assertThat(queries).isEmpty();
+    }
+
+    private UriInfo parse(String query) throws Exception {
+        final OData odata = OData.newInstance();
+        return new Parser(odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()).getEdm(), odata)
+                .parseUri("TestEntities", query, null);
+    }
+
+    private EntityManager entityManager() {
+        return proxy(EntityManager.class, (method, args) -> {
+            switch (method) {
+                case "getCriteriaBuilder":
+                    return CriteriaRecorder.builder();
+                case "createQuery":
+                    queries.add(args[0].toString());
+                    return proxy(TypedQuery.class, (queryMethod, queryArgs) -> 42L);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private EntityManagerFactory entityManagerFactory() {
+        final Metamodel metamodel = proxy(Metamodel.class, (method, args) -> Collections.emptySet());
+        return proxy(EntityManagerFactory.class, (method, args) -> metamodel);
+    }
+}
@@ -0,0 +1,371 @@
+package io.github.mat3e.odata.core.processor;
+
+import static io.github.mat3e.odata.core.processor.Stubs.proxy;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Version;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class JpaEntityProcessorTest {
+    // queries and statements run
+    private final List<String> queries = new ArrayList<>();
+
+    private final OData odata = OData.newInstance();
+
+    // instantiated by BulkInsert, so it can't be an inner class
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    static class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataProperty(name = "Name", type = EdmPrimitiveTypeKind.String)
+        private String name;
+
+        @ODataProperty(name = "Description", type = EdmPrimitiveTypeKind.String)
+        private String description;
+
+        @ODataProperty(name = "Due", type = EdmPrimitiveTypeKind.Date)
+        private LocalDate due;
+
+        @Version
+        private int version;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public LocalDate getDue() {
+            return this.due;
+        }
+
+        public void setDue(LocalDate due) {
+            this.due = due;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Collections.singletonList(new JpaEntityCsdlProvider<>(TestEntity.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @BeforeMethod
+    public void clearQueries() {
+        queries.clear();
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_readEntity_answersNotModifiedFromVersionOnly() throws Exception {
+
+        // GIVEN
+        final ServiceMetadata serviceMetadata = serviceMetadata();
+        final JpaEntityProcessor sut = new JpaEntityProcessor(entityManagerFactory());
+        sut.init(odata, serviceMetadata);
+        final ODataRequest request = new ODataRequest();
+        request.addHeader(HttpHeader.IF_NONE_MATCH, "W/\"3\"");
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.readEntity(request, response, parse(serviceMetadata, "TestEntities(1)"), ContentType.JSON);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.NOT_MODIFIED.getStatusCode());
+        assertThat(response.getHeader(HttpHeader.ETAG)).isEqualTo("W/\"3\"");
+        assertThat(response.getContent()).isNull();
+        assertThat(queries).containsExactly(
+                "createQuery(Object).select(createQuery(Object).from(TestEntity).get(version))" +
+                        ".where(equal(createQuery(Object).from(TestEntity).get(ID), 1))");
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_readEntity_fetchesSelectedColumnsOnly() throws Exception {
+
+        // GIVEN
+        final ServiceMetadata serviceMetadata = serviceMetadata();
+        final JpaEntityProcessor sut = new JpaEntityProcessor(entityManagerFactory());
+        sut.init(odata, serviceMetadata);
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.readEntity(new ODataRequest(), response, parse(serviceMetadata, "TestEntities(1)", "$select=Name"),
+                ContentType.JSON_NO_METADATA);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.OK.getStatusCode());
+        assertThat(response.getHeader(HttpHeader.ETAG)).isEqualTo("W/\"3\"");
+        assertThat(read(response.getContent())).isEqualTo("{\"Name\":\"selected\"}");
+        assertThat(queries).containsExactly(
+                "createQuery(Object[]).multiselect([createQuery(Object[]).from(TestEntity).get(ID), " +
+                        "createQuery(Object[]).from(TestEntity).get(name), " +
+                        "createQuery(Object[]).from(TestEntity).get(version)])" +
+                        ".where(equal(createQuery(Object[]).from(TestEntity).get(ID), 1))");
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_updateEntity_updatesExpectedVersionWithoutSelect() throws Exception {
+
+        // GIVEN
+        final ServiceMetadata serviceMetadata = serviceMetadata();
+        final JpaEntityProcessor sut = new JpaEntityProcessor(entityManagerFactory());
+        sut.init(odata, serviceMetadata);
+        final ODataRequest request = new ODataRequest();
+        request.setMethod(HttpMethod.PATCH);
+        request.addHeader(HttpHeader.IF_MATCH, "W/\"3\"");
+        request.setBody(new ByteArrayInputStream("{\"Name\":\"new\"}".getBytes(StandardCharsets.UTF_8)));
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.updateEntity(request, response, parse(serviceMetadata, "TestEntities(1)"), ContentType.JSON,
+                ContentType.JSON);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.NO_CONTENT.getStatusCode());
+        assertThat(response.getHeader(HttpHeader.ETAG)).isEqualTo("W/\"4\"");
+        assertThat(queries).containsExactly(
+                "createCriteriaUpdate(TestEntity)" +
+                        ".set(createCriteriaUpdate(TestEntity).from(TestEntity).get(name), new)" +
+                        ".set(createCriteriaUpdate(TestEntity).from(TestEntity).get(version), 4)" +
+                        ".where(equal(createCriteriaUpdate(TestEntity).from(TestEntity).get(ID), 1), " +
+                        "equal(createCriteriaUpdate(TestEntity).from(TestEntity).get(version), 3))");
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_updateEntity_setsDateAsFieldType() throws Exception {
+
+        // GIVEN
+        final ServiceMetadata serviceMetadata = serviceMetadata();
+        final JpaEntityProcessor sut = new JpaEntityProcessor(entityManagerFactory());
+        sut.init(odata, serviceMetadata);
+        final ODataRequest request = new ODataRequest();
+        request.setMethod(HttpMethod.PATCH);
+        request.addHeader(HttpHeader.IF_MATCH, "W/\"3\"");
+        request.setBody(new ByteArrayInputStream("{\"Due\":\"2017-07-14\"}".getBytes(StandardCharsets.UTF_8)));
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.updateEntity(request, response, parse(serviceMetadata, "TestEntities(1)"), ContentType.JSON,
+                ContentType.JSON);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.NO_CONTENT.getStatusCode());
+        // a LocalDate, not the Calendar from the deserializer
+        assertThat(queries).containsExactly(
+                "createCriteriaUpdate(TestEntity)" +
+                        ".set(createCriteriaUpdate(TestEntity).from(TestEntity).get(due), 2017-07-14)" +
+                        ".set(createCriteriaUpdate(TestEntity).from(TestEntity).get(version), 4)" +
+                        ".where(equal(createCriteriaUpdate(TestEntity).from(TestEntity).get(ID), 1), " +
+                        "equal(createCriteriaUpdate(TestEntity).from(TestEntity).get(version), 3))");
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_updateEntity_flushesChangeSetBeforeStatement() throws Exception {
+
+        // GIVEN
+        final ServiceMetadata serviceMetadata = serviceMetadata();
+        final EntityManagerFactory entityManagerFactory = entityManagerFactory();
+        final JpaEntityProcessor sut = new JpaEntityProcessor(entityManagerFactory);
+        sut.init(odata, serviceMetadata);
+        final ODataRequest post = new ODataRequest();
+        post.setMethod(HttpMethod.POST);
+        post.setRawBaseUri("http://localhost/odata");
+        post.setBody(new ByteArrayInputStream("{\"ID\":1,\"Name\":\"old\"}".getBytes(StandardCharsets.UTF_8)));
+        final ODataRequest patch = new ODataRequest();
+        patch.setMethod(HttpMethod.PATCH);
+        patch.setBody(new ByteArrayInputStream("{\"Name\":\"new\"}".getBytes(StandardCharsets.UTF_8)));
+
+        // WHEN
+        ChangeSetContext.bind(entityManagerFactory.createEntityManager());
+        try {
+            sut.createEntity(post, new ODataResponse(), parse(serviceMetadata, "TestEntities"), ContentType.JSON,
+                    ContentType.JSON);
+            sut.updateEntity(patch, new ODataResponse(), parse(serviceMetadata, "TestEntities(1)"),
+                    ContentType.JSON, ContentType.JSON);
+        } finally {
+            ChangeSetContext.unbind();
+        }
+
+        // THEN
+        assertThat(queries).containsExactly(
+                "persist TestEntity(1)",
+                "flush",
+                "createCriteriaUpdate(TestEntity)" +
+                        ".set(createCriteriaUpdate(TestEntity).from(TestEntity).get(name), new)" +
+                        ".set(createCriteriaUpdate(TestEntity).from(TestEntity).get(version), " +
+                        "sum(createCriteriaUpdate(TestEntity).from(TestEntity).get(version), 1))" +
+                        ".where(equal(createCriteriaUpdate(TestEntity).from(TestEntity).get(ID), 1))",
+                "clear");
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_createEntity_answersMinimalBulkInsertWithJsonCount() throws Exception {
+
+        // GIVEN
+        final ServiceMetadata serviceMetadata = serviceMetadata();
+        final JpaEntityProcessor sut = new JpaEntityProcessor(entityManagerFactory());
+        sut.init(odata, serviceMetadata);
+        final ODataRequest request = new ODataRequest();
+        request.setMethod(HttpMethod.POST);
+        request.addHeader(HttpHeader.PREFER, "return=minimal");
+        request.setBody(new ByteArrayInputStream(
+                "{\"value\":[{\"ID\":1},{\"ID\":2}]}".getBytes(StandardCharsets.UTF_8)));
+        final ODataResponse response = new ODataResponse();
+
+        // WHEN
+        sut.createEntity(request, response, parse(serviceMetadata, "TestEntities"), ContentType.JSON,
+                ContentType.APPLICATION_XML);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatusCode.CREATED.getStatusCode());
+        assertThat(response.getHeader(HttpHeader.CONTENT_TYPE)).isEqualTo("application/json");
+        assertThat(read(response.getContent())).isEqualTo("{\"@odata.count\":2}");
+        assertThat(queries).containsExactly("persist TestEntity(1)", "persist TestEntity(2)");
+    }
+
+    @Test
+    public void test_JpaEntityProcessor_isCollection_detectsValueArray() throws Exception {
+
+        // GIVEN
+        final BufferedInputStream collection =
+                stream("{ \"@odata.context\": \"$metadata#Orders\", \"value\": [ { \"ID\": 1 } ] }");
+        final BufferedInputStream entity = stream("{\"ID\": 1, \"value\": []}");
+
+        // WHEN
+        final boolean collectionResult = JpaEntityProcessor.isCollection(collection);
+        final boolean entityResult = JpaEntityProcessor.isCollection(entity);
+
+        // THEN
+        assertThat(collectionResult).isTrue();
+        assertThat(entityResult).isFalse();
+        // payload still readable from the beginning
+        assertThat(collection.read()).isEqualTo('{');
+    }
+
+    private ServiceMetadata serviceMetadata() throws Exception {
+        return odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList());
+    }
+
+    private UriInfo parse(ServiceMetadata serviceMetadata, String path) throws Exception {
+        return parse(serviceMetadata, path, null);
+    }
+
+    private UriInfo parse(ServiceMetadata serviceMetadata, String path, String query) throws Exception {
+        return new Parser(serviceMetadata.getEdm(), odata).parseUri(path, query, null);
+    }
+
+    private static String read(InputStream content) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        for (int read = content.read(buffer); read >= 0; read = content.read(buffer)) {
+            result.write(buffer, 0, read);
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static BufferedInputStream stream(String json) {
+        return new BufferedInputStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private EntityManagerFactory entityManagerFactory() {
+        final EntityType<?> entityType = proxy(EntityType.class, (method, args) -> TestEntity.class);
+        final Metamodel metamodel = proxy(Metamodel.class, (method, args) -> Collections.singleton(entityType));
+        final EntityManager entityManager = proxy(EntityManager.class, (method, args) -> {
+            switch (method) {
+                case "getCriteriaBuilder":
+                    return CriteriaRecorder.builder();
+                case "createQuery":
+                    queries.add(args[0].toString());
+                    // a row of ID, Name and version for projections, the version otherwise
+                    final Object row = args[0].toString().startsWith("createQuery(Object[])") ?
+                            new Object[] { 1, "selected", 3 } :
+                            3;
+                    return proxy(javax.persistence.TypedQuery.class, (queryMethod, queryArgs) ->
+                            "getResultList".equals(queryMethod) ? Collections.singletonList(row) : 1);
+                case "persist":
+                    queries.add("persist " + args[0].getClass().getSimpleName() + "(" +
+                            ((TestEntity) args[0]).getID() + ")");
+                    return null;
+                case "flush":
+                case "clear":
+                    queries.add(method);
+                    return null;
+                case "getTransaction":
+                    return proxy(javax.persistence.EntityTransaction.class, (transactionMethod, transactionArgs) ->
+                            false);
+                default:
+                    return null;
+            }
+        });
+        return proxy(EntityManagerFactory.class,
+                (method, args) -> "getMetamodel".equals(method) ? metamodel : entityManager);
+    }
+}
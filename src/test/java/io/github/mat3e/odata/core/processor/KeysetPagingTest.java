@@ -0,0 +1,163 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class KeysetPagingTest {
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities", pageSize = 2)
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataProperty(name = "Name", type = EdmPrimitiveTypeKind.String)
+        private String name;
+
+        @ODataProperty(name = "Created", type = EdmPrimitiveTypeKind.Date)
+        private Date created;
+
+        TestEntity(int ID, String name) {
+            this.ID = ID;
+            this.name = name;
+        }
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Date getCreated() {
+            return this.created;
+        }
+
+        public void setCreated(Date created) {
+            this.created = created;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Collections.singletonList(new JpaEntityCsdlProvider<>(TestEntity.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void test_KeysetPaging_ordersByOrderByThenKeysAndSeeksAfterLastRow() throws Exception {
+
+        // GIVEN
+        final KeysetPaging sut = paging("$orderby=Name desc");
+        final Root<?> root = CriteriaRecorder.create(Root.class, "root");
+
+        // WHEN
+        final String orderBy = sut.orderBy(CriteriaRecorder.builder(), root).toString();
+        final String after = sut.after(CriteriaRecorder.builder(), root, new Object[] { "b", 7 }).toString();
+
+        // THEN
+        // nulls of the nullable name last in descending order, whatever the database default
+        assertThat(orderBy).isEqualTo("[desc(selectCase().when(isNull(root.get(name)), 0).otherwise(1)), " +
+                "desc(root.get(name)), asc(root.get(ID))]");
+        assertThat(after).isEqualTo("or(and(or(lessThan(root.get(name), b), isNull(root.get(name)))), " +
+                "and(equal(root.get(name), b), greaterThan(root.get(ID), 7)))");
+    }
+
+    @Test
+    public void test_KeysetPaging_tokenKeepsValuesOfLastRow() throws Exception {
+
+        // GIVEN
+        final KeysetPaging sut = paging("$orderby=Name");
+
+        // WHEN
+        final String token = sut.tokenOf(new TestEntity(5, null));
+
+        // THEN
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+        assertThat(sut.parse(token)).containsExactly(null, 5);
+    }
+
+    @Test
+    public void test_KeysetPaging_tokenKeepsTimestampLoadedForDateColumn() throws Exception {
+
+        // GIVEN
+        final KeysetPaging sut = paging("$orderby=Created");
+        final TestEntity last = new TestEntity(5, "x");
+        // Hibernate loads java.util.Date columns as timestamps
+        final Timestamp created = new Timestamp(1500000000123L);
+        created.setNanos(123456789);
+        last.setCreated(created);
+
+        // WHEN
+        final Object[] result = sut.parse(sut.tokenOf(last));
+
+        // THEN
+        assertThat(result).containsExactly(created, 5);
+        assertThat(((Timestamp) result[0]).getNanos()).isEqualTo(123456789);
+    }
+
+    @Test
+    public void test_JpaEntityCollectionProcessor_nextLink_replacesSkipAndDecreasesTop() {
+
+        // GIVEN
+        final ODataRequest request = new ODataRequest();
+        request.setRawBaseUri("http://host/odata.svc");
+        request.setRawODataPath("/TestEntities");
+        request.setRawQueryPath("$filter=ID%20gt%201&$skip=10&$top=5&$skiptoken=old");
+
+        // WHEN
+        final String result = JpaEntityCollectionProcessor.nextLink(request, "new", 2);
+
+        // THEN
+        assertThat(result).isEqualTo("http://host/odata.svc/TestEntities?$filter=ID%20gt%201&$top=3&$skiptoken=new");
+    }
+
+    private KeysetPaging paging(String query) throws Exception {
+        final OData odata = OData.newInstance();
+        return new KeysetPaging(TestEntity.class,
+                new Parser(odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()).getEdm(), odata)
+                        .parseUri("TestEntities", query, null).getOrderByOption());
+    }
+}
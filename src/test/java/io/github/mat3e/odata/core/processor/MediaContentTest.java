@@ -0,0 +1,88 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoMediaEntity;
+
+public class MediaContentTest {
+
+    @ODataEntity(name = "MediaEntity", entitySetName = "MediaEntities")
+    class MediaEntity extends JpaOlingoMediaEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        private byte[] content;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        @Override
+        public byte[] getContent() {
+            return this.content;
+        }
+
+        @Override
+        public void setContent(byte[] data) {
+            this.content = data;
+        }
+    }
+
+    @Test
+    public void test_MediaContent_parseRange_readsSingleByteRanges() {
+
+        // GIVEN + WHEN + THEN
+        assertThat(MediaContent.parseRange(null, 10)).isNull();
+        assertThat(MediaContent.parseRange("bytes=2-4", 10)).containsExactly(2, 3);
+        assertThat(MediaContent.parseRange("bytes=7-", 10)).containsExactly(7, 3);
+        assertThat(MediaContent.parseRange("bytes=-4", 10)).containsExactly(6, 4);
+        assertThat(MediaContent.parseRange("bytes=5-100", 10)).containsExactly(5, 5);
+        assertThat(MediaContent.parseRange("bytes=10-", 10)).containsExactly(0, 0);
+        assertThat(MediaContent.parseRange("bytes=0-1,4-5", 10)).isNull();
+        assertThat(MediaContent.parseRange("bytes=4-1", 10)).isNull();
+    }
+
+    @Test
+    public void test_MediaContent_write_streamsRequestedRange() {
+
+        // GIVEN
+        final MediaEntity entity = new MediaEntity();
+        entity.setContent(new ByteArrayInputStream("0123456789".getBytes(StandardCharsets.US_ASCII)), 10);
+        entity.setMediaContentType("text/plain");
+        final ODataRequest request = new ODataRequest();
+        request.addHeader(HttpHeader.RANGE, "bytes=3-5");
+        final ODataResponse response = new ODataResponse();
+        final boolean[] completed = { false };
+
+        // WHEN
+        MediaContent.write(request, response, entity, () -> completed[0] = true);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        response.getODataContent().write(body);
+
+        // THEN
+        assertThat(response.getStatusCode()).isEqualTo(206);
+        assertThat(response.getHeader(MediaContent.CONTENT_RANGE)).isEqualTo("bytes 3-5/10");
+        assertThat(response.getHeader(HttpHeader.CONTENT_LENGTH)).isEqualTo("3");
+        assertThat(response.getHeader(HttpHeader.CONTENT_TYPE)).isEqualTo("text/plain");
+        assertThat(new String(body.toByteArray(), StandardCharsets.US_ASCII)).isEqualTo("345");
+        assertThat(completed[0]).isTrue();
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.criteria.Root;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.core.uri.parser.Parser;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+
+public class ProjectionTest {
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataProperty(name = "Name", type = EdmPrimitiveTypeKind.String)
+        private String name;
+
+        @ODataProperty(name = "Description", type = EdmPrimitiveTypeKind.String)
+        private String description;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+    }
+
+    class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Collections.singletonList(new JpaEntityCsdlProvider<>(TestEntity.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void test_Projection_selectsKeysAndSelectedColumns() throws Exception {
+
+        // GIVEN
+        final Projection sut = Projection.of(TestEntity.class, parse("$select=Name"), Collections.emptyList());
+        final Root<?> root = CriteriaRecorder.create(Root.class, "root");
+
+        // WHEN
+        final Entity result = sut.toView(new Object[] { 7, "seven" });
+
+        // THEN
+        assertThat(sut.selections(root).toString()).isEqualTo("[root.get(ID), root.get(name)]");
+        assertThat(result.getId().toString()).isEqualTo("TestEntities(7)");
+        assertThat(result.getProperties()).extracting("name", "value").containsExactly(tuple("Name", "seven"));
+    }
+
+    @Test
+    public void test_Projection_of_returnsNullWhenAllColumnsNeeded() throws Exception {
+
+        // GIVEN + WHEN
+        final Projection all = Projection.of(TestEntity.class, parse("$select=*"), Collections.emptyList());
+        final Projection covered = Projection.of(TestEntity.class, parse("$select=Name,Description"),
+                Collections.emptyList());
+
+        // THEN
+        assertThat(all).isNull();
+        assertThat(covered).isNull();
+    }
+
+    private UriInfo parse(String query) throws Exception {
+        final OData odata = OData.newInstance();
+        return new Parser(odata.createServiceMetadata(new TestEdmProvider(), Collections.emptyList()).getEdm(), odata)
+                .parseUri("TestEntities", query, null);
+    }
+}
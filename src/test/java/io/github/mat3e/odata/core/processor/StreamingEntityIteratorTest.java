@@ -0,0 +1,178 @@
+package io.github.mat3e.odata.core.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.hibernate.ScrollableResults;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.entity.NavigationExpansion;
+import io.github.mat3e.odata.common.entity.PropertySelection;
+
+public class StreamingEntityIteratorTest {
+
+    private final static String ID_FIELD = "ID";
+    private final static String NAME_FIELD = "Name";
+
+    // calls made on the fake JPA objects
+    private final List<String> calls = new ArrayList<>();
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = ID_FIELD, type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        @ODataProperty(name = NAME_FIELD, type = EdmPrimitiveTypeKind.String)
+        private String name = "dummy";
+
+        TestEntity(int ID) {
+            this.ID = ID;
+        }
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    @BeforeMethod
+    public void clearCalls() {
+        calls.clear();
+    }
+
+    @Test
+    public void test_StreamingEntityIterator_clearsContextEveryChunkAndClosesWhenDone() {
+
+        // GIVEN
+        final StreamingEntityIterator sut = iterator(
+                results(new TestEntity(1), new TestEntity(2), new TestEntity(3), new TestEntity(4), new TestEntity(5)),
+                2, PropertySelection.ALL);
+
+        // WHEN
+        final List<Entity> read = new ArrayList<>();
+        while (sut.hasNext()) {
+            read.add(sut.next());
+        }
+
+        // THEN
+        assertThat(read).hasSize(5);
+        assertThat(sut.getReturned()).isEqualTo(5);
+        assertThat(sut.isClosed()).isTrue();
+        assertThat(calls).containsExactly("next", "next", "load 2", "clear", "next", "next", "load 2", "clear", "next",
+                "next", "load 1", "results.close", "rollback", "close");
+    }
+
+    @Test
+    public void test_StreamingEntityIterator_appliesSelection() {
+
+        // GIVEN
+        final StreamingEntityIterator sut =
+                iterator(results(new TestEntity(1)), 10, PropertySelection.of(Arrays.asList(ID_FIELD)));
+
+        // WHEN
+        final Entity result = sut.next();
+
+        // THEN
+        assertThat(result.getProperties()).extracting("name").containsExactly(ID_FIELD);
+    }
+
+    @Test
+    public void test_StreamingEntityIterator_close_closesOnlyOnce() {
+
+        // GIVEN
+        final StreamingEntityIterator sut = iterator(results(new TestEntity(1)), 10, PropertySelection.ALL);
+
+        // WHEN
+        sut.close();
+        sut.close();
+
+        // THEN
+        assertThat(sut.hasNext()).isFalse();
+        assertThat(calls).containsExactly("results.close", "rollback", "close");
+    }
+
+    /**
+     * Maps rows as the collection processor does, chunks loaded are recorded.
+     */
+    private StreamingEntityIterator iterator(ScrollableResults results, int chunkSize, PropertySelection selection) {
+        return new StreamingEntityIterator(entityManager(), results, chunkSize,
+                row -> ((JpaOlingoEntity) row[0]).select(selection).expand(NavigationExpansion.NONE),
+                chunk -> calls.add("load " + chunk.size()));
+    }
+
+    private ScrollableResults results(Object... rows) {
+        final Iterator<Object> it = Arrays.asList(rows).iterator();
+        final Object[] current = new Object[1];
+        return (ScrollableResults) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ScrollableResults.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            calls.add("next");
+                            current[0] = it.hasNext() ? it.next() : null;
+                            return current[0] != null;
+                        case "get":
+                            return new Object[] { current[0] };
+                        case "close":
+                            calls.add("results.close");
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private EntityManager entityManager() {
+        final EntityTransaction transaction = (EntityTransaction) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { EntityTransaction.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isActive":
+                            return true;
+                        case "rollback":
+                            calls.add("rollback");
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return (EntityManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { EntityManager.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getTransaction":
+                            return transaction;
+                        case "clear":
+                        case "close":
+                            calls.add(method.getName());
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.mat3e.odata.core.processor;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Stubs of JPA and Olingo interfaces as dynamic proxies answering by the method name, e.g.
+ * {@code proxy(EntityManagerFactory.class, (method, args) -> entityManager)}.
+ */
+final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * @return stub answering every call with the handler, results of void methods are ignored
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    Object result = handler.handle(method.getName(), args);
+                    return method.getReturnType() == Void.TYPE ? null : result;
+                });
+    }
+
+    @FunctionalInterface
+    interface Handler {
+        Object handle(String method, Object[] args) throws Throwable;
+    }
+}
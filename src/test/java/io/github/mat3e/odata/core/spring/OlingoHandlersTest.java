@@ -0,0 +1,98 @@
+package io.github.mat3e.odata.core.spring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.testng.annotations.Test;
+
+import io.github.mat3e.odata.common.annotation.ODataEntity;
+import io.github.mat3e.odata.common.annotation.ODataKey;
+import io.github.mat3e.odata.common.annotation.ODataProperty;
+import io.github.mat3e.odata.common.entity.JpaOlingoEntity;
+import io.github.mat3e.odata.common.exception.CsdlExtractException;
+import io.github.mat3e.odata.common.provider.AbstractEdmProvider;
+import io.github.mat3e.odata.common.provider.csdl.JpaEntityCsdlProvider;
+import io.github.mat3e.odata.core.processor.CachedMetadataProcessor;
+import io.github.mat3e.odata.core.spring.annotation.OlingoProcessor;
+
+public class OlingoHandlersTest {
+
+    @ODataEntity(name = "TestEntity", entitySetName = "TestEntities")
+    static class TestEntity extends JpaOlingoEntity {
+        @ODataKey
+        @ODataProperty(name = "ID", type = EdmPrimitiveTypeKind.Int32)
+        private int ID;
+
+        public int getID() {
+            return this.ID;
+        }
+
+        public void setID(int ID) {
+            this.ID = ID;
+        }
+    }
+
+    // beans, so they can't be inner classes
+    static class TestEdmProvider extends AbstractEdmProvider {
+
+        TestEdmProvider() throws CsdlExtractException {
+            super(Collections.singletonList(new JpaEntityCsdlProvider<>(TestEntity.class)));
+        }
+
+        @Override
+        protected List<CsdlActionImport> getActionImports() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        protected List<CsdlFunctionImport> getFunctionImports() {
+            return Collections.emptyList();
+        }
+    }
+
+    @OlingoProcessor
+    static class TestMetadataProcessor extends CachedMetadataProcessor {
+        ServiceMetadata getServiceMetadata() {
+            return serviceMetadata;
+        }
+    }
+
+    @Test
+    public void test_OlingoHandlers_process_servesRequestsWithSharedMetadataAndProcessorBeans() {
+
+        // GIVEN
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(
+                TestEdmProvider.class, TestMetadataProcessor.class, OlingoHandlers.class)) {
+            final OlingoHandlers sut = context.getBean(OlingoHandlers.class);
+            final ODataRequest request = new ODataRequest();
+            request.setMethod(HttpMethod.GET);
+            request.setRawODataPath("/$metadata");
+            request.setRawBaseUri("http://localhost/odata");
+            request.setRawRequestUri("http://localhost/odata/$metadata");
+
+            // WHEN
+            final ODataResponse first = sut.process(request);
+            final ODataResponse second = sut.process(request);
+
+            // THEN
+            assertThat(sut.getProcessors()).containsExactly(context.getBean(TestMetadataProcessor.class));
+            assertThat(first.getStatusCode()).isEqualTo(HttpStatusCode.OK.getStatusCode());
+            assertThat(second.getStatusCode()).isEqualTo(HttpStatusCode.OK.getStatusCode());
+            // rendered once for the shared ServiceMetadata
+            assertThat(second.getHeader("ETag")).isEqualTo(first.getHeader("ETag"));
+            assertThat(context.getBean(TestMetadataProcessor.class).getServiceMetadata())
+                    .isSameAs(sut.getServiceMetadata());
+        }
+    }
+}